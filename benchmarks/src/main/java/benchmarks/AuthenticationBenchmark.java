@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Successful customer logins across user bases of different sizes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DATA_DIR_ARG)
+@State(Scope.Benchmark)
+public class AuthenticationBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Engine engine;
+    private String[] usernames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.write(rows);
+        engine = new Engine();
+        usernames = new String[BenchmarkData.customerCount(rows)];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = BenchmarkData.customerUsername(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public boolean login() {
+        boolean success = engine.authService.login(usernames[next++ % usernames.length],
+                BenchmarkData.CUSTOMER_PASSWORD).success();
+        engine.authService.endSession();
+        return success;
+    }
+}
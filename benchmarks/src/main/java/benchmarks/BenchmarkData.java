@@ -0,0 +1,79 @@
+package benchmarks;
+
+import bench.DatasetGenerator;
+import data.FileHandler;
+import data.UserFileHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Writes the shared synthetic dataset, sized by the number of returns, into the data
+// directory the forked benchmark JVM was started with. That has to be the scratch
+// directory below: a run without it (-f 0, an IDE) would otherwise work on the data
+// files in the working directory. Only the files the dataset and the benchmarks
+// create are ever deleted.
+final class BenchmarkData {
+    static final String DATA_DIR = "target/jmh-data";
+    static final String DATA_DIR_ARG = "-Drental.dataDir=" + DATA_DIR;
+    private static final String SCRATCH_DIR = "scratch";
+    // each file with the .tmp sibling it is written through
+    private static final List<String> DATA_FILES = Stream.of(FileHandler.EQUIPMENT_FILE, FileHandler.RENTALS_FILE,
+                    FileHandler.RETURNS_FILE, FileHandler.IDEMPOTENCY_FILE, UserFileHandler.USERS_FILE,
+                    "warm-start.cache")
+            .flatMap(name -> Stream.of(name, name + ".tmp"))
+            .toList();
+    static final String CUSTOMER_PASSWORD = DatasetGenerator.CUSTOMER_PASSWORD;
+    static final String ADMIN_PASSWORD = "admin123";
+
+    private BenchmarkData() {}
+
+    static DatasetGenerator generator(int rows) {
+        return new DatasetGenerator().returns(rows);
+    }
+
+    static int customerCount(int rows) {
+        return generator(rows).customerCount();
+    }
+
+    static String customerUsername(int index) {
+        return DatasetGenerator.customerUsername(index);
+    }
+
+    static void write(int rows) {
+        Path dir = dataDir();
+        try {
+            clear(dir);
+            clear(dir.resolve(SCRATCH_DIR));
+            generator(rows).write(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // where benchmarks that rewrite files put them, so the loaded dataset stays intact
+    static Path scratchDir() throws IOException {
+        return Files.createDirectories(dataDir().resolve(SCRATCH_DIR));
+    }
+
+    private static Path dataDir() {
+        Path expected = Path.of(DATA_DIR).toAbsolutePath().normalize();
+        if (System.getProperty("rental.dataDir") == null
+                || !FileHandler.BASE_DIR.toAbsolutePath().normalize().equals(expected)) {
+            throw new IllegalStateException("Benchmarks only write their dataset to " + expected
+                    + ", but rental.dataDir is " + System.getProperty("rental.dataDir")
+                    + "; run them forked (the default) or pass " + DATA_DIR_ARG);
+        }
+        return expected;
+    }
+
+    private static void clear(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (String name : DATA_FILES) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+    }
+}
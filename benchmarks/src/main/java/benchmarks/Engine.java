@@ -0,0 +1,28 @@
+package benchmarks;
+
+import data.PersistenceQueue;
+import events.EventRingBuffer;
+import services.AuthenticationService;
+import services.PersistenceEventHandler;
+import services.RentalService;
+import services.ReportGenerator;
+
+// The services wired the way Main wires them, minus the console and the replica.
+final class Engine implements AutoCloseable {
+    final PersistenceQueue persistence = new PersistenceQueue();
+    final EventRingBuffer events = new EventRingBuffer();
+    final AuthenticationService authService = new AuthenticationService(persistence, events);
+    final RentalService rentalService = new RentalService(authService, persistence, events);
+    final ReportGenerator reportGenerator = new ReportGenerator(rentalService, authService);
+
+    Engine() {
+        events.addHandler(new PersistenceEventHandler(persistence, authService, rentalService));
+        events.start();
+    }
+
+    @Override
+    public void close() {
+        events.close();
+        persistence.close();
+    }
+}
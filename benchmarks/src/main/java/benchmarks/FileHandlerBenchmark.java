@@ -0,0 +1,87 @@
+package benchmarks;
+
+import data.FileHandler;
+import data.UserFileHandler;
+import models.Equipment;
+import models.Rental;
+import models.ReturnRecord;
+import models.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Full-file loads and rewrites of each data file. Saves go to a scratch directory
+// so the loaded dataset stays intact.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DATA_DIR_ARG)
+@State(Scope.Benchmark)
+public class FileHandlerBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Path scratch;
+    private List<Equipment> equipment;
+    private List<Rental> rentals;
+    private List<ReturnRecord> returns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkData.write(rows);
+        scratch = BenchmarkData.scratchDir();
+        equipment = FileHandler.loadEquipment();
+        rentals = FileHandler.loadRentals();
+        returns = FileHandler.loadReturns();
+    }
+
+    @Benchmark
+    public List<Equipment> loadEquipment() {
+        return FileHandler.loadEquipment();
+    }
+
+    @Benchmark
+    public List<Rental> loadRentals() {
+        return FileHandler.loadRentals();
+    }
+
+    @Benchmark
+    public List<ReturnRecord> loadReturns() {
+        return FileHandler.loadReturns();
+    }
+
+    @Benchmark
+    public List<User> loadUsers() {
+        return UserFileHandler.loadUsers();
+    }
+
+    @Benchmark
+    public void saveEquipment() {
+        FileHandler.saveEquipment(scratch, equipment);
+    }
+
+    @Benchmark
+    public void saveRentals() {
+        FileHandler.saveRentals(scratch, rentals);
+    }
+
+    @Benchmark
+    public void saveReturns() {
+        FileHandler.saveReturns(scratch, returns);
+    }
+}
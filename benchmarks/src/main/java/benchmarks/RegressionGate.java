@@ -0,0 +1,402 @@
+package benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.util.ListStatistics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Guards the key RentalService, FileHandler and ReportGenerator scenarios against
+// quiet regressions. "record" runs them and writes every measurement iteration, the
+// mean, its 99.9% error and the allocation per operation to a baseline file that is
+// committed with the code; "check" runs them again and fails when one got slower or
+// allocates more than its baseline.
+// A scenario is slower when its mean is worse than the baseline's by more than the
+// tolerance AND a t-test on the two sets of iterations says the difference is not
+// noise (99% confidence). record refuses a scenario whose error is above maxError of
+// its score, so a baseline is never too noisy to catch a slowdown; give such a
+// scenario more forks or iterations, or a quieter machine. A scenario that looks
+// regressed is run a second time and only fails when that run regresses too.
+// Usage: java -cp benchmarks/target/benchmarks.jar benchmarks.RegressionGate check|record
+//        [baseline=benchmarks/baselines.csv] [tolerance=0.10] [allocTolerance=0.10] [maxError=0.10]
+//        [rows=100000] [include=<regex>] [warmups=5] [iterations=10] [seconds=2] [forks=3]
+// Exit code 0 when nothing regressed (or every scenario was recorded), 1 when something
+// did (or was too noisy to record), 2 on bad arguments.
+public class RegressionGate {
+    private static final int FORMAT = 2;
+    private static final String HEADER = "benchmark,params,mode,unit,score,error,allocBytesPerOp,samples";
+    private static final String ALLOC_RESULT = "gc.alloc.rate.norm";
+    private static final double CONFIDENCE = 0.99;
+    // allocation differences below this are JIT and TLAB noise, not a regression
+    private static final double ALLOC_SLACK_BYTES = 64;
+    private static final String ROW = "%-38s %-32s %27s %27s %8s %23s  %s%n";
+    private static final List<String> SCENARIOS = List.of(
+            "RentalServiceBenchmark\\.(rentAndReturn|searchEquipment)$",
+            "FileHandlerBenchmark\\.(loadEquipment|loadReturns|saveReturns)$",
+            "ReportGeneratorBenchmark\\.generate$");
+
+    record Score(String benchmark, String params, String mode, String unit, double score, double error,
+                 double allocBytesPerOp, double[] samples) {
+        String key() { return benchmark + " " + params; }
+
+        boolean higherIsBetter() { return mode.equals("thrpt"); }
+
+        // the change of the score relative to the baseline, positive when it got better
+        double gain(Score baseline) {
+            double change = (score - baseline.score) / baseline.score;
+            return higherIsBetter() ? change : -change;
+        }
+
+        double relativeError() {
+            return error / Math.abs(score);
+        }
+
+        // the iterations of the two runs differ by more than noise
+        boolean differsFrom(Score baseline) {
+            if (samples.length < 2 || baseline.samples.length < 2) return true;
+            return new ListStatistics(samples).isDifferent(new ListStatistics(baseline.samples), CONFIDENCE);
+        }
+
+        boolean slowerThan(Score baseline, double tolerance) {
+            return gain(baseline) < -tolerance && differsFrom(baseline);
+        }
+
+        boolean fasterThan(Score baseline, double tolerance) {
+            return gain(baseline) > tolerance && differsFrom(baseline);
+        }
+
+        boolean allocatesMoreThan(Score baseline, double tolerance) {
+            if (Double.isNaN(allocBytesPerOp) || Double.isNaN(baseline.allocBytesPerOp)) return false;
+            return allocBytesPerOp > baseline.allocBytesPerOp * (1 + tolerance) + ALLOC_SLACK_BYTES;
+        }
+
+        Map<String, String> paramValues() {
+            Map<String, String> values = new TreeMap<>();
+            for (String pair : params.split(";")) {
+                String[] parts = pair.split("=", 2);
+                if (parts.length == 2) values.put(parts[0], parts[1]);
+            }
+            return values;
+        }
+    }
+
+    private boolean record;
+    private Path baseline = Path.of("benchmarks", "baselines.csv");
+    private double tolerance = 0.10;
+    private double allocTolerance = 0.10;
+    private double maxError = 0.10;
+    private int rows = 100_000;
+    private String include;
+    private int warmups = 5;
+    private int iterations = 10;
+    private int seconds = 2;
+    private int forks = 3;
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        RegressionGate gate = new RegressionGate();
+        if (args.length == 0 || !(args[0].equals("check") || args[0].equals("record"))) {
+            System.err.println("Usage: benchmarks.RegressionGate check|record [key=value ...]");
+            System.exit(2);
+        }
+        gate.record = args[0].equals("record");
+        for (int i = 1; i < args.length; i++) {
+            String[] parts = args[i].split("=", 2);
+            if (parts.length != 2 || !gate.configure(parts[0], parts[1])) {
+                System.err.println("Unknown setting: " + args[i]);
+                System.exit(2);
+            }
+        }
+        // in-process runs would skip the forked JVM's data directory, which BenchmarkData refuses
+        if (gate.forks < 1 || gate.iterations < 2) {
+            System.err.println("forks must be at least 1 and iterations at least 2.");
+            System.exit(2);
+        }
+        System.exit(gate.run() ? 0 : 1);
+    }
+
+    private boolean configure(String key, String value) {
+        switch (key) {
+            case "baseline" -> baseline = Path.of(value);
+            case "tolerance" -> tolerance = Double.parseDouble(value);
+            case "allocTolerance" -> allocTolerance = Double.parseDouble(value);
+            case "maxError" -> maxError = Double.parseDouble(value);
+            case "rows" -> rows = Integer.parseInt(value);
+            case "include" -> include = value;
+            case "warmups" -> warmups = Integer.parseInt(value);
+            case "iterations" -> iterations = Integer.parseInt(value);
+            case "seconds" -> seconds = Integer.parseInt(value);
+            case "forks" -> forks = Integer.parseInt(value);
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean run() throws IOException, RunnerException {
+        // record starts over from a baseline file of an older format
+        Map<String, Score> baselines = Files.exists(baseline) && (!record || format(baseline) == FORMAT)
+                ? read(baseline) : new TreeMap<>();
+        if (!record && baselines.isEmpty()) {
+            System.err.println("No baselines in " + baseline + "; record them first with: benchmarks.RegressionGate record");
+            return false;
+        }
+        if (!record) warnIfRecordedElsewhere();
+
+        Map<String, Score> current = measure(include != null ? List.of(include) : SCENARIOS, Map.of());
+        if (current.isEmpty()) {
+            System.err.println("No benchmark matched the scenarios to run.");
+            return false;
+        }
+        if (record) {
+            return recordBaselines(baselines, current);
+        }
+        confirmRegressions(baselines, current);
+        return compare(baselines, current);
+    }
+
+    // scenarios that were not run, or were too noisy this time, keep their old baseline
+    private boolean recordBaselines(Map<String, Score> baselines, Map<String, Score> current) throws IOException {
+        List<Score> noisy = new ArrayList<>();
+        System.out.printf("%n%-38s %-32s %27s %7s  %s%n", "Benchmark", "Params", "Score", "Error", "");
+        for (Score score : current.values()) {
+            boolean accepted = score.relativeError() <= maxError;
+            System.out.printf("%-38s %-32s %27s %6.1f%%  %s%n", score.benchmark(), score.params(), formatScore(score),
+                    score.relativeError() * 100, accepted ? "recorded" : "TOO NOISY, not recorded");
+            if (accepted) {
+                baselines.put(score.key(), score);
+            } else {
+                noisy.add(score);
+            }
+        }
+        if (noisy.size() < current.size()) write(baseline, baselines);
+        System.out.printf("%nRecorded %d of %d baselines in %s%n", current.size() - noisy.size(), current.size(),
+                baseline);
+        if (!noisy.isEmpty()) {
+            System.out.printf("%d scenario(s) had an error above %.0f%% of their score. Record them again with "
+                    + "more forks or iterations (include=<regex> picks them out), or on a quieter machine.%n",
+                    noisy.size(), maxError * 100);
+        }
+        return noisy.isEmpty();
+    }
+
+    // re-runs what regressed and keeps the second result where it did not regress again
+    private void confirmRegressions(Map<String, Score> baselines, Map<String, Score> current) throws RunnerException {
+        List<Score> suspects = current.values().stream()
+                .filter(score -> baselines.containsKey(score.key()) && regressed(score, baselines.get(score.key())))
+                .toList();
+        if (suspects.isEmpty()) return;
+
+        System.out.printf("%n%d scenario(s) look regressed; running them again to rule out noise%n", suspects.size());
+        List<String> includes = new ArrayList<>();
+        Map<String, List<String>> params = new TreeMap<>();
+        for (Score suspect : suspects) {
+            String include = "^benchmarks\\." + Pattern.quote(suspect.benchmark()) + "$";
+            if (!includes.contains(include)) includes.add(include);
+            suspect.paramValues().forEach((key, value) -> {
+                List<String> values = params.computeIfAbsent(key, k -> new ArrayList<>());
+                if (!values.contains(value)) values.add(value);
+            });
+        }
+        Map<String, Score> again = measure(includes, params);
+        for (Score suspect : suspects) {
+            Score second = again.get(suspect.key());
+            if (second != null && !regressed(second, baselines.get(suspect.key()))) {
+                current.put(suspect.key(), second);
+            }
+        }
+    }
+
+    private boolean regressed(Score score, Score base) {
+        return score.slowerThan(base, tolerance) || score.allocatesMoreThan(base, allocTolerance);
+    }
+
+    private Map<String, Score> measure(List<String> includes, Map<String, List<String>> params)
+            throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .param("rows", String.valueOf(rows))
+                .warmupIterations(warmups)
+                .warmupTime(TimeValue.seconds(seconds))
+                .measurementIterations(iterations)
+                .measurementTime(TimeValue.seconds(seconds))
+                .forks(forks)
+                .addProfiler(GCProfiler.class);
+        includes.forEach(options::include);
+        params.forEach((key, values) -> options.param(key, values.toArray(String[]::new)));
+
+        Map<String, Score> scores = new TreeMap<>();
+        Collection<RunResult> results = new Runner(options.build()).run();
+        for (RunResult result : results) {
+            Score score = toScore(result);
+            scores.put(score.key(), score);
+        }
+        return scores;
+    }
+
+    private static Score toScore(RunResult result) {
+        BenchmarkParams params = result.getParams();
+        List<String> values = new ArrayList<>();
+        for (String key : new TreeSet<>(params.getParamsKeys())) {
+            values.add(key + "=" + params.getParam(key));
+        }
+        // every measurement iteration of every fork
+        List<Double> samples = new ArrayList<>();
+        for (BenchmarkResult fork : result.getBenchmarkResults()) {
+            for (IterationResult iteration : fork.getIterationResults()) {
+                samples.add(iteration.getPrimaryResult().getScore());
+            }
+        }
+        String benchmark = params.getBenchmark();
+        Result<?> primary = result.getPrimaryResult();
+        double alloc = Double.NaN;
+        for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+            // older JMH versions prefix the profiler results with a middle dot
+            if (secondary.getKey().endsWith(ALLOC_RESULT)) alloc = secondary.getValue().getScore();
+        }
+        return new Score(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1),
+                String.join(";", values), params.getMode().shortLabel(), primary.getScoreUnit(),
+                primary.getScore(), Double.isNaN(primary.getScoreError()) ? 0 : primary.getScoreError(), alloc,
+                samples.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    private boolean compare(Map<String, Score> baselines, Map<String, Score> current) {
+        int regressions = 0;
+        int improvements = 0;
+        System.out.printf("%nRegression check against %s (tolerance %.0f%%, allocation %.0f%%, "
+                + "t-test at %.0f%% confidence)%n%n", baseline, tolerance * 100, allocTolerance * 100, CONFIDENCE * 100);
+        System.out.printf(ROW, "Benchmark", "Params", "Baseline", "Current",
+                "Change", "Alloc B/op", "Verdict");
+        for (Score score : current.values()) {
+            Score base = baselines.get(score.key());
+            if (base == null) {
+                System.out.printf(ROW, score.benchmark(), score.params(), "-",
+                        formatScore(score), "", formatAlloc(score.allocBytesPerOp()), "new, no baseline");
+                continue;
+            }
+            List<String> verdicts = new ArrayList<>();
+            if (score.slowerThan(base, tolerance)) verdicts.add("SLOWER");
+            if (score.allocatesMoreThan(base, allocTolerance)) verdicts.add("MORE ALLOCATION");
+            if (!verdicts.isEmpty()) {
+                regressions++;
+            } else if (score.fasterThan(base, tolerance)) {
+                improvements++;
+                verdicts.add("faster");
+            } else if (Math.abs(score.gain(base)) > tolerance) {
+                verdicts.add("ok, within noise");
+            } else {
+                verdicts.add("ok");
+            }
+            System.out.printf(ROW, score.benchmark(), score.params(), formatScore(base), formatScore(score),
+                    String.format("%+.1f%%", score.gain(base) * 100),
+                    formatAlloc(base.allocBytesPerOp()) + " -> " + formatAlloc(score.allocBytesPerOp()),
+                    String.join(", ", verdicts));
+        }
+        System.out.println();
+        System.out.println("Change is relative to the baseline and positive when the benchmark got faster.");
+        System.out.printf("%d compared, %d regressed, %d improved%n", current.size(), regressions, improvements);
+        if (regressions > 0) {
+            System.out.println("FAILED: performance regressed. If the change is intended, record new baselines "
+                    + "and commit them with the change.");
+        } else if (improvements > 0) {
+            System.out.println("Passed. Consider recording new baselines so the improvements are kept.");
+        }
+        return regressions == 0;
+    }
+
+    private static String formatScore(Score score) {
+        return String.format("%.3f +- %.3f %s", score.score(), score.error(), score.unit());
+    }
+
+    private static String formatAlloc(double bytes) {
+        return Double.isNaN(bytes) ? "n/a" : String.format("%.0f", bytes);
+    }
+
+    // scores from a machine unlike this one are not comparable; say so, but still compare
+    private void warnIfRecordedElsewhere() throws IOException {
+        String recordedOn = null;
+        for (String line : Files.readAllLines(baseline, StandardCharsets.UTF_8)) {
+            if (line.startsWith("# environment ")) recordedOn = line.substring("# environment ".length());
+        }
+        if (recordedOn != null && !recordedOn.equals(environment())) {
+            System.err.println("Warning: baselines were recorded on " + recordedOn);
+            System.err.println("         this run is on " + environment());
+        }
+    }
+
+    private static String environment() {
+        return String.format("%s %s, %d CPUs, JDK %s", System.getProperty("os.name"), System.getProperty("os.arch"),
+                Runtime.getRuntime().availableProcessors(), Runtime.version().feature());
+    }
+
+    private static int format(Path file) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("# format ")) return Integer.parseInt(line.substring(9).trim());
+        }
+        return 1;
+    }
+
+    private static Map<String, Score> read(Path file) throws IOException {
+        if (format(file) != FORMAT) {
+            throw new IOException(file + " has baseline format " + format(file) + "; this gate reads format "
+                    + FORMAT + ". Record the baselines again.");
+        }
+        Map<String, Score> scores = new TreeMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#") || line.equals(HEADER)) continue;
+
+            String[] parts = line.split(",", -1);
+            if (parts.length != 8) throw new IOException("Malformed baseline line in " + file + ": " + line);
+            Score score = new Score(parts[0], parts[1], parts[2], parts[3], Double.parseDouble(parts[4]),
+                    Double.parseDouble(parts[5]), parts[6].isEmpty() ? Double.NaN : Double.parseDouble(parts[6]),
+                    Arrays.stream(parts[7].split(" ")).filter(s -> !s.isEmpty()).mapToDouble(Double::parseDouble)
+                            .toArray());
+            scores.put(score.key(), score);
+        }
+        return scores;
+    }
+
+    private void write(Path file, Map<String, Score> scores) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# format " + FORMAT);
+        lines.add("# Baselines for benchmarks.RegressionGate; re-record them when a change is meant to move them.");
+        lines.add("# last recorded " + LocalDate.now() + " with " + forks + " forks of " + warmups + " warmup and "
+                + iterations + " measurement iterations of " + seconds + " s; scenarios recorded earlier keep theirs");
+        lines.add("# samples are the measurement iterations of every fork, which the t-test compares");
+        lines.add("# environment " + environment());
+        lines.add(HEADER);
+        for (Score score : scores.values()) {
+            lines.add(String.join(",", score.benchmark(), score.params(), score.mode(), score.unit(),
+                    String.format(Locale.ROOT, "%.4f", score.score()), String.format(Locale.ROOT, "%.4f", score.error()),
+                    Double.isNaN(score.allocBytesPerOp()) ? ""
+                            : String.format(Locale.ROOT, "%.1f", score.allocBytesPerOp()),
+                    Arrays.stream(score.samples()).mapToObj(sample -> String.format(Locale.ROOT, "%.4f", sample))
+                            .collect(Collectors.joining(" "))));
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import models.Equipment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A customer renting an available item and returning it straight away, and a
+// catalogue search, against histories of different sizes.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DATA_DIR_ARG)
+@State(Scope.Benchmark)
+public class RentalServiceBenchmark {
+    private static final String[] SEARCH_TERMS = {"audio", "camera", "E1", "item 4", "lighting", "missing"};
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private Engine engine;
+    private String[] availableIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.write(rows);
+        engine = new Engine();
+        engine.authService.login(BenchmarkData.customerUsername(0), BenchmarkData.CUSTOMER_PASSWORD);
+        List<String> ids = engine.rentalService.getAvailableEquipment().stream().map(Equipment::getId).toList();
+        availableIds = ids.toArray(new String[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public String rentAndReturn() {
+        String equipmentId = availableIds[next++ % availableIds.length];
+        String rented = engine.rentalService.rentEquipment(equipmentId, 3);
+        int start = rented.indexOf("Rental ID: ");
+        if (start < 0) throw new IllegalStateException(rented);
+        String rentalId = rented.substring(start + 11, rented.indexOf(',', start));
+        return engine.rentalService.returnEquipment(rentalId);
+    }
+
+    @Benchmark
+    public int searchEquipment() {
+        return engine.rentalService.searchEquipment(SEARCH_TERMS[next++ % SEARCH_TERMS.length]).size();
+    }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reports.TextReportSink;
+import services.ReportGenerator;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Each admin report rendered as text. The streaming writers bypass the report
+// cache, so every invocation builds the report from the current data.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkData.DATA_DIR_ARG)
+@State(Scope.Benchmark)
+public class ReportGeneratorBenchmark {
+    public enum Report { DAILY, MONTHLY, CUSTOMERS, EQUIPMENT, FINANCIAL, SECURITY, REVENUE_RANGE, UTILIZATION }
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param
+    public Report report;
+
+    private Engine engine;
+    private final StringBuilder output = new StringBuilder();
+    private final LocalDate today = LocalDate.now();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkData.write(rows);
+        engine = new Engine();
+        engine.authService.login("admin", BenchmarkData.ADMIN_PASSWORD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public int generate() {
+        output.setLength(0);
+        TextReportSink sink = new TextReportSink(output);
+        ReportGenerator reports = engine.reportGenerator;
+        switch (report) {
+            case DAILY -> reports.writeDailySummary(today.minusDays(30), sink);
+            case MONTHLY -> reports.writeMonthlyReport(today.minusMonths(1).getYear(),
+                    today.minusMonths(1).getMonthValue(), sink);
+            case CUSTOMERS -> reports.writeCustomerAnalyticsReport(ReportGenerator.DEFAULT_TOP_CUSTOMERS,
+                    ReportGenerator.CustomerRanking.SPEND, sink);
+            case EQUIPMENT -> reports.writeEquipmentPerformanceReport(sink);
+            case FINANCIAL -> reports.writeFinancialSummaryReport(sink);
+            case SECURITY -> reports.writeSecurityAuditReport(sink);
+            case REVENUE_RANGE -> reports.writeRevenueRangeReport(today.minusYears(1), today, sink);
+            case UTILIZATION -> reports.writeUtilizationReport(today.minusDays(90), today, sink);
+        }
+        return output.length();
+    }
+}
@@ -0,0 +1,148 @@
+#!/bin/sh
+# Launches the console application from core/target/rental-core.jar (mvn package).
+#
+#   scripts/rental.sh [java options]            run, using the class-data archive if there is one
+#   scripts/rental.sh --train [java options]    build the archive from a scripted training session
+#   scripts/rental.sh --no-cds [java options]   run without the archive
+#
+# The archive (core/target/rental.jsa) is an AppCDS dynamic archive: the classes a
+# representative session loads (Main, ui, services, data, models and what they pull
+# in) are stored pre-parsed and verified, so later JVMs map them instead of loading
+# them from the jar. The training session runs against a generated dataset in a
+# scratch directory and never touches the real data files. The archive only matches
+# the jar it was trained on; after a rebuild the launcher falls back to normal class
+# loading until --train is run again.
+#
+# java -cp core/target/rental-core.jar bench.StartupBenchmark compares time to first
+# menu with and without the archive.
+
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+JAR="$ROOT/core/target/rental-core.jar"
+ARCHIVE="$ROOT/core/target/rental.jsa"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+
+if [ ! -f "$JAR" ]; then
+    echo "Missing $JAR; build it with: mvn package" >&2
+    exit 1
+fi
+
+case "$1" in
+    --train)
+        shift
+        SCRATCH=$(mktemp -d)
+        trap 'rm -rf "$SCRATCH"' EXIT
+        "$JAVA" -cp "$JAR" bench.DatasetGenerator dir="$SCRATCH" equipment=500 customers=1000 \
+            returns=20000 > /dev/null
+        rm -f "$ARCHIVE"
+        # admin: equipment list, the reports that take defaults, system overview, one
+        # frame of the live dashboard; then a customer: catalog, active rentals, history. Blank lines answer the
+        # "press Enter" and default prompts.
+        "$JAVA" -XX:ArchiveClassesAtExit="$ARCHIVE" -Drental.dataDir="$SCRATCH" -Drental.replica=false \
+            "$@" -cp "$JAR" Main > /dev/null 2>&1 <<'EOF' || true
+1
+admin
+admin123
+
+1
+1
+
+
+
+
+5
+
+4
+1
+
+
+
+
+3
+
+
+
+
+4
+
+
+
+
+5
+
+
+
+
+6
+
+
+
+
+7
+
+
+
+
+8
+
+
+
+
+11
+
+5
+
+
+
+
+7
+
+
+8
+y
+
+1
+customer1
+customer123
+
+1
+
+
+
+
+4
+
+
+
+
+5
+
+
+
+
+7
+y
+
+3
+EOF
+        if [ ! -f "$ARCHIVE" ]; then
+            echo "Training run did not produce $ARCHIVE" >&2
+            exit 1
+        fi
+        echo "Wrote $ARCHIVE ($(wc -c < "$ARCHIVE") bytes)"
+        ;;
+    --no-cds)
+        shift
+        exec "$JAVA" "$@" -cp "$JAR" Main
+        ;;
+    *)
+        if [ -f "$ARCHIVE" ] && [ "$ARCHIVE" -nt "$JAR" ]; then
+            exec "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" "$@" -cp "$JAR" Main
+        fi
+        if [ -f "$ARCHIVE" ]; then
+            echo "Class-data archive is older than the jar; run scripts/rental.sh --train" >&2
+        fi
+        exec "$JAVA" "$@" -cp "$JAR" Main
+        ;;
+esac
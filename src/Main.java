@@ -1,14 +1,72 @@
+import data.PersistenceQueue;
+import events.ActivityFeed;
+import events.EventCounters;
+import events.EventRingBuffer;
+import metrics.Metrics;
+import metrics.StartupProfile;
+import replication.ReplicaClient;
+import replication.ReplicaLauncher;
 import services.AuthenticationService;
+import services.PersistenceEventHandler;
 import services.RentalService;
 import ui.ConsoleUI;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class Main {
     public static void main(String[] args) {
+        StartupProfile.start();
         try {
-            AuthenticationService authService = new AuthenticationService();
-            RentalService rentalService = new RentalService(authService);
+            PersistenceQueue persistence = new PersistenceQueue();
+            EventRingBuffer events = new EventRingBuffer();
+            long started = System.nanoTime();
+            AuthenticationService authService = new AuthenticationService(persistence, events);
+            StartupProfile.phase("auth", started);
+            started = System.nanoTime();
+            RentalService rentalService = new RentalService(authService, persistence, events);
+            StartupProfile.phase("rental", started);
+
+            EventCounters eventCounters = new EventCounters();
+            ActivityFeed activityFeed = new ActivityFeed(100);
+            events.addHandler(new PersistenceEventHandler(persistence, authService, rentalService));
+            events.addHandler(eventCounters);
+            events.addHandler(activityFeed);
+
+            ReplicaClient replica = null;
+            if (Boolean.parseBoolean(System.getProperty("rental.replica", "true"))) {
+                started = System.nanoTime();
+                try {
+                    replica = ReplicaLauncher.launch(events, rentalService, authService);
+                } catch (IOException e) {
+                    System.err.println("Reporting replica disabled: " + e.getMessage());
+                }
+                StartupProfile.phase("replica", started);
+            }
+            events.start();
+
+            // drain events before the writer so nothing published is lost on exit
+            ReplicaClient shutdownReplica = replica;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                events.close();
+                persistence.close();
+                rentalService.saveWarmStart();
+                if (shutdownReplica != null) shutdownReplica.close();
+                String metricsFile = System.getProperty("rental.metricsFile");
+                if (metricsFile != null) {
+                    try {
+                        Metrics.dump(Path.of(metricsFile));
+                    } catch (IOException e) {
+                        System.err.println("Error writing metrics: " + e.getMessage());
+                    }
+                }
+            }, "shutdown"));
 
-            ConsoleUI consoleUI = new ConsoleUI(authService, rentalService);
+            ConsoleUI consoleUI = new ConsoleUI(authService, rentalService, eventCounters, activityFeed, replica);
+            StartupProfile.finish();
+            if (StartupProfile.isEnabled()) {
+                System.out.print(StartupProfile.format());
+            }
             consoleUI.start();
         } catch (Exception e) {
             System.err.println("\nCritical error starting the application: " + e.getMessage());
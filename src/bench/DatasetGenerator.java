@@ -0,0 +1,321 @@
+package bench;
+
+import models.Equipment;
+import models.Rental;
+import models.ReturnRecord;
+import models.User;
+import utils.Constants;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+// Writes equipment.csv, users.csv, rentals.csv and returns.csv at production scale.
+// The same seed and settings always produce the same files: dates count back from a
+// fixed end date rather than today, so rentals still open at the end date read as
+// overdue when the data is used later. Rows are streamed to disk, so millions of
+// returns need little memory. Benchmarks and load tests share it, either through the
+// files or through forEachReturn for in-memory runs.
+// Usage: java -cp <classes> bench.DatasetGenerator dir=<path> returns=1000000 [seed=42]
+//        [equipment=N] [customers=N] [activeRentals=N] [categorySkew=1.0] [customerSkew=0.8]
+//        [lateReturnRate=0.15] [overdueRate=0.3] [lateFeePerDay=50] [historyDays=730] [endDate=2025-12-31]
+// dir is required: the generator overwrites the data files in it.
+public class DatasetGenerator {
+    public record Summary(int equipment, int customers, int activeRentals, int overdueRentals, int returns) {}
+
+    public static final String ADMIN_ID = "A001";
+    public static final String CUSTOMER_PASSWORD = Constants.DEFAULT_CUSTOMER_PASSWORD;
+
+    // category, item types, daily rate range
+    private static final String[][] CATEGORIES = {
+            {"Electronics", "Projector", "Laptop", "Monitor", "Tablet"},
+            {"Audio", "Sound System", "Microphone", "Mixer", "Speaker"},
+            {"Photography", "Camera", "Lens Kit", "Tripod", "Drone"},
+            {"Lighting", "LED Panel", "Spotlight", "Light Stand"},
+            {"Power", "Generator", "Extension Kit", "UPS"},
+            {"Staging", "Stage Platform", "Truss", "Tent"}
+    };
+    private static final double[][] RATES = {{15, 60}, {10, 80}, {10, 120}, {5, 40}, {20, 150}, {30, 200}};
+    private static final String[] FIRST_NAMES = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer",
+            "Michael", "Linda", "David", "Elizabeth", "Wei", "Aisha", "Carlos", "Yuki", "Fatima", "Ivan"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+            "Miller", "Davis", "Lopez", "Wilson", "Chen", "Khan", "Silva", "Tanaka", "Okafor", "Novak"};
+    private static final int MAX_RENTAL_DAYS = 14;
+    private static final int MAX_DAYS_LATE = 10;
+    public static final LocalDate DEFAULT_END_DATE = LocalDate.of(2025, 12, 31);
+
+    private long seed = 42;
+    private int returns = 100_000;
+    private int equipment;
+    private int customers;
+    private int activeRentals = -1;
+    private double categorySkew = 1.0;
+    private double customerSkew = 0.8;
+    private double lateReturnRate = 0.15;
+    private double overdueRate = 0.3;
+    private double lateFeePerDay = Constants.LATE_FEE_PER_DAY;
+    private int historyDays = 730;
+    private LocalDate endDate = DEFAULT_END_DATE;
+
+    public DatasetGenerator seed(long seed) { this.seed = seed; return this; }
+    public DatasetGenerator returns(int returns) { this.returns = returns; return this; }
+    // 0 derives the count from the number of returns
+    public DatasetGenerator equipment(int equipment) { this.equipment = equipment; return this; }
+    public DatasetGenerator customers(int customers) { this.customers = customers; return this; }
+    public DatasetGenerator activeRentals(int activeRentals) { this.activeRentals = activeRentals; return this; }
+    // Zipf exponents for how demand spreads over categories and customers; 0 is uniform
+    public DatasetGenerator categorySkew(double skew) { this.categorySkew = skew; return this; }
+    public DatasetGenerator customerSkew(double skew) { this.customerSkew = skew; return this; }
+    // share of returns that came back late, and of current rentals that are overdue
+    public DatasetGenerator lateReturnRate(double rate) { this.lateReturnRate = rate; return this; }
+    public DatasetGenerator overdueRate(double rate) { this.overdueRate = rate; return this; }
+    public DatasetGenerator lateFeePerDay(double fee) { this.lateFeePerDay = fee; return this; }
+    public DatasetGenerator historyDays(int days) { this.historyDays = days; return this; }
+    public DatasetGenerator endDate(LocalDate date) { this.endDate = date; return this; }
+
+    public int equipmentCount() {
+        return equipment > 0 ? equipment : Math.max(20, returns / 100);
+    }
+
+    public int customerCount() {
+        return customers > 0 ? customers : Math.max(10, returns / 50);
+    }
+
+    public int activeRentalCount() {
+        int count = activeRentals >= 0 ? activeRentals : Math.max(5, equipmentCount() / 20);
+        return Math.min(count, equipmentCount());
+    }
+
+    public static String customerId(int index) {
+        return String.format("C%03d", index + 1);
+    }
+
+    public static String customerUsername(int index) {
+        return "customer" + index;
+    }
+
+    public Summary write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        List<Equipment> items = generateEquipment();
+
+        List<Rental> rentals = generateActiveRentals(items);
+        int overdue = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(Constants.RENTALS_FILE))) {
+            for (Rental rental : rentals) {
+                if (endDate.isAfter(rental.getExpectedReturnDate())) overdue++;
+                writeLine(writer, rental.toCsvString());
+            }
+        }
+        // written after the rentals, which mark their items as rented
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(Constants.EQUIPMENT_FILE))) {
+            for (Equipment item : items) {
+                writeLine(writer, item.toCsvString());
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(Constants.USERS_FILE))) {
+            // accounts date from the start of the history, not from when the files were written
+            LocalDateTime created = endDate.minusDays(historyDays).atStartOfDay();
+            User admin = new User(ADMIN_ID, Constants.DEFAULT_ADMIN_USERNAME, Constants.DEFAULT_ADMIN_PASSWORD,
+                    "System Administrator", "admin@rental.com", User.UserType.ADMIN);
+            admin.setCreatedDate(created);
+            writeLine(writer, admin.toCsvString());
+            Random random = new Random(seed * 31 + 3);
+            for (int i = 0; i < customerCount(); i++) {
+                String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                User customer = new User(customerId(i), customerUsername(i), CUSTOMER_PASSWORD, first + " " + last,
+                        customerUsername(i) + "@email.com", User.UserType.CUSTOMER);
+                customer.setCreatedDate(created);
+                writeLine(writer, customer.toCsvString());
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(Constants.RETURNS_FILE))) {
+            forEachReturn(items, record -> writeLine(writer, record.toCsvString()));
+        }
+        return new Summary(items.size(), customerCount(), rentals.size(), overdue, returns);
+    }
+
+    // the returns write() would produce, without touching the disk
+    public void forEachReturn(Consumer<ReturnRecord> consumer) {
+        forEachReturn(generateEquipment(), consumer);
+    }
+
+    private void forEachReturn(List<Equipment> items, Consumer<ReturnRecord> consumer) {
+        Random random = new Random(seed * 31 + 1);
+        int[][] itemsByCategory = itemsByCategory(items);
+        Zipf categories = new Zipf(CATEGORIES.length, categorySkew);
+        Zipf customerDemand = new Zipf(customerCount(), customerSkew);
+        LocalDate firstStart = endDate.minusDays(historyDays);
+        int startSpan = Math.max(1, historyDays - MAX_RENTAL_DAYS - MAX_DAYS_LATE);
+
+        for (int i = 0; i < returns; i++) {
+            Equipment item = items.get(pick(itemsByCategory, categories.sample(random), random));
+            LocalDate start = firstStart.plusDays(random.nextInt(startSpan));
+            int days = rentalDays(random);
+            int late = random.nextDouble() < lateReturnRate ? 1 + random.nextInt(MAX_DAYS_LATE) : 0;
+
+            ReturnRecord record = new ReturnRecord(rentalId(i), item.getId(),
+                    customerId(customerDemand.sample(random)), start, start.plusDays(days + late),
+                    item.getRentPerDay() * days);
+            record.setLateFee(late * lateFeePerDay);
+            double condition = random.nextDouble();
+            record.setCondition(condition < 0.01 ? "Lost" : condition < 0.05 ? "Damage" : "Good");
+            consumer.accept(record);
+        }
+    }
+
+    private List<Equipment> generateEquipment() {
+        Random random = new Random(seed);
+        List<Equipment> items = new ArrayList<>(equipmentCount());
+        for (int i = 0; i < equipmentCount(); i++) {
+            int category = i % CATEGORIES.length;
+            String type = CATEGORIES[category][1 + random.nextInt(CATEGORIES[category].length - 1)];
+            double[] range = RATES[category];
+            double rate = Math.round((range[0] + random.nextDouble() * (range[1] - range[0])) * 100) / 100.0;
+            String status = random.nextInt(100) == 0 ? Constants.EQUIPMENT_STATUS_MAINTENANCE
+                    : Constants.EQUIPMENT_STATUS_AVAILABLE;
+            items.add(new Equipment("E" + (101 + i), type + " " + (i / CATEGORIES.length + 1), rate, status,
+                    CATEGORIES[category][0]));
+        }
+        return items;
+    }
+
+    // distinct available items, some of them past their due date
+    private List<Rental> generateActiveRentals(List<Equipment> items) {
+        Random random = new Random(seed * 31 + 2);
+        Zipf customerDemand = new Zipf(customerCount(), customerSkew);
+        int[] order = new int[items.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        List<Rental> rentals = new ArrayList<>();
+        for (int i = 0; i < order.length && rentals.size() < activeRentalCount(); i++) {
+            Equipment item = items.get(order[i]);
+            if (!item.isAvailable()) continue;
+
+            int days = rentalDays(random);
+            LocalDate start = random.nextDouble() < overdueRate
+                    ? endDate.minusDays(days + 1 + random.nextInt(MAX_DAYS_LATE))
+                    : endDate.minusDays(random.nextInt(days));
+            rentals.add(new Rental(rentalId(returns + rentals.size()), item.getId(),
+                    customerId(customerDemand.sample(random)), start, days, item.getRentPerDay() * days));
+            item.setAvailability(Constants.EQUIPMENT_STATUS_RENTED);
+        }
+        return rentals;
+    }
+
+    // mostly short rentals
+    private static int rentalDays(Random random) {
+        double u = random.nextDouble();
+        return 1 + (int) (u * u * MAX_RENTAL_DAYS);
+    }
+
+    private static String rentalId(int index) {
+        return String.format("R%03d", index + 1);
+    }
+
+    private static int[][] itemsByCategory(List<Equipment> items) {
+        int[][] byCategory = new int[CATEGORIES.length][];
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            int c = category;
+            byCategory[category] = IntStream.range(0, items.size())
+                    .filter(i -> i % CATEGORIES.length == c).toArray();
+        }
+        return byCategory;
+    }
+
+    // an item of the chosen category, or any item when that category has none
+    private static int pick(int[][] itemsByCategory, int category, Random random) {
+        int[] candidates = itemsByCategory[category];
+        if (candidates.length == 0) candidates = itemsByCategory[0];
+        return candidates[random.nextInt(candidates.length)];
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // samples 0..n-1 with probability proportional to 1 / (rank + 1)^skew
+    private static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double skew) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += 1 / Math.pow(i + 1, skew);
+                cumulative[i] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= total;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        DatasetGenerator generator = new DatasetGenerator();
+        Path dir = null;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                System.err.println("Expected key=value, got: " + arg);
+                return;
+            }
+            String value = parts[1];
+            switch (parts[0]) {
+                case "dir" -> dir = Path.of(value);
+                case "seed" -> generator.seed(Long.parseLong(value));
+                case "returns" -> generator.returns(Integer.parseInt(value));
+                case "equipment" -> generator.equipment(Integer.parseInt(value));
+                case "customers" -> generator.customers(Integer.parseInt(value));
+                case "activeRentals" -> generator.activeRentals(Integer.parseInt(value));
+                case "categorySkew" -> generator.categorySkew(Double.parseDouble(value));
+                case "customerSkew" -> generator.customerSkew(Double.parseDouble(value));
+                case "lateReturnRate" -> generator.lateReturnRate(Double.parseDouble(value));
+                case "overdueRate" -> generator.overdueRate(Double.parseDouble(value));
+                case "lateFeePerDay" -> generator.lateFeePerDay(Double.parseDouble(value));
+                case "historyDays" -> generator.historyDays(Integer.parseInt(value));
+                case "endDate" -> generator.endDate(LocalDate.parse(value));
+                default -> {
+                    System.err.println("Unknown setting: " + parts[0]);
+                    return;
+                }
+            }
+        }
+        if (dir == null) {
+            System.err.println("Missing dir=<path>; the generator overwrites the data files in that directory.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        Summary summary = generator.write(dir);
+        System.out.printf("Wrote %d equipment, %d customers, %d active rentals (%d overdue) and %d returns to %s in %.1f s%n",
+                summary.equipment(), summary.customers(), summary.activeRentals(), summary.overdueRentals(),
+                summary.returns(), dir.toAbsolutePath(), (System.nanoTime() - start) / 1e9);
+    }
+}
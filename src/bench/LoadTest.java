@@ -0,0 +1,406 @@
+package bench;
+
+import data.FileHandler;
+import data.PersistenceQueue;
+import data.ReturnColumns;
+import events.EventRingBuffer;
+import metrics.LatencyHistogram;
+import models.Equipment;
+import models.Rental;
+import models.ReturnRecord;
+import services.AuthenticationService;
+import services.PersistenceEventHandler;
+import services.RentalService;
+import services.ReportGenerator;
+import utils.Constants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives the services with many simulated customers and admins at once, then checks
+// that the data still adds up. Each worker thread plays one user session after
+// another: log in, run a few actions drawn from the mix, end the session. Admins turn
+// rent and return draws into reports. Data comes from DatasetGenerator, written into
+// -Drental.dataDir, which has to be set so a run never touches the real data files.
+// Usage: java -Drental.dataDir=<dir> -cp <classes> bench.LoadTest [threads=64] [seconds=30]
+//        [returns=100000] [customers=N] [adminShare=0.05] [sessionActions=20] [seed=42]
+//        [mix=browse:30,search:20,rent:20,return:15,login:10,report:5] [generate=true]
+public class LoadTest {
+    enum Action { BROWSE, SEARCH, RENT, RETURN, LOGIN, REPORT }
+
+    private enum Outcome { OK, REJECTED }
+
+    private static final String[] SEARCH_TERMS = {"audio", "camera", "projector", "E1", "light", "stage", "missing"};
+    private static final int MAX_ERRORS_SHOWN = 5;
+
+    private int threads = 64;
+    private int seconds = 30;
+    private int sessionActions = 20;
+    private double adminShare = 0.05;
+    private long seed = 42;
+    private boolean generate = true;
+    private final Map<Action, Integer> mix = new EnumMap<>(Action.class);
+    private final DatasetGenerator dataset = new DatasetGenerator();
+
+    private final Map<Action, ActionStats> stats = new EnumMap<>(Action.class);
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder rented = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final AtomicInteger errorsShown = new AtomicInteger();
+
+    private AuthenticationService authService;
+    private RentalService rentalService;
+    private ReportGenerator reportGenerator;
+
+    private static final class ActionStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder ok = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    // a simulated user between login and the end of the session
+    private static final class Session {
+        final String username;
+        final String password;
+        final boolean admin;
+        List<Equipment> available = List.of();
+
+        Session(String username, String password, boolean admin) {
+            this.username = username;
+            this.password = password;
+            this.admin = admin;
+        }
+    }
+
+    public LoadTest() {
+        mix.put(Action.BROWSE, 30);
+        mix.put(Action.SEARCH, 20);
+        mix.put(Action.RENT, 20);
+        mix.put(Action.RETURN, 15);
+        mix.put(Action.LOGIN, 10);
+        mix.put(Action.REPORT, 5);
+        for (Action action : Action.values()) {
+            stats.put(action, new ActionStats());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (System.getProperty("rental.dataDir") == null) {
+            System.err.println("Set -Drental.dataDir to a scratch directory; the load test rewrites its data files.");
+            System.exit(2);
+        }
+
+        LoadTest test = new LoadTest();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2 || !test.configure(parts[0], parts[1])) {
+                System.err.println("Unknown setting: " + arg);
+                System.exit(2);
+            }
+        }
+        System.exit(test.run() ? 0 : 1);
+    }
+
+    private boolean configure(String key, String value) {
+        switch (key) {
+            case "threads" -> threads = Integer.parseInt(value);
+            case "seconds" -> seconds = Integer.parseInt(value);
+            case "sessionActions" -> sessionActions = Integer.parseInt(value);
+            case "adminShare" -> adminShare = Double.parseDouble(value);
+            case "seed" -> {
+                seed = Long.parseLong(value);
+                dataset.seed(seed);
+            }
+            case "generate" -> generate = Boolean.parseBoolean(value);
+            case "returns" -> dataset.returns(Integer.parseInt(value));
+            case "customers" -> dataset.customers(Integer.parseInt(value));
+            case "mix" -> {
+                mix.clear();
+                for (String entry : value.split(",")) {
+                    String[] weight = entry.split(":");
+                    mix.put(Action.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean run() throws InterruptedException {
+        if (generate) {
+            try {
+                dataset.write(FileHandler.BASE_DIR);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        PersistenceQueue persistence = new PersistenceQueue();
+        EventRingBuffer events = new EventRingBuffer();
+        authService = new AuthenticationService(persistence, events);
+        rentalService = new RentalService(authService, persistence, events);
+        reportGenerator = new ReportGenerator(rentalService, authService);
+        events.addHandler(new PersistenceEventHandler(persistence, authService, rentalService));
+        events.start();
+
+        try {
+            Totals before = totals();
+
+            System.out.printf("Load test: %d threads, %d s, %d customers, admin share %.2f, %d returns on file%n",
+                    threads, seconds, dataset.customerCount(), adminShare, before.returns);
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            long started = System.nanoTime();
+            long deadline = started + TimeUnit.SECONDS.toNanos(seconds);
+            for (int i = 0; i < threads; i++) {
+                long workerSeed = seed * 1_000_003 + i;
+                workers.execute(() -> work(new Random(workerSeed), deadline));
+            }
+            workers.shutdown();
+            if (!workers.awaitTermination(seconds + 60L, TimeUnit.SECONDS)) {
+                // the invariants only hold once nothing is mutating the data any more
+                workers.shutdownNow();
+                boolean stopped = workers.awaitTermination(60, TimeUnit.SECONDS);
+                System.err.println("Workers overran the run by more than 60 s"
+                        + (stopped ? "" : " and did not stop when interrupted") + "; invariants not checked.");
+                return false;
+            }
+            double elapsed = (System.nanoTime() - started) / 1e9;
+
+            events.awaitHandled(events.getCursor());
+            boolean flushed = persistence.flush();
+            printResults(elapsed);
+            return checkInvariants(before, flushed);
+        } finally {
+            events.close();
+            persistence.close();
+        }
+    }
+
+    private void work(Random random, long deadline) {
+        List<String> reports = List.of("DAILY", "MONTHLY", "FINANCIAL", "EQUIPMENT", "CUSTOMERS", "RANGE",
+                "UTILIZATION");
+        while (System.nanoTime() < deadline) {
+            Session session = random.nextDouble() < adminShare
+                    ? new Session(Constants.DEFAULT_ADMIN_USERNAME, Constants.DEFAULT_ADMIN_PASSWORD, true)
+                    : new Session(DatasetGenerator.customerUsername(random.nextInt(dataset.customerCount())),
+                            DatasetGenerator.CUSTOMER_PASSWORD, false);
+            sessions.increment();
+            if (perform(Action.LOGIN, () -> login(session)) != Outcome.OK) continue;
+
+            for (int i = 0; i < sessionActions && System.nanoTime() < deadline; i++) {
+                Action action = pick(random);
+                if (session.admin && (action == Action.RENT || action == Action.RETURN)) {
+                    action = Action.REPORT;
+                }
+                switch (action) {
+                    case BROWSE -> perform(action, () -> {
+                        session.available = rentalService.getAvailableEquipment();
+                        return Outcome.OK;
+                    });
+                    case SEARCH -> perform(action, () -> {
+                        rentalService.searchEquipment(SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)]);
+                        return Outcome.OK;
+                    });
+                    case RENT -> perform(action, () -> rent(session, random));
+                    case RETURN -> perform(action, () -> giveBack(random));
+                    case LOGIN -> {
+                        authService.endSession();
+                        perform(action, () -> login(session));
+                    }
+                    case REPORT -> perform(action, () -> report(session, reports.get(random.nextInt(reports.size()))));
+                }
+                if (!authService.isLoggedIn()) break;
+            }
+            authService.endSession();
+        }
+    }
+
+    private Action pick(Random random) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int draw = random.nextInt(Math.max(1, total));
+        for (Map.Entry<Action, Integer> entry : mix.entrySet()) {
+            draw -= entry.getValue();
+            if (draw < 0) return entry.getKey();
+        }
+        return Action.BROWSE;
+    }
+
+    private interface Step {
+        Outcome run();
+    }
+
+    private Outcome perform(Action action, Step step) {
+        ActionStats actionStats = stats.get(action);
+        long started = System.nanoTime();
+        try {
+            Outcome outcome = step.run();
+            (outcome == Outcome.OK ? actionStats.ok : actionStats.rejected).increment();
+            return outcome;
+        } catch (RuntimeException e) {
+            actionStats.errors.increment();
+            if (errorsShown.incrementAndGet() <= MAX_ERRORS_SHOWN) {
+                System.err.println("Error during " + action + ": " + e);
+            }
+            return Outcome.REJECTED;
+        } finally {
+            actionStats.latency.recordSince(started);
+        }
+    }
+
+    private Outcome login(Session session) {
+        return authService.login(session.username, session.password).success() ? Outcome.OK : Outcome.REJECTED;
+    }
+
+    // other sessions race for the same items, so a refused rental is expected
+    private Outcome rent(Session session, Random random) {
+        if (session.available.isEmpty()) {
+            session.available = rentalService.getAvailableEquipment();
+            if (session.available.isEmpty()) return Outcome.REJECTED;
+        }
+        Equipment item = session.available.get(random.nextInt(session.available.size()));
+        String result = rentalService.rentEquipment(item.getId(), 1 + random.nextInt(7));
+        if (!result.startsWith("Equipment rented successfully")) return Outcome.REJECTED;
+        rented.increment();
+        return Outcome.OK;
+    }
+
+    private Outcome giveBack(Random random) {
+        List<Rental> mine = rentalService.getActiveRentals();
+        if (mine.isEmpty()) return Outcome.REJECTED;
+        Rental rental = mine.get(random.nextInt(mine.size()));
+        String result = rentalService.returnEquipment(rental.getRentalId());
+        if (!result.startsWith("Equipment returned successfully")) return Outcome.REJECTED;
+        returned.increment();
+        return Outcome.OK;
+    }
+
+    private Outcome report(Session session, String report) {
+        if (!session.admin) {
+            reportGenerator.generateUserRentalSummary();
+            return Outcome.OK;
+        }
+        LocalDate today = LocalDate.now();
+        switch (report) {
+            case "DAILY" -> reportGenerator.generateDailySummary(today);
+            case "MONTHLY" -> reportGenerator.generateMonthlyReport(today.getYear(), today.getMonthValue());
+            case "FINANCIAL" -> reportGenerator.generateFinancialSummaryReport();
+            case "EQUIPMENT" -> reportGenerator.generateEquipmentPerformanceReport();
+            case "CUSTOMERS" -> reportGenerator.generateCustomerAnalyticsReport();
+            case "RANGE" -> reportGenerator.generateRevenueRangeReport(today.withDayOfMonth(1), today);
+            default -> reportGenerator.generateUtilizationReport(today.withDayOfMonth(1), today);
+        }
+        return Outcome.OK;
+    }
+
+    private void printResults(double elapsed) {
+        System.out.printf("%n%-8s %9s %9s %9s %7s %10s %9s %9s %9s %9s%n", "Action", "Calls", "OK", "Rejected",
+                "Errors", "Ops/s", "p50 ms", "p99 ms", "p999 ms", "Max ms");
+        long total = 0;
+        for (Action action : Action.values()) {
+            ActionStats actionStats = stats.get(action);
+            LatencyHistogram.Snapshot latency = actionStats.latency.snapshot();
+            if (latency.getCount() == 0) continue;
+            total += latency.getCount();
+            System.out.printf("%-8s %9d %9d %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n", action, latency.getCount(),
+                    actionStats.ok.sum(), actionStats.rejected.sum(), actionStats.errors.sum(),
+                    latency.getCount() / elapsed, millis(latency.getValueAtPercentile(50.0)),
+                    millis(latency.getValueAtPercentile(99.0)), millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMaxNanos()));
+        }
+        System.out.printf("%-8s %9d %40.1f ops/s over %.1f s%n", "Total", total, total / elapsed, elapsed);
+        System.out.printf("Sessions: %d | Rentals: %d | Returns: %d%n", sessions.sum(), rented.sum(), returned.sum());
+    }
+
+    private record Totals(int activeRentals, int returns, long returnsCents, long revenueCents) {}
+
+    private Totals totals() {
+        authService.login(Constants.DEFAULT_ADMIN_USERNAME, Constants.DEFAULT_ADMIN_PASSWORD);
+        try {
+            List<ReturnRecord> returns = rentalService.getAllReturns();
+            return new Totals(rentalService.getAllActiveRentals().size(), returns.size(), cents(returns),
+                    ReturnColumns.toCents(rentalService.getTotalRevenue()));
+        } finally {
+            authService.endSession();
+        }
+    }
+
+    private static long cents(List<ReturnRecord> returns) {
+        long cents = 0;
+        for (ReturnRecord record : returns) {
+            cents += ReturnColumns.toCents(record.getTotalCost()) + ReturnColumns.toCents(record.getLateFee());
+        }
+        return cents;
+    }
+
+    private boolean checkInvariants(Totals before, boolean flushed) {
+        authService.login(Constants.DEFAULT_ADMIN_USERNAME, Constants.DEFAULT_ADMIN_PASSWORD);
+        try {
+            List<Rental> active = rentalService.getAllActiveRentals();
+            List<ReturnRecord> returns = rentalService.getAllReturns();
+            Map<String, Integer> rentalsPerItem = new HashMap<>();
+            for (Rental rental : active) {
+                rentalsPerItem.merge(rental.getEquipmentId(), 1, Integer::sum);
+            }
+            long doubleRented = rentalsPerItem.values().stream().filter(count -> count > 1).count();
+            long rentedItems = rentalService.getAllEquipment().stream()
+                    .filter(eq -> Constants.EQUIPMENT_STATUS_RENTED.equals(eq.getAvailability())).count();
+
+            long returnsCents = cents(returns);
+            long revenueCents = ReturnColumns.toCents(rentalService.getTotalRevenue());
+
+            Map<String, Boolean> checks = new LinkedHashMap<>();
+            checks.put("no item rented twice (" + doubleRented + " items with several rentals)", doubleRented == 0);
+            checks.put("items marked rented match active rentals (" + rentedItems + " vs " + rentalsPerItem.size() + ")",
+                    rentedItems == rentalsPerItem.size());
+            checks.put("active rentals balance (" + before.activeRentals + " + " + rented.sum() + " - " + returned.sum()
+                    + " = " + active.size() + ")", before.activeRentals + rented.sum() - returned.sum() == active.size());
+            checks.put("returns balance (" + before.returns + " + " + returned.sum() + " = " + returns.size() + ")",
+                    before.returns + returned.sum() == returns.size());
+            checks.put("revenue reconciles against returns", revenueCents == returnsCents);
+            // the growth comes from the aggregates handler, the starting total from the load
+            checks.put("revenue growth matches returned amounts",
+                    revenueCents - before.revenueCents == returnsCents - before.returnsCents);
+            checks.put("every write reached the files", flushed);
+            // each shard keeps its own files, so the counts add up across the data directories
+            int returnsOnFile = 0;
+            int rentalsOnFile = 0;
+            for (Path dir : rentalService.getDataDirectories()) {
+                returnsOnFile += FileHandler.loadReturns(dir).size();
+                rentalsOnFile += FileHandler.loadRentals(dir).size();
+            }
+            checks.put("files match memory (" + returnsOnFile + " returns, " + rentalsOnFile + " rentals on file)",
+                    returnsOnFile == returns.size() && rentalsOnFile == active.size());
+
+            System.out.println("\nInvariants:");
+            List<String> failed = new ArrayList<>();
+            checks.forEach((name, passed) -> {
+                System.out.println("  [" + (passed ? "PASS" : "FAIL") + "] " + name);
+                if (!passed) failed.add(name);
+            });
+            return failed.isEmpty();
+        } finally {
+            authService.endSession();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import models.ReturnRecord;
+import utils.GroupedAggregator;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Compares the serial and fork/join paths of the report aggregation on synthetic
+// returns and checks that both produce the same numbers.
+// Usage: java -Xmx4g -cp <classes> bench.ReportBenchmark [rows...]   (default 1000000 10000000)
+public class ReportBenchmark {
+    private static final String[] METRICS = {"base", "lateFees", "late", "days"};
+    private static final String[] GROUPINGS = {"month", "equipment", "customer"};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        long[] sizes = args.length > 0
+                ? java.util.Arrays.stream(args).mapToLong(Long::parseLong).toArray()
+                : new long[]{1_000_000, 10_000_000};
+
+        System.out.printf("%-12s %12s %12s %8s %s%n", "Returns", "Serial ms", "Parallel ms", "Speedup", "Identical");
+        for (long size : sizes) {
+            List<ReturnRecord> returns = generate((int) size);
+
+            double serial = Double.MAX_VALUE;
+            double parallel = Double.MAX_VALUE;
+            GroupedAggregator<ReturnRecord> serialResult = null;
+            GroupedAggregator<ReturnRecord> parallelResult = null;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                serialResult = aggregator(Integer.MAX_VALUE);
+                serialResult.addAll(returns);
+                serial = Math.min(serial, (System.nanoTime() - start) / 1e6);
+
+                start = System.nanoTime();
+                parallelResult = aggregator(GroupedAggregator.DEFAULT_PARALLEL_THRESHOLD);
+                parallelResult.addAll(returns);
+                parallel = Math.min(parallel, (System.nanoTime() - start) / 1e6);
+            }
+
+            System.out.printf("%-12d %12.1f %12.1f %7.2fx %s%n", size, serial, parallel, serial / parallel,
+                    identical(serialResult, parallelResult));
+        }
+    }
+
+    // same metrics and groupings the revenue reports use
+    private static GroupedAggregator<ReturnRecord> aggregator(int parallelThreshold) {
+        return new GroupedAggregator<ReturnRecord>()
+                .parallelThreshold(parallelThreshold)
+                .sum("base", r -> Math.round(r.getTotalCost() * 100))
+                .sum("lateFees", r -> Math.round(r.getLateFee() * 100))
+                .countIf("late", r -> r.getLateFee() > 0)
+                .sum("days", r -> r.getEndDate().toEpochDay() - r.getStartDate().toEpochDay())
+                .groupBy("month", r -> YearMonth.from(r.getEndDate()))
+                .groupBy("equipment", ReturnRecord::getEquipmentId)
+                .groupBy("customer", ReturnRecord::getCustomerId);
+    }
+
+    // the shared synthetic history, shaped like the earlier in-memory one: 2000 items, 100k customers, 3 years
+    static List<ReturnRecord> generate(int size) {
+        List<ReturnRecord> returns = new ArrayList<>(size);
+        new DatasetGenerator()
+                .returns(size)
+                .equipment(2_000)
+                .customers(100_000)
+                .historyDays(1095)
+                .endDate(LocalDate.of(2024, 12, 31))
+                .forEachReturn(returns::add);
+        return returns;
+    }
+
+    private static boolean identical(GroupedAggregator<ReturnRecord> a, GroupedAggregator<ReturnRecord> b) {
+        if (!sameRow(a.total(), b.total())) return false;
+        for (String grouping : GROUPINGS) {
+            Map<Object, GroupedAggregator<ReturnRecord>.Row> left = a.groups(grouping);
+            Map<Object, GroupedAggregator<ReturnRecord>.Row> right = b.groups(grouping);
+            if (!left.keySet().equals(right.keySet())) return false;
+            for (Map.Entry<Object, GroupedAggregator<ReturnRecord>.Row> entry : left.entrySet()) {
+                if (!sameRow(entry.getValue(), right.get(entry.getKey()))) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameRow(GroupedAggregator<ReturnRecord>.Row a, GroupedAggregator<ReturnRecord>.Row b) {
+        if (a.count() != b.count()) return false;
+        for (String metric : METRICS) {
+            if (a.get(metric) != b.get(metric)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package bench;
+
+import data.ReturnColumns;
+import models.ReturnRecord;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Compares the scans the application runs over the returns history when it is held
+// as a list of ReturnRecord objects and as a ReturnColumns store, and checks both
+// agree: the date-range and customer selections behind the returns and history
+// screens, and formatting returns.csv for a snapshot (materializing every record, as
+// before, against writing the lines straight from the columns).
+// Usage: java -Xmx4g -cp <classes> bench.ReturnScanBenchmark [rows...]   (default 1000000 10000000)
+public class ReturnScanBenchmark {
+    private static final int RUNS = 5;
+    private static final LocalDate RANGE_FROM = LocalDate.of(2023, 1, 1);
+    private static final LocalDate RANGE_TO = LocalDate.of(2023, 6, 30);
+
+    public static void main(String[] args) {
+        long[] sizes = args.length > 0
+                ? java.util.Arrays.stream(args).mapToLong(Long::parseLong).toArray()
+                : new long[]{1_000_000, 10_000_000};
+
+        System.out.printf("%-12s %-14s %12s %12s %10s %8s %s%n",
+                "Returns", "Scan", "Objects ms", "Columns ms", "Mrows/s", "Speedup", "Identical");
+        for (long size : sizes) {
+            List<ReturnRecord> records = ReportBenchmark.generate((int) size);
+            ReturnColumns columns = ReturnColumns.of(records);
+            String customerId = records.get(records.size() / 2).getCustomerId();
+
+            report(size, "date range", () -> csv(selectObjectsBetween(records)),
+                    () -> csv(columns.selectEndDateBetween(RANGE_FROM, RANGE_TO)));
+            report(size, "customer", () -> csv(selectObjectsByCustomer(records, customerId)),
+                    () -> csv(columns.selectCustomer(customerId)));
+            report(size, "csv snapshot", () -> csv(columns.toList()), () -> columns.snapshot().toCsvLines());
+        }
+    }
+
+    private static void report(long size, String scan, Supplier<List<String>> objects,
+                               Supplier<List<String>> columns) {
+        double objectMs = Double.MAX_VALUE;
+        double columnMs = Double.MAX_VALUE;
+        List<String> objectResult = null;
+        List<String> columnResult = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            objectResult = objects.get();
+            objectMs = Math.min(objectMs, (System.nanoTime() - start) / 1e6);
+
+            start = System.nanoTime();
+            columnResult = columns.get();
+            columnMs = Math.min(columnMs, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("%-12d %-14s %12.1f %12.1f %10.1f %7.2fx %s%n", size, scan, objectMs, columnMs,
+                size / columnMs / 1000, objectMs / columnMs, objectResult.equals(columnResult));
+    }
+
+    private static List<ReturnRecord> selectObjectsBetween(List<ReturnRecord> records) {
+        List<ReturnRecord> selected = new ArrayList<>();
+        for (ReturnRecord record : records) {
+            if (!record.getEndDate().isBefore(RANGE_FROM) && !record.getEndDate().isAfter(RANGE_TO)) {
+                selected.add(record);
+            }
+        }
+        return selected;
+    }
+
+    private static List<ReturnRecord> selectObjectsByCustomer(List<ReturnRecord> records, String customerId) {
+        List<ReturnRecord> selected = new ArrayList<>();
+        for (ReturnRecord record : records) {
+            if (record.getCustomerId().equals(customerId)) selected.add(record);
+        }
+        return selected;
+    }
+
+    private static List<String> csv(List<ReturnRecord> records) {
+        List<String> lines = new ArrayList<>(records.size());
+        for (ReturnRecord record : records) {
+            lines.add(record.toCsvString());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,175 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Time from launching the console application to its first menu, with and without
+// the class-data archive built by scripts/rental.sh --train. Every run is a fresh JVM
+// on a generated dataset in a scratch directory: it waits for the login menu prompt,
+// then picks Exit. The two modes alternate so both see the same machine conditions,
+// and the first pair is discarded to warm the OS file cache. "Without" still uses the
+// JDK's default archive of its own classes, as a plain java launch does.
+// Usage: java -cp core/target/rental-core.jar bench.StartupBenchmark [runs=10] [returns=20000]
+//        [jar=<the jar this runs from>] [archive=<jar dir>/rental.jsa] [replica=false]
+public class StartupBenchmark {
+    private static final String FIRST_PROMPT = "Select option: ";
+
+    private int runs = 10;
+    private boolean replica;
+    private Path jar;
+    private Path archive;
+    private final DatasetGenerator dataset = new DatasetGenerator().equipment(500).customers(1000).returns(20_000);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        StartupBenchmark benchmark = new StartupBenchmark();
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2 || !benchmark.configure(parts[0], parts[1])) {
+                System.err.println("Unknown setting: " + arg);
+                System.exit(2);
+            }
+        }
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+
+    private boolean configure(String key, String value) {
+        switch (key) {
+            case "runs" -> runs = Integer.parseInt(value);
+            case "returns" -> dataset.returns(Integer.parseInt(value));
+            case "jar" -> jar = Path.of(value).toAbsolutePath();
+            case "archive" -> archive = Path.of(value).toAbsolutePath();
+            case "replica" -> replica = Boolean.parseBoolean(value);
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        if (jar == null) jar = runningJar();
+        if (jar == null || !Files.isRegularFile(jar)) {
+            System.err.println("Run from core/target/rental-core.jar (mvn package) or pass jar=<path>.");
+            return false;
+        }
+        if (archive == null) archive = jar.resolveSibling("rental.jsa");
+        if (!Files.isRegularFile(archive)) {
+            System.err.println("No class-data archive at " + archive + "; build it with scripts/rental.sh --train");
+            return false;
+        }
+
+        Path dataDir = Files.createTempDirectory("rental-startup");
+        try {
+            DatasetGenerator.Summary summary = dataset.write(dataDir);
+            List<Double> plain = new ArrayList<>();
+            List<Double> shared = new ArrayList<>();
+            for (int i = 0; i <= runs; i++) {
+                double plainMillis = timeToFirstMenu(dataDir, false);
+                double sharedMillis = timeToFirstMenu(dataDir, true);
+                if (i == 0) continue;
+                plain.add(plainMillis);
+                shared.add(sharedMillis);
+            }
+
+            System.out.printf("Time to first menu over %d runs each (%d returns, %d equipment, replica %s)%n",
+                    runs, summary.returns(), summary.equipment(), replica ? "on" : "off");
+            System.out.printf("%-20s %10s %10s %10s %10s%n", "Mode", "median", "mean", "min", "max");
+            print("without archive", plain);
+            print("with AppCDS archive", shared);
+            System.out.printf("Median speedup: %.2fx%n", median(plain) / median(shared));
+            return true;
+        } finally {
+            deleteRecursively(dataDir);
+        }
+    }
+
+    private double timeToFirstMenu(Path dataDir, boolean useArchive) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (useArchive) {
+            // fail the run instead of silently falling back when the archive does not match the jar
+            command.add("-Xshare:on");
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-Drental.dataDir=" + dataDir);
+        command.add("-Drental.replica=" + replica);
+        command.add("-cp");
+        command.add(jar.toString());
+        command.add("Main");
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            if (!awaitOutput(process.getInputStream(), FIRST_PROMPT)) {
+                throw new IOException("Application exited before its first menu (exit code "
+                        + process.waitFor() + ")" + (useArchive ? "; the archive may not match the jar" : ""));
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+
+            OutputStream input = process.getOutputStream();
+            input.write("3\n".getBytes(StandardCharsets.UTF_8));
+            input.flush();
+            process.getInputStream().transferTo(OutputStream.nullOutputStream());
+            process.waitFor();
+            return millis;
+        } finally {
+            process.destroy();
+        }
+    }
+
+    private static boolean awaitOutput(InputStream output, String text) throws IOException {
+        byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+        int matched = 0;
+        int next;
+        while ((next = output.read()) >= 0) {
+            if (next == expected[matched]) {
+                if (++matched == expected.length) return true;
+            } else {
+                matched = next == expected[0] ? 1 : 0;
+            }
+        }
+        return false;
+    }
+
+    private static void print(String mode, List<Double> millis) {
+        System.out.printf("%-20s %7.0f ms %7.0f ms %7.0f ms %7.0f ms%n", mode, median(millis),
+                millis.stream().mapToDouble(Double::doubleValue).average().orElse(0),
+                Collections.min(millis), Collections.max(millis));
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    private static Path runningJar() {
+        try {
+            Path location = Path.of(StartupBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return location.toString().endsWith(".jar") ? location : null;
+        } catch (URISyntaxException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -1,152 +1,391 @@
 package data;
 
+import metrics.FlightEvents;
+import metrics.Metrics;
 import models.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Function;
 
 public class FileHandler {
-    private static final String EQUIPMENT_FILE = "equipment.csv";
-    private static final String RENTALS_FILE = "rentals.csv";
-    private static final String RETURNS_FILE = "returns.csv";
+    public static final String EQUIPMENT_FILE = "equipment.csv";
+    public static final String RENTALS_FILE = "rentals.csv";
+    public static final String RETURNS_FILE = "returns.csv";
+    public static final String IDEMPOTENCY_FILE = "idempotency.csv";
+    // data files live in the working directory unless -Drental.dataDir points elsewhere
+    public static final Path BASE_DIR = Path.of(System.getProperty("rental.dataDir", ""));
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     public static List<Equipment> loadEquipment() {
+        return loadEquipment(BASE_DIR);
+    }
+
+    public static List<Equipment> loadEquipment(Path dir) {
         List<Equipment> equipment = new ArrayList<>();
+        long started = System.nanoTime();
         try {
-            if (!Files.exists(Path.of(EQUIPMENT_FILE))) {
-                createEquipmentFile();
+            if (!Files.exists(dir.resolve(EQUIPMENT_FILE))) {
+                createEquipmentFile(dir);
             }
 
-            List<String> lines = Files.readAllLines(Path.of(EQUIPMENT_FILE));
+            List<String> lines = readLines(dir.resolve(EQUIPMENT_FILE));
             for (String line : lines) {
                 if (line.trim().isEmpty()) continue;
-                String[] parts = line.split(",");
-                if (parts.length >= 4) {
-                    String category = parts.length > 4 ? parts[4].trim() : "General";
-                    equipment.add(new Equipment(
-                            parts[0].trim(),
-                            parts[1].trim(),
-                            Double.parseDouble(parts[2].trim()),
-                            parts[3].trim(),
-                            category
-                    ));
+                Equipment eq = parseEquipment(line);
+                if (eq != null) {
+                    equipment.add(eq);
                 }
             }
         } catch (IOException | NumberFormatException e) {
             System.err.println("Error loading equipment: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.loadEquipment", started);
         }
         return equipment;
     }
 
     public static void saveEquipment(List<Equipment> equipment) {
+        saveEquipment(BASE_DIR, equipment);
+    }
+
+    public static void saveEquipment(Path dir, List<Equipment> equipment) {
+        long started = System.nanoTime();
         try {
             List<String> lines = new ArrayList<>();
             for (Equipment eq : equipment) {
                 lines.add(eq.toCsvString());
             }
-            Files.write(Path.of(EQUIPMENT_FILE), lines);
+            writeLines(dir.resolve(EQUIPMENT_FILE), lines, false);
         } catch (IOException e) {
             System.err.println("Error saving equipment: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.saveEquipment", started);
         }
     }
 
     public static List<Rental> loadRentals() {
+        return loadRentals(BASE_DIR);
+    }
+
+    public static List<Rental> loadRentals(Path dir) {
         List<Rental> rentals = new ArrayList<>();
 
+        long started = System.nanoTime();
         try {
-            if (!Files.exists(Path.of(RENTALS_FILE))) {
-                createRentalsFile();
+            if (!Files.exists(dir.resolve(RENTALS_FILE))) {
+                createRentalsFile(dir);
             }
 
-            List<String> lines = Files.readAllLines(Path.of(RENTALS_FILE));
+            List<String> lines = readLines(dir.resolve(RENTALS_FILE));
             for (String line : lines) {
                 if (line.trim().isEmpty()) continue;
-                String[] parts = line.split(",");
-                if (parts.length >= 6) {
-                    rentals.add(new Rental(
-                            parts[0].trim(),
-                            parts[1].trim(),
-                            parts[2].trim(),
-                            LocalDate.parse(parts[3].trim(), DATE_TIME_FORMATTER),
-                            Integer.parseInt(parts[4].trim()),
-                            Double.parseDouble(parts[5].trim())
-                            ));
+                Rental rental = parseRental(line);
+                if (rental != null) {
+                    rentals.add(rental);
                 }
             }
         } catch (IOException | NumberFormatException e) {
             System.err.println("Error loading rentals: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.loadRentals", started);
         }
         return rentals;
     }
 
     public static void saveRentals(List<Rental> rentals) {
+        saveRentals(BASE_DIR, rentals);
+    }
+
+    public static void saveRentals(Path dir, List<Rental> rentals) {
+        long started = System.nanoTime();
         try {
             List<String> lines = new ArrayList<>();
             for (Rental rental : rentals) {
                 lines.add(rental.toCsvString());
             }
-            Files.write(Path.of(RENTALS_FILE), lines);
+            writeLines(dir.resolve(RENTALS_FILE), lines, false);
         } catch (IOException e) {
             System.err.println("Error saving rentals: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.saveRentals", started);
         }
     }
 
     public static List<ReturnRecord> loadReturns() {
+        return loadReturns(BASE_DIR);
+    }
+
+    public static List<ReturnRecord> loadReturns(Path dir) {
         List<ReturnRecord> returns = new ArrayList<>();
+        long started = System.nanoTime();
         try {
-            if (!Files.exists(Path.of(RETURNS_FILE))) {
-                createReturnsFile();
+            if (!Files.exists(dir.resolve(RETURNS_FILE))) {
+                createReturnsFile(dir);
             }
 
-            List<String> lines = Files.readAllLines(Path.of(RETURNS_FILE));
+            List<String> lines = readLines(dir.resolve(RETURNS_FILE));
             for (String line : lines) {
                 if (line.trim().isEmpty()) continue;
-                String[] parts = line.split(",");
-                if (parts.length >= 6) {
-                    ReturnRecord record = new ReturnRecord(
-                            parts[0].trim(),
-                            parts[1].trim(),
-                            parts[2].trim(),
-                            LocalDate.parse(parts[3].trim(), DATE_TIME_FORMATTER),
-                            LocalDate.parse(parts[4].trim(), DATE_TIME_FORMATTER),
-                            Double.parseDouble(parts[5].trim())
-                    );
-                    if (parts.length > 6) {
-                        record.setLateFee(Double.parseDouble(parts[6].trim()));
-                    }
-                    if (parts.length > 7) {
-                        record.setCondition(parts[7].trim());
-                    }
+                ReturnRecord record = parseReturn(line);
+                if (record != null) {
                     returns.add(record);
                 }
             }
         } catch (IOException | NumberFormatException e) {
             System.err.println("Error loading returns: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.loadReturns", started);
         }
         return returns;
     }
 
     public static void saveReturns(List<ReturnRecord> returns) {
+        saveReturns(BASE_DIR, returns);
+    }
+
+    public static void saveReturns(Path dir, List<ReturnRecord> returns) {
+        long started = System.nanoTime();
         try {
             List<String> lines = new ArrayList<>();
             for (ReturnRecord record : returns) {
                 lines.add(record.toCsvString());
             }
-            Files.write(Path.of(RETURNS_FILE), lines);
+            writeLines(dir.resolve(RETURNS_FILE), lines, false);
         } catch (IOException e) {
             System.err.println("Error saving returns: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.saveReturns", started);
+        }
+    }
+
+    // Every row of one directory's data files, for moving them to other directories.
+    // Unlike the load and save methods these throw instead of skipping what they
+    // cannot read or write, so a move never drops a row.
+    public record DataFiles(List<Equipment> equipment, List<Rental> rentals, List<ReturnRecord> returns) {}
+
+    public static DataFiles readDataFiles(Path dir) throws IOException {
+        // a directory that never had equipment starts with the same defaults as loadEquipment
+        if (!Files.exists(dir.resolve(EQUIPMENT_FILE))) {
+            createEquipmentFile(dir);
+        }
+        return new DataFiles(readRows(dir.resolve(EQUIPMENT_FILE), FileHandler::parseEquipment),
+                readRows(dir.resolve(RENTALS_FILE), FileHandler::parseRental),
+                readRows(dir.resolve(RETURNS_FILE), FileHandler::parseReturn));
+    }
+
+    private static <T> List<T> readRows(Path file, Function<String, T> parser) throws IOException {
+        List<T> rows = new ArrayList<>();
+        if (!Files.exists(file)) return rows;
+
+        for (String line : readLines(file)) {
+            if (line.trim().isEmpty()) continue;
+            T row;
+            try {
+                row = parser.apply(line);
+            } catch (RuntimeException e) {
+                throw new IOException("Unreadable line in " + file + ": " + line, e);
+            }
+            if (row == null) throw new IOException("Unreadable line in " + file + ": " + line);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // each file is forced to disk, and the directory with it
+    public static void writeDataFiles(Path dir, DataFiles files) throws IOException {
+        Files.createDirectories(dir);
+        writeLines(dir.resolve(EQUIPMENT_FILE), files.equipment().stream().map(Equipment::toCsvString).toList(), true);
+        writeLines(dir.resolve(RENTALS_FILE), files.rentals().stream().map(Rental::toCsvString).toList(), true);
+        writeLines(dir.resolve(RETURNS_FILE), files.returns().stream().map(ReturnRecord::toCsvString).toList(), true);
+    }
+
+    // the data files and what a crash can leave of their writes; other files are left alone
+    public static void deleteDataFiles(Path dir) throws IOException {
+        for (String name : List.of(EQUIPMENT_FILE, RENTALS_FILE, RETURNS_FILE)) {
+            Files.deleteIfExists(dir.resolve(name));
+            Files.deleteIfExists(dir.resolve(name + ".tmp"));
+        }
+    }
+
+    public static List<IdempotencyRecord> loadIdempotencyRecords() {
+        List<IdempotencyRecord> records = new ArrayList<>();
+        Path file = BASE_DIR.resolve(IDEMPOTENCY_FILE);
+        if (!Files.exists(file)) return records;
+
+        long started = System.nanoTime();
+        try {
+            for (String line : readLines(file)) {
+                if (line.trim().isEmpty()) continue;
+                IdempotencyRecord record = parseIdempotencyRecord(line);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error loading idempotency keys: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.loadIdempotencyRecords", started);
+        }
+        return records;
+    }
+
+    public static IdempotencyRecord parseIdempotencyRecord(String line) {
+        String[] parts = line.split(",", 4);
+        if (parts.length < 4) return null;
+
+        return new IdempotencyRecord(
+                parts[0],
+                parts[1],
+                IdempotencyRecord.unescape(parts[3]),
+                Long.parseLong(parts[2].trim())
+        );
+    }
+
+    public static Equipment parseEquipment(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 4) return null;
+
+        String category = parts.length > 4 ? parts[4].trim() : "General";
+        return new Equipment(
+                parts[0].trim(),
+                parts[1].trim(),
+                Double.parseDouble(parts[2].trim()),
+                parts[3].trim(),
+                category
+        );
+    }
+
+    public static Rental parseRental(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 6) return null;
+
+        return new Rental(
+                parts[0].trim(),
+                parts[1].trim(),
+                parts[2].trim(),
+                LocalDate.parse(parts[3].trim(), DATE_TIME_FORMATTER),
+                Integer.parseInt(parts[4].trim()),
+                Double.parseDouble(parts[5].trim())
+        );
+    }
+
+    public static ReturnRecord parseReturn(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 6) return null;
+
+        ReturnRecord record = new ReturnRecord(
+                parts[0].trim(),
+                parts[1].trim(),
+                parts[2].trim(),
+                LocalDate.parse(parts[3].trim(), DATE_TIME_FORMATTER),
+                LocalDate.parse(parts[4].trim(), DATE_TIME_FORMATTER),
+                Double.parseDouble(parts[5].trim())
+        );
+        if (parts.length > 6) {
+            record.setLateFee(Double.parseDouble(parts[6].trim()));
+        }
+        if (parts.length > 7) {
+            record.setCondition(parts[7].trim());
+        }
+        return record;
+    }
+
+    static List<String> readLines(Path file) throws IOException {
+        FlightEvents.FileRead event = new FlightEvents.FileRead();
+        event.begin();
+        long started = System.nanoTime();
+        List<String> lines = Files.readAllLines(file);
+        long bytes = Files.size(file);
+        IoStats.recordRead(file.getFileName().toString(), bytes, System.nanoTime() - started);
+        if (event.shouldCommit()) {
+            event.file = file.toString();
+            event.rows = lines.size();
+            event.bytes = bytes;
+            event.commit();
+        }
+        return lines;
+    }
+
+    public static void writeLines(Path file, List<String> lines, boolean fsync) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (String line : lines) {
+            content.append(line).append(System.lineSeparator());
+        }
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(content.toString());
+
+        String name = file.getFileName().toString();
+        int bytes = buffer.remaining();
+        FlightEvents.FileWrite event = new FlightEvents.FileWrite();
+        event.begin();
+        long started = System.nanoTime();
+        // write beside the file and move it over, so a crash leaves the old or the new file, never half of one
+        Path temp = file.resolveSibling(name + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                IoStats.recordWrite(name, bytes, System.nanoTime() - started);
+                if (fsync) {
+                    long syncing = System.nanoTime();
+                    channel.force(true);
+                    IoStats.recordFsync(name, System.nanoTime() - syncing);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (fsync) {
+                long syncing = System.nanoTime();
+                forceDirectory(file.toAbsolutePath().getParent());
+                IoStats.recordFsync(name, System.nanoTime() - syncing);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            Metrics.record("file.writeLines", started);
+            if (event.shouldCommit()) {
+                event.file = file.toString();
+                event.rows = lines.size();
+                event.bytes = bytes;
+                event.fsync = fsync;
+                event.commit();
+            }
+        }
+    }
+
+    // makes the rename itself durable
+    public static void forceDirectory(Path dir) throws IOException {
+        if (dir == null) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (UnsupportedOperationException | AccessDeniedException e) {
+            // Windows refuses to open directories
         }
     }
 
-    private static void createEquipmentFile() throws IOException {
+    private static void createEquipmentFile(Path dir) throws IOException {
         List<String> initialData = Arrays.asList(
                 "E101,Projector,20.00,Available,Electronics",
                 "E102,Sound System,50.00,Available,Audio",
@@ -154,14 +393,14 @@ public class FileHandler {
                 "E104,Camera,25.00,Available,Photography",
                 "E105,Microphone,10.00,Available,Audio"
         );
-        Files.write(Path.of(EQUIPMENT_FILE), initialData);
+        Files.write(dir.resolve(EQUIPMENT_FILE), initialData);
     }
 
-    private static void createRentalsFile() throws IOException {
-        Files.createFile(Path.of(RENTALS_FILE));
+    private static void createRentalsFile(Path dir) throws IOException {
+        Files.createFile(dir.resolve(RENTALS_FILE));
     }
 
-    private static void createReturnsFile() throws IOException {
-        Files.createFile(Path.of(RETURNS_FILE));
+    private static void createReturnsFile(Path dir) throws IOException {
+        Files.createFile(dir.resolve(RETURNS_FILE));
     }
 }
@@ -0,0 +1,96 @@
+package data;
+
+import metrics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Disk traffic per data file, keyed by file name so every shard's copy of a file adds
+// up to one line. Writers report bytes and timings; the persistence side reports how
+// many logical records each change touched, which gives the write amplification:
+// bytes rewritten per record actually changed.
+public final class IoStats {
+    private static final Map<String, FileStats> files = new ConcurrentHashMap<>();
+
+    private IoStats() {}
+
+    static void recordRead(String file, long bytes, long nanos) {
+        FileStats stats = stats(file);
+        stats.reads.incrementAndGet();
+        stats.bytesRead.addAndGet(bytes);
+        stats.readLatency.record(nanos);
+    }
+
+    static void recordWrite(String file, long bytes, long writeNanos) {
+        FileStats stats = stats(file);
+        stats.rewrites.incrementAndGet();
+        stats.bytesWritten.addAndGet(bytes);
+        stats.writeLatency.record(writeNanos);
+    }
+
+    static void recordFsync(String file, long nanos) {
+        stats(file).fsyncLatency.record(nanos);
+    }
+
+    // called once per logical record changed, whether or not its file has been rewritten yet
+    public static void recordChanged(String file) {
+        stats(file).recordsChanged.incrementAndGet();
+    }
+
+    private static FileStats stats(String file) {
+        FileStats stats = files.get(file);
+        return stats != null ? stats : files.computeIfAbsent(file, f -> new FileStats());
+    }
+
+    // file name -> counters and latencies, sorted by file name
+    public static Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        files.forEach((file, stats) -> result.put(file, stats.toMap()));
+        return result;
+    }
+
+    public static void reset() {
+        files.clear();
+    }
+
+    private static final class FileStats {
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong rewrites = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong recordsChanged = new AtomicLong();
+        private final LatencyHistogram readLatency = new LatencyHistogram();
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+        private final LatencyHistogram fsyncLatency = new LatencyHistogram();
+
+        Map<String, Object> toMap() {
+            LatencyHistogram.Snapshot read = readLatency.snapshot();
+            LatencyHistogram.Snapshot write = writeLatency.snapshot();
+            LatencyHistogram.Snapshot fsync = fsyncLatency.snapshot();
+            long changed = recordsChanged.get();
+
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("reads", reads.get());
+            metrics.put("bytesRead", bytesRead.get());
+            metrics.put("readP99Micros", micros(read.getValueAtPercentile(99.0)));
+            metrics.put("rewrites", rewrites.get());
+            metrics.put("bytesWritten", bytesWritten.get());
+            metrics.put("writeP50Micros", micros(write.getValueAtPercentile(50.0)));
+            metrics.put("writeP99Micros", micros(write.getValueAtPercentile(99.0)));
+            metrics.put("fsyncs", fsync.getCount());
+            metrics.put("fsyncP50Micros", micros(fsync.getValueAtPercentile(50.0)));
+            metrics.put("fsyncP99Micros", micros(fsync.getValueAtPercentile(99.0)));
+            metrics.put("recordsChanged", changed);
+            // bytes written per record changed; 0 until something has changed
+            metrics.put("writeAmplification", changed > 0 ? (double) bytesWritten.get() / changed : 0.0);
+            return metrics;
+        }
+
+        private static double micros(long nanos) {
+            return nanos / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package data;
+
+import models.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Hands file rewrites to a single writer thread so callers don't pay for disk I/O.
+// Every submit gets a ticket; tickets complete in order, so waiting on the last
+// ticket of a mutation covers all of its files. A failed write stays outstanding
+// until a later snapshot of the same file lands, and await() reports false while any
+// write up to the awaited ticket is outstanding.
+public class PersistenceQueue {
+    public enum Durability {
+        QUEUED,   // return as soon as the snapshot is on the queue
+        WRITTEN,  // wait until the file has been rewritten
+        FSYNCED   // wait until the file has been rewritten and forced to disk
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private record WriteRequest(long ticket, Path file, List<String> lines, boolean fsync) {}
+
+    private final BlockingQueue<WriteRequest> queue;
+    private final Thread writer;
+    private final Object progressLock = new Object();
+    private final AtomicLong ticketCounter = new AtomicLong();
+    private long completedTicket;
+    // file -> oldest ticket whose snapshot of it is not on disk, until a later write succeeds
+    private final Map<Path, Long> failedFiles = new HashMap<>();
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong fileWrites = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong backpressureStalls = new AtomicLong();
+    private final AtomicLong backpressureNanos = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    public PersistenceQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PersistenceQueue(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::runWriter, "persistence-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public long saveEquipment(Path dir, List<Equipment> equipment, Durability durability) {
+        return submit(dir.resolve(FileHandler.EQUIPMENT_FILE), equipment, Equipment::toCsvString, durability);
+    }
+
+    public long saveRentals(Path dir, List<Rental> rentals, Durability durability) {
+        return submit(dir.resolve(FileHandler.RENTALS_FILE), rentals, Rental::toCsvString, durability);
+    }
+
+    public long saveReturns(Path dir, ReturnColumns.Snapshot returns, Durability durability) {
+        return submitLines(dir.resolve(FileHandler.RETURNS_FILE), returns.toCsvLines(), durability);
+    }
+
+    public long saveIdempotencyRecords(List<IdempotencyRecord> records, Durability durability) {
+        return submit(FileHandler.BASE_DIR.resolve(FileHandler.IDEMPOTENCY_FILE), records,
+                IdempotencyRecord::toCsvString, durability);
+    }
+
+    public long saveUsers(List<User> users, Durability durability) {
+        return submit(FileHandler.BASE_DIR.resolve(UserFileHandler.USERS_FILE), users, User::toCsvString, durability);
+    }
+
+    // The snapshot is formatted on the caller's thread so the writer never sees a list mid-mutation
+    private <T> long submit(Path file, List<T> items, Function<T, String> formatter, Durability durability) {
+        List<String> lines = new ArrayList<>(items.size());
+        for (T item : items) {
+            lines.add(formatter.apply(item));
+        }
+        return submitLines(file, lines, durability);
+    }
+
+    private long submitLines(Path file, List<String> lines, Durability durability) {
+        long ticket;
+        WriteRequest request;
+        // ticket order has to match queue order, otherwise the completed watermark could skip a request
+        synchronized (queue) {
+            ticket = ticketCounter.incrementAndGet();
+            request = new WriteRequest(ticket, file, lines, durability == Durability.FSYNCED);
+            enqueue(request);
+        }
+        submitted.incrementAndGet();
+
+        int depth = queue.size();
+        if (depth > maxQueueDepth) {
+            maxQueueDepth = depth;
+        }
+        return ticket;
+    }
+
+    private void enqueue(WriteRequest request) {
+        if (queue.offer(request)) return;
+
+        // disk is falling behind: block the caller until the writer catches up
+        backpressureStalls.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            queue.put(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for persistence queue", e);
+        } finally {
+            backpressureNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    // true once everything up to the ticket is on disk; false if a write failed or the wait was interrupted
+    public boolean await(long ticket, Durability durability) {
+        if (durability == Durability.QUEUED) return true;
+
+        synchronized (progressLock) {
+            while (completedTicket < ticket) {
+                try {
+                    progressLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            for (long failed : failedFiles.values()) {
+                if (failed <= ticket) return false;
+            }
+            return true;
+        }
+    }
+
+    public long getLastTicket() {
+        return ticketCounter.get();
+    }
+
+    public boolean flush() {
+        return await(ticketCounter.get(), Durability.WRITTEN);
+    }
+
+    public void close() {
+        if (!running) return;
+        if (!flush()) {
+            System.err.println("Warning: not every pending change reached the disk before shutdown.");
+        }
+        running = false;
+        writer.interrupt();
+    }
+
+    private void runWriter() {
+        List<WriteRequest> batch = new ArrayList<>();
+        while (running) {
+            try {
+                WriteRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<WriteRequest> batch) {
+        // each request is a full snapshot, so only the newest one per file needs to hit the disk
+        Map<Path, WriteRequest> latest = new LinkedHashMap<>();
+        Map<Path, Long> firstTickets = new HashMap<>();
+        Set<Path> needsSync = new HashSet<>();
+        long lastTicket = 0;
+        for (WriteRequest request : batch) {
+            firstTickets.putIfAbsent(request.file(), request.ticket());
+            if (latest.put(request.file(), request) != null) {
+                coalesced.incrementAndGet();
+            }
+            if (request.fsync()) {
+                needsSync.add(request.file());
+            }
+            lastTicket = Math.max(lastTicket, request.ticket());
+        }
+
+        Map<Path, Long> outcomes = new HashMap<>();
+        for (WriteRequest request : latest.values()) {
+            boolean fsync = needsSync.contains(request.file());
+            try {
+                FileHandler.writeLines(request.file(), request.lines(), fsync);
+                fileWrites.incrementAndGet();
+                if (fsync) fsyncs.incrementAndGet();
+                outcomes.put(request.file(), null);
+            } catch (IOException e) {
+                failedWrites.incrementAndGet();
+                System.err.println("Error saving " + request.file() + ": " + e.getMessage());
+                outcomes.put(request.file(), firstTickets.get(request.file()));
+            }
+        }
+
+        synchronized (progressLock) {
+            outcomes.forEach((file, failedTicket) -> {
+                if (failedTicket == null) {
+                    failedFiles.remove(file);
+                } else {
+                    failedFiles.merge(file, failedTicket, Math::min);
+                }
+            });
+            completedTicket = lastTicket;
+            progressLock.notifyAll();
+        }
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+    public int getMaxQueueDepth() { return maxQueueDepth; }
+    public int getCapacity() { return queue.size() + queue.remainingCapacity(); }
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getFileWriteCount() { return fileWrites.get(); }
+    public long getCoalescedCount() { return coalesced.get(); }
+    public long getFsyncCount() { return fsyncs.get(); }
+    public long getFailedWriteCount() { return failedWrites.get(); }
+    public long getBackpressureStalls() { return backpressureStalls.get(); }
+    public long getBackpressureWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(backpressureNanos.get()); }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queueDepth", getQueueDepth());
+        metrics.put("maxQueueDepth", getMaxQueueDepth());
+        metrics.put("queueCapacity", getCapacity());
+        metrics.put("submitted", getSubmittedCount());
+        metrics.put("fileWrites", getFileWriteCount());
+        metrics.put("coalesced", getCoalescedCount());
+        metrics.put("fsyncs", getFsyncCount());
+        metrics.put("failedWrites", getFailedWriteCount());
+        metrics.put("backpressureStalls", getBackpressureStalls());
+        metrics.put("backpressureWaitMillis", getBackpressureWaitMillis());
+        return metrics;
+    }
+}
@@ -0,0 +1,197 @@
+package data;
+
+import models.ReturnRecord;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Append-only columnar store for the returns history. Each field lives in its own
+// primitive array: dates as epoch days, amounts as cents and the repeating strings
+// (equipment, customer, condition) as dictionary codes. Scans walk a few flat arrays
+// instead of chasing a ReturnRecord and its fields per row; records are only
+// materialized for the rows a caller actually asks for.
+// Not thread-safe: the owner guards it like the list it replaces.
+public class ReturnColumns {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] rentalIds = new String[INITIAL_CAPACITY];
+    private int[] startDays = new int[INITIAL_CAPACITY];
+    private int[] endDays = new int[INITIAL_CAPACITY];
+    private long[] baseCents = new long[INITIAL_CAPACITY];
+    private long[] lateFeeCents = new long[INITIAL_CAPACITY];
+    private int[] equipmentCodes = new int[INITIAL_CAPACITY];
+    private int[] customerCodes = new int[INITIAL_CAPACITY];
+    private int[] conditionCodes = new int[INITIAL_CAPACITY];
+    private final Dictionary equipment = new Dictionary();
+    private final Dictionary customers = new Dictionary();
+    private final Dictionary conditions = new Dictionary();
+    private int size;
+
+    public static ReturnColumns of(Iterable<ReturnRecord> records) {
+        ReturnColumns columns = new ReturnColumns();
+        for (ReturnRecord record : records) {
+            columns.add(record);
+        }
+        return columns;
+    }
+
+    public void add(ReturnRecord record) {
+        if (size == rentalIds.length) grow();
+        rentalIds[size] = record.getRentalId();
+        startDays[size] = (int) record.getStartDate().toEpochDay();
+        endDays[size] = (int) record.getEndDate().toEpochDay();
+        baseCents[size] = toCents(record.getTotalCost());
+        lateFeeCents[size] = toCents(record.getLateFee());
+        equipmentCodes[size] = equipment.encode(record.getEquipmentId());
+        customerCodes[size] = customers.encode(record.getCustomerId());
+        conditionCodes[size] = conditions.encode(record.getCondition());
+        size++;
+    }
+
+    private void grow() {
+        int capacity = rentalIds.length * 2;
+        rentalIds = Arrays.copyOf(rentalIds, capacity);
+        startDays = Arrays.copyOf(startDays, capacity);
+        endDays = Arrays.copyOf(endDays, capacity);
+        baseCents = Arrays.copyOf(baseCents, capacity);
+        lateFeeCents = Arrays.copyOf(lateFeeCents, capacity);
+        equipmentCodes = Arrays.copyOf(equipmentCodes, capacity);
+        customerCodes = Arrays.copyOf(customerCodes, capacity);
+        conditionCodes = Arrays.copyOf(conditionCodes, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String rentalIdAt(int row) {
+        return rentalIds[row];
+    }
+
+    public ReturnRecord get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        ReturnRecord record = new ReturnRecord(rentalIds[row], equipment.decode(equipmentCodes[row]),
+                customers.decode(customerCodes[row]), LocalDate.ofEpochDay(startDays[row]),
+                LocalDate.ofEpochDay(endDays[row]), baseCents[row] / 100.0);
+        record.setLateFee(lateFeeCents[row] / 100.0);
+        record.setCondition(conditions.decode(conditionCodes[row]));
+        return record;
+    }
+
+    public List<ReturnRecord> toList() {
+        List<ReturnRecord> records = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            records.add(get(row));
+        }
+        return records;
+    }
+
+    // newest match first
+    public ReturnRecord findByRentalId(String rentalId) {
+        for (int row = size - 1; row >= 0; row--) {
+            if (rentalIds[row].equals(rentalId)) return get(row);
+        }
+        return null;
+    }
+
+    public List<ReturnRecord> selectCustomer(String customerId) {
+        List<ReturnRecord> records = new ArrayList<>();
+        int code = customers.codeOf(customerId);
+        if (code < 0) return records;
+        for (int row = 0; row < size; row++) {
+            if (customerCodes[row] == code) records.add(get(row));
+        }
+        return records;
+    }
+
+    public List<ReturnRecord> selectEndDateBetween(LocalDate from, LocalDate to) {
+        List<ReturnRecord> records = new ArrayList<>();
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        for (int row = 0; row < size; row++) {
+            if (endDays[row] >= first && endDays[row] <= last) records.add(get(row));
+        }
+        return records;
+    }
+
+    // Rows never change once added and growing copies into new arrays, so a snapshot
+    // taken under the owner's lock can be formatted after the lock is released.
+    public Snapshot snapshot() {
+        return new Snapshot(size, rentalIds, startDays, endDays, baseCents, lateFeeCents, equipmentCodes,
+                customerCodes, conditionCodes, equipment.values(), customers.values(), conditions.values());
+    }
+
+    // The rows of a snapshot as returns.csv lines, written straight from the columns
+    // in the same format as ReturnRecord.toCsvString().
+    public record Snapshot(int size, String[] rentalIds, int[] startDays, int[] endDays, long[] baseCents,
+                           long[] lateFeeCents, int[] equipmentCodes, int[] customerCodes, int[] conditionCodes,
+                           String[] equipment, String[] customers, String[] conditions) {
+        public List<String> toCsvLines() {
+            List<String> lines = new ArrayList<>(size);
+            Map<Integer, String> dates = new HashMap<>();
+            StringBuilder line = new StringBuilder(96);
+            for (int row = 0; row < size; row++) {
+                line.setLength(0);
+                line.append(rentalIds[row]).append(',')
+                        .append(equipment[equipmentCodes[row]]).append(',')
+                        .append(customers[customerCodes[row]]).append(',')
+                        .append(dates.computeIfAbsent(startDays[row], day -> LocalDate.ofEpochDay(day).toString()))
+                        .append(',')
+                        .append(dates.computeIfAbsent(endDays[row], day -> LocalDate.ofEpochDay(day).toString()))
+                        .append(',');
+                appendCents(line, baseCents[row]).append(',');
+                appendCents(line, lateFeeCents[row]).append(',')
+                        .append(conditions[conditionCodes[row]]);
+                lines.add(line.toString());
+            }
+            return lines;
+        }
+
+        private static StringBuilder appendCents(StringBuilder line, long cents) {
+            if (cents < 0) line.append('-');
+            long abs = Math.abs(cents);
+            long fraction = abs % 100;
+            return line.append(abs / 100).append('.').append(fraction < 10 ? "0" : "").append(fraction);
+        }
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    // maps each distinct string to a dense int code
+    private static class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        int codeOf(String value) {
+            Integer code = codes.get(value);
+            return code != null ? code : -1;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        String[] values() {
+            return values.toArray(new String[0]);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package data;
 
+import metrics.Metrics;
 import models.User;
 
 import java.io.IOException;
@@ -12,19 +13,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class UserFileHandler {
-    private static final String USERS_FILE = "users.csv";
+    public static final String USERS_FILE = "users.csv";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     public static List<User> loadUsers() {
         List<User> users = new ArrayList<>();
 
+        long started = System.nanoTime();
         try {
-            if (!Files.exists(Path.of(USERS_FILE))) {
+            if (!Files.exists(FileHandler.BASE_DIR.resolve(USERS_FILE))) {
                 System.out.println("Users file not found. Will create default accounts.");
                 return users;
             }
 
-            List<String> lines = Files.readAllLines(Path.of(USERS_FILE));
+            List<String> lines = FileHandler.readLines(FileHandler.BASE_DIR.resolve(USERS_FILE));
             for (String line : lines) {
                 if (line.trim().isEmpty()) continue;
 
@@ -35,6 +37,7 @@ public class UserFileHandler {
                     }
                 } catch (Exception e) {
                     System.err.println("Error parsing user line: " + line + " - " + e.getMessage());
+                    Metrics.count("file.errors");
 
                 }
             }
@@ -43,24 +46,31 @@ public class UserFileHandler {
 
         } catch (IOException e) {
             System.err.println("Error loading users: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.loadUsers", started);
         }
 
         return users;
     }
 
     public static void saveUsers(List<User> users) {
+        long started = System.nanoTime();
         try {
             List<String> lines = new ArrayList<>();
             for (User user : users) {
                 lines.add(user.toCsvString());
             }
-            Files.write(Path.of(USERS_FILE), lines);
+            FileHandler.writeLines(FileHandler.BASE_DIR.resolve(USERS_FILE), lines, false);
         } catch (IOException e) {
             System.err.println("Error saving users: " + e.getMessage());
+            Metrics.count("file.errors");
+        } finally {
+            Metrics.record("file.saveUsers", started);
         }
     }
 
-    private static User parseUserFromCsv(String line) {
+    public static User parseUserFromCsv(String line) {
         String[] parts = line.split(",");
 
         if (parts.length < 6) {
@@ -113,6 +123,7 @@ public class UserFileHandler {
 
         } catch (IllegalArgumentException e) {
             System.err.println("Error parsing user enums: " + e.getMessage());
+            Metrics.count("file.errors");
             return null;
         }
     }
@@ -0,0 +1,65 @@
+package events;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Keeps the most recent notifications for admins to browse
+public class ActivityFeed implements EventHandler {
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final int capacity;
+    private final Deque<String> entries;
+
+    public ActivityFeed(int capacity) {
+        this.capacity = capacity;
+        this.entries = new ArrayDeque<>(capacity);
+    }
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        String message = describe(event);
+        if (message == null) return;
+
+        String time = LocalDateTime.ofInstant(Instant.ofEpochMilli(event.getTimestamp()), ZoneId.systemDefault())
+                .format(TIME_FORMATTER);
+        synchronized (entries) {
+            if (entries.size() == capacity) {
+                entries.removeFirst();
+            }
+            entries.addLast(time + " | " + message);
+        }
+    }
+
+    private String describe(DomainEvent event) {
+        return switch (event.getType()) {
+            case EQUIPMENT_RENTED -> String.format("%s rented %s (%s), $%.2f",
+                    event.getUserId(), event.getEquipmentId(), event.getRentalId(), event.getAmount());
+            case EQUIPMENT_RETURNED -> event.getLateFee() > 0
+                    ? String.format("%s returned %s LATE, late fee $%.2f",
+                            event.getUserId(), event.getEquipmentId(), event.getLateFee())
+                    : String.format("%s returned %s", event.getUserId(), event.getEquipmentId());
+            case FORCE_RETURNED -> String.format("%s force-returned by admin, condition: %s",
+                    event.getEquipmentId(), event.getDetail());
+            case STATUS_CHANGED -> String.format("%s status changed to %s",
+                    event.getEquipmentId(), event.getDetail());
+            case EQUIPMENT_ADDED -> String.format("%s added to inventory", event.getEquipmentId());
+            case EQUIPMENT_REMOVED -> String.format("%s removed from inventory", event.getEquipmentId());
+            case USER_LOGGED_IN -> String.format("%s logged in", event.getUserId());
+            case USER_CHANGED -> event.getDetail() != null
+                    ? String.format("%s account update: %s", event.getUserId(), event.getDetail())
+                    : null;
+        };
+    }
+
+    public List<String> getRecentEntries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+}
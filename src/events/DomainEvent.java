@@ -0,0 +1,44 @@
+package events;
+
+import models.ReturnRecord;
+
+// Preallocated ring buffer slot. Publishers overwrite the fields in place, so
+// handlers must copy anything they want to keep beyond onEvent.
+public class DomainEvent {
+    private EventType type;
+    private String userId;
+    private String equipmentId;
+    private String rentalId;
+    private String detail;
+    private double amount;
+    private double lateFee;
+    private boolean fsync;
+    private long timestamp;
+    private ReturnRecord returnRecord;
+
+    void set(EventType type, String userId, String equipmentId, String rentalId,
+             String detail, double amount, double lateFee, boolean fsync, ReturnRecord returnRecord) {
+        this.type = type;
+        this.userId = userId;
+        this.equipmentId = equipmentId;
+        this.rentalId = rentalId;
+        this.detail = detail;
+        this.amount = amount;
+        this.lateFee = lateFee;
+        this.fsync = fsync;
+        this.timestamp = System.currentTimeMillis();
+        this.returnRecord = returnRecord;
+    }
+
+    public EventType getType() { return type; }
+    public String getUserId() { return userId; }
+    public String getEquipmentId() { return equipmentId; }
+    public String getRentalId() { return rentalId; }
+    public String getDetail() { return detail; }
+    public double getAmount() { return amount; }
+    public double getLateFee() { return lateFee; }
+    public boolean isFsyncRequested() { return fsync; }
+    public long getTimestamp() { return timestamp; }
+    // the row a return added; it is not changed after publishing, so handlers may keep it
+    public ReturnRecord getReturnRecord() { return returnRecord; }
+}
@@ -0,0 +1,28 @@
+package events;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Running event counts derived from the event stream, readable from any thread.
+// Revenue is not tallied here; the return aggregates consume the same events.
+public class EventCounters implements EventHandler {
+    private final AtomicLongArray counts = new AtomicLongArray(EventType.values().length);
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        counts.incrementAndGet(event.getType().ordinal());
+    }
+
+    public long getCount(EventType type) {
+        return counts.get(type.ordinal());
+    }
+
+    public Map<EventType, Long> getCounts() {
+        Map<EventType, Long> result = new EnumMap<>(EventType.class);
+        for (EventType type : EventType.values()) {
+            result.put(type, getCount(type));
+        }
+        return result;
+    }
+}
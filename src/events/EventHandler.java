@@ -0,0 +1,5 @@
+package events;
+
+public interface EventHandler {
+    void onEvent(DomainEvent event, long sequence, boolean endOfBatch);
+}
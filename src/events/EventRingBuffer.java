@@ -0,0 +1,175 @@
+package events;
+
+import models.ReturnRecord;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// Fixed-size ring of reusable DomainEvent slots. Publishing claims the next slot,
+// fills it in place and advances the cursor, so the write path never allocates.
+// Every handler runs on its own thread and tracks its own sequence; the publisher
+// only waits when the slowest handler is a full ring behind.
+public class EventRingBuffer {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final long PARK_NANOS = 1_000_000L;
+    private static final long WAIT_NANOS = 50_000L;
+
+    private final DomainEvent[] slots;
+    private final int mask;
+    private final Object claimLock = new Object();
+    private volatile long cursor = -1;
+    private volatile Processor[] processors = new Processor[0];
+    private volatile boolean running;
+
+    public EventRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EventRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two: " + capacity);
+        }
+        this.slots = new DomainEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new DomainEvent();
+        }
+        this.mask = capacity - 1;
+    }
+
+    public synchronized void addHandler(EventHandler handler) {
+        if (running) {
+            throw new IllegalStateException("Handlers must be added before the ring buffer is started");
+        }
+        Processor[] updated = Arrays.copyOf(processors, processors.length + 1);
+        updated[processors.length] = new Processor(handler, cursor);
+        processors = updated;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        for (Processor processor : processors) {
+            processor.thread = new Thread(processor, "events-" + processor.handler.getClass().getSimpleName());
+            processor.thread.setDaemon(true);
+            processor.thread.start();
+        }
+    }
+
+    public long publish(EventType type, String userId, String equipmentId, String rentalId,
+                        String detail, double amount, double lateFee, boolean fsync) {
+        return publish(type, userId, equipmentId, rentalId, detail, amount, lateFee, fsync, null);
+    }
+
+    public long publish(EventType type, String userId, String equipmentId, String rentalId,
+                        String detail, double amount, double lateFee, boolean fsync, ReturnRecord returnRecord) {
+        long sequence;
+        synchronized (claimLock) {
+            sequence = cursor + 1;
+            waitForCapacity(sequence);
+            slots[(int) (sequence & mask)].set(type, userId, equipmentId, rentalId, detail, amount, lateFee, fsync,
+                    returnRecord);
+            cursor = sequence;
+        }
+
+        for (Processor processor : processors) {
+            LockSupport.unpark(processor.thread);
+        }
+        return sequence;
+    }
+
+    public long publish(EventType type, String userId, String equipmentId, boolean fsync) {
+        return publish(type, userId, equipmentId, null, null, 0.0, 0.0, fsync);
+    }
+
+    private void waitForCapacity(long sequence) {
+        long wrapPoint = sequence - slots.length;
+        while (wrapPoint > minimumHandledSequence()) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    private long minimumHandledSequence() {
+        long minimum = cursor;
+        for (Processor processor : processors) {
+            minimum = Math.min(minimum, processor.sequence);
+        }
+        return minimum;
+    }
+
+    // blocks until every handler has seen the given sequence
+    public void awaitHandled(long sequence) {
+        if (!running) return;
+        for (Processor processor : processors) {
+            while (processor.sequence < sequence && processor.thread.isAlive()) {
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+        }
+    }
+
+    // blocks until the given handler has seen the given sequence
+    public void awaitHandled(EventHandler handler, long sequence) {
+        if (!running) return;
+        for (Processor processor : processors) {
+            if (processor.handler != handler) continue;
+            while (processor.sequence < sequence && processor.thread.isAlive()) {
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+        }
+    }
+
+    public void close() {
+        if (!running) return;
+        awaitHandled(cursor);
+        running = false;
+        for (Processor processor : processors) {
+            LockSupport.unpark(processor.thread);
+        }
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public long getBacklog() {
+        return cursor - minimumHandledSequence();
+    }
+
+    private class Processor implements Runnable {
+        private final EventHandler handler;
+        private volatile long sequence;
+        private Thread thread;
+
+        Processor(EventHandler handler, long sequence) {
+            this.handler = handler;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            long next = sequence + 1;
+            while (true) {
+                long available = cursor;
+                if (available < next) {
+                    if (!running) return;
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                    continue;
+                }
+
+                for (long s = next; s <= available; s++) {
+                    try {
+                        handler.onEvent(slots[(int) (s & mask)], s, s == available);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error handling event " + s + " in "
+                                + handler.getClass().getSimpleName() + ": " + e.getMessage());
+                    }
+                }
+                sequence = available;
+                next = available + 1;
+            }
+        }
+    }
+}
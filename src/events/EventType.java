@@ -0,0 +1,12 @@
+package events;
+
+public enum EventType {
+    EQUIPMENT_RENTED,
+    EQUIPMENT_RETURNED,
+    FORCE_RETURNED,
+    STATUS_CHANGED,
+    EQUIPMENT_ADDED,
+    EQUIPMENT_REMOVED,
+    USER_LOGGED_IN,
+    USER_CHANGED
+}
@@ -0,0 +1,120 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Java Flight Recorder event types for the domain operations, so a recording can tie
+// GC pauses and I/O stalls to the rental, login, file or report that was running.
+// Callers follow the usual JFR pattern:
+//     FlightEvents.Rent event = new FlightEvents.Rent();
+//     event.begin();
+//     ...
+//     if (event.shouldCommit()) { fill in the fields; event.commit(); }
+// With recording off, shouldCommit() is false and the JIT removes the unused event
+// object, so the instrumentation costs next to nothing.
+public final class FlightEvents {
+    private FlightEvents() {}
+
+    @Name("rental.Rent")
+    @Label("Rent Equipment")
+    @Category({"Equipment Rental", "Rentals"})
+    @StackTrace(false)
+    public static class Rent extends Event {
+        @Label("Rental ID")
+        public String rentalId;
+        @Label("Equipment ID")
+        public String equipmentId;
+        @Label("Customer ID")
+        public String customerId;
+        @Label("Days")
+        public int days;
+        @Label("Total Cost")
+        public double totalCost;
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("rental.Return")
+    @Label("Return Equipment")
+    @Category({"Equipment Rental", "Rentals"})
+    @StackTrace(false)
+    public static class Return extends Event {
+        @Label("Rental ID")
+        public String rentalId;
+        @Label("Equipment ID")
+        public String equipmentId;
+        @Label("Customer ID")
+        public String customerId;
+        @Label("Late Fee")
+        public double lateFee;
+        @Label("Forced")
+        @Description("Returned by an administrator with a condition and extra fees")
+        public boolean forced;
+        @Label("Succeeded")
+        public boolean succeeded;
+    }
+
+    @Name("rental.Login")
+    @Label("Login")
+    @Category({"Equipment Rental", "Authentication"})
+    @StackTrace(false)
+    public static class Login extends Event {
+        @Label("Username")
+        public String username;
+        @Label("User ID")
+        public String userId;
+        @Label("Succeeded")
+        public boolean succeeded;
+        @Label("Message")
+        public String message;
+    }
+
+    @Name("rental.FileRead")
+    @Label("Data File Read")
+    @Category({"Equipment Rental", "Storage"})
+    @StackTrace(false)
+    public static class FileRead extends Event {
+        @Label("File")
+        public String file;
+        @Label("Rows")
+        public int rows;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("rental.FileWrite")
+    @Label("Data File Write")
+    @Category({"Equipment Rental", "Storage"})
+    @StackTrace(false)
+    public static class FileWrite extends Event {
+        @Label("File")
+        public String file;
+        @Label("Rows")
+        public int rows;
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+        @Label("Fsync")
+        public boolean fsync;
+    }
+
+    @Name("rental.Report")
+    @Label("Report")
+    @Category({"Equipment Rental", "Reports"})
+    @StackTrace(false)
+    public static class Report extends Event {
+        @Label("Report")
+        public String report;
+        @Label("Streamed")
+        @Description("Written straight to a sink rather than rendered for the report cache")
+        public boolean streamed;
+        @Label("Rows")
+        public int rows;
+    }
+}
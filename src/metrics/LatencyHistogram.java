@@ -0,0 +1,119 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// HDR-style histogram of nanosecond latencies. Each power of two is split into
+// SUB_BUCKETS linear buckets, so any recorded value is reported within about 1% of
+// its true size while the whole range up to MAX_VALUE fits in a few thousand counters.
+// Recording is two atomic increments and needs no lock; readers take a snapshot.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // about 18 minutes; anything slower is counted in the last bucket
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    // records the time elapsed since a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public static Snapshot empty() {
+        return new Snapshot(new long[BUCKETS], 0, 0, 0);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, totalNanos.get(), maxNanos.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    // values below 2 * SUB_BUCKETS get a bucket each; above that the bucket width doubles
+    // with every power of two
+    private static int bucketOf(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value | (2 * SUB_BUCKETS - 1)) - SUB_BITS;
+        return (magnitude << SUB_BITS) + (int) (value >>> magnitude);
+    }
+
+    private static long highestValueIn(int bucket) {
+        int magnitude = Math.max(0, (bucket >>> SUB_BITS) - 1);
+        long subBucket = bucket - ((long) magnitude << SUB_BITS);
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getMaxNanos() { return maxNanos; }
+
+        public double getMeanNanos() {
+            return count > 0 ? (double) totalNanos / count : 0.0;
+        }
+
+        // the calls recorded after an earlier snapshot of the same histogram; the max is
+        // the upper bound of the highest bucket that gained calls
+        public Snapshot since(Snapshot earlier) {
+            long[] delta = new long[counts.length];
+            long highest = 0;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = counts[i] - earlier.counts[i];
+                if (delta[i] > 0) highest = Math.min(maxNanos, highestValueIn(i));
+            }
+            return new Snapshot(delta, count - earlier.count, totalNanos - earlier.totalNanos, highest);
+        }
+
+        // smallest recorded latency that at least the given share of calls did not exceed
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) return Math.min(maxNanos, highestValueIn(i));
+            }
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide registry of named latency histograms and counters. Operations time
+// themselves with
+//     long started = System.nanoTime();
+//     try { ... } finally { Metrics.record("rental.rent", started); }
+// Names are dotted, area first (rental, auth, report, file).
+public final class Metrics {
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final double[] PERCENTILES = {50.0, 99.0, 99.9};
+
+    private Metrics() {}
+
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public static void record(String name, long startNanos) {
+        histogram(name).recordSince(startNanos);
+    }
+
+    public static void count(String name) {
+        LongAdder counter = counters.get(name);
+        (counter != null ? counter : counters.computeIfAbsent(name, n -> new LongAdder())).increment();
+    }
+
+    public static long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    // name -> {count, mean/p50/p99/p999/max in microseconds}, sorted by name
+    public static Map<String, Map<String, Object>> getLatencies() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() == 0) return;
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", snapshot.getCount());
+            summary.put("meanMicros", micros(Math.round(snapshot.getMeanNanos())));
+            summary.put("p50Micros", micros(snapshot.getValueAtPercentile(PERCENTILES[0])));
+            summary.put("p99Micros", micros(snapshot.getValueAtPercentile(PERCENTILES[1])));
+            summary.put("p999Micros", micros(snapshot.getValueAtPercentile(PERCENTILES[2])));
+            summary.put("maxMicros", micros(snapshot.getMaxNanos()));
+            result.put(name, summary);
+        });
+        return result;
+    }
+
+    // current snapshot of every histogram, sorted by name
+    public static Map<String, LatencyHistogram.Snapshot> snapshots() {
+        Map<String, LatencyHistogram.Snapshot> result = new TreeMap<>();
+        histograms.forEach((name, histogram) -> result.put(name, histogram.snapshot()));
+        return result;
+    }
+
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((name, counter) -> result.put(name, counter.sum()));
+        return result;
+    }
+
+    public static Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("latencies", getLatencies());
+        metrics.put("counters", getCounters());
+        return metrics;
+    }
+
+    public static void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    public static String format() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-36s %10s %10s %10s %10s %10s %10s%n",
+                "Operation", "Calls", "Mean us", "p50 us", "p99 us", "p999 us", "Max us"));
+        getLatencies().forEach((name, summary) -> text.append(String.format(
+                "%-36s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, summary.get("count"),
+                summary.get("meanMicros"), summary.get("p50Micros"), summary.get("p99Micros"),
+                summary.get("p999Micros"), summary.get("maxMicros"))));
+
+        Map<String, Long> counts = getCounters();
+        if (!counts.isEmpty()) {
+            text.append(String.format("%n%-36s %10s%n", "Counter", "Value"));
+            counts.forEach((name, value) -> text.append(String.format("%-36s %10d%n", name, value)));
+        }
+        return text.toString();
+    }
+
+    public static void dump(Path file) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write("Metrics at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+                    + System.lineSeparator() + System.lineSeparator());
+            writer.write(format());
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
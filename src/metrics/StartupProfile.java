@@ -0,0 +1,69 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Wall-clock phases from JVM start to the first menu. Each phase times itself like
+// an operation does,
+//     long started = System.nanoTime();
+//     ...
+//     StartupProfile.phase("rental.returns", started);
+// and is also recorded as "startup.<phase>" in Metrics. Dotted names nest under the
+// phase before the dot. Phases after finish() (a data refresh, say) are not kept.
+// -Drental.startupProfile=true prints the breakdown before the first menu.
+public final class StartupProfile {
+    public record Phase(String name, long startNanos, long nanos) {
+        public double getMillis() { return nanos / 1e6; }
+        public int getDepth() { return (int) name.chars().filter(c -> c == '.').count(); }
+    }
+
+    private static final List<Phase> phases = new ArrayList<>();
+    private static long jvmMillis = -1;
+    private static long totalMillis = -1;
+
+    private StartupProfile() {}
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("rental.startupProfile");
+    }
+
+    // called first thing in main: everything before it is JVM startup and class loading
+    public static synchronized void start() {
+        if (jvmMillis < 0) jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    public static void phase(String name, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        synchronized (StartupProfile.class) {
+            if (totalMillis >= 0) return;
+            phases.add(new Phase(name, startNanos, nanos));
+        }
+        Metrics.histogram("startup." + name).record(nanos);
+    }
+
+    public static synchronized void finish() {
+        if (totalMillis < 0) totalMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    public static synchronized List<Phase> getPhases() {
+        List<Phase> ordered = new ArrayList<>(phases);
+        ordered.sort(Comparator.comparingLong(Phase::startNanos));
+        return ordered;
+    }
+
+    public static synchronized String format() {
+        StringBuilder out = new StringBuilder("STARTUP PROFILE\n");
+        if (jvmMillis >= 0) {
+            out.append(String.format("  %-36s %10d ms%n", "jvm", jvmMillis));
+        }
+        for (Phase phase : getPhases()) {
+            String label = "  ".repeat(phase.getDepth()) + phase.name();
+            out.append(String.format("  %-36s %10.1f ms%n", label, phase.getMillis()));
+        }
+        long total = totalMillis >= 0 ? totalMillis : ManagementFactory.getRuntimeMXBean().getUptime();
+        out.append(String.format("  %-36s %10d ms%n", "time to first menu", total));
+        return out.toString();
+    }
+}
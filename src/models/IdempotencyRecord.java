@@ -0,0 +1,44 @@
+package models;
+
+public class IdempotencyRecord {
+    private final String key;
+    private final String request;
+    private final String result;
+    private final long expiresAt;
+
+    public IdempotencyRecord(String key, String request, String result, long expiresAt) {
+        this.key = key;
+        this.request = request;
+        this.result = result;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getKey() { return key; }
+    public String getRequest() { return request; }
+    public String getResult() { return result; }
+    public long getExpiresAt() { return expiresAt; }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    // the result goes last and may contain commas; line breaks are escaped
+    public String toCsvString() {
+        return String.format("%s,%s,%d,%s", key, request, expiresAt,
+                result.replace("\\", "\\\\").replace("\n", "\\n"));
+    }
+
+    public static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
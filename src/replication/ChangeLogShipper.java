@@ -0,0 +1,78 @@
+package replication;
+
+import events.DomainEvent;
+import events.EventHandler;
+import services.AuthenticationService;
+import services.RentalService;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends row-level changes to the shipping log the replica tails. Rows are read
+// back from the services when the event is handled, so the replica converges on
+// the primary's current state even if it skips intermediate versions of a row.
+public class ChangeLogShipper implements EventHandler {
+    private final RentalService rentalService;
+    private final AuthenticationService authService;
+    private final BufferedWriter writer;
+    private volatile long shippedSequence = -1;
+
+    public ChangeLogShipper(Path logFile, RentalService rentalService, AuthenticationService authService)
+            throws IOException {
+        this.rentalService = rentalService;
+        this.authService = authService;
+        this.writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        try {
+            switch (event.getType()) {
+                case EQUIPMENT_RENTED -> {
+                    shipRow(sequence, "rentals", event.getRentalId());
+                    shipRow(sequence, "equipment", event.getEquipmentId());
+                }
+                case EQUIPMENT_RETURNED, FORCE_RETURNED -> {
+                    shipRow(sequence, "returns", event.getRentalId());
+                    ship(sequence, "DEL", "rentals", event.getRentalId(), "");
+                    shipRow(sequence, "equipment", event.getEquipmentId());
+                }
+                case STATUS_CHANGED, EQUIPMENT_ADDED -> shipRow(sequence, "equipment", event.getEquipmentId());
+                case EQUIPMENT_REMOVED -> ship(sequence, "DEL", "equipment", event.getEquipmentId(), "");
+                case USER_LOGGED_IN, USER_CHANGED -> {
+                    String csv = authService.exportUserRow(event.getUserId());
+                    if (csv != null) ship(sequence, "PUT", "users", event.getUserId(), csv);
+                }
+            }
+
+            if (endOfBatch) {
+                ship(sequence, "COMMIT", "", "", "");
+                writer.flush();
+                shippedSequence = sequence;
+            }
+        } catch (IOException e) {
+            System.err.println("Error shipping change " + sequence + ": " + e.getMessage());
+        }
+    }
+
+    private void shipRow(long sequence, String table, String id) throws IOException {
+        String csv = rentalService.exportRow(table, id);
+        if (csv != null) {
+            ship(sequence, "PUT", table, id, csv);
+        }
+    }
+
+    private void ship(long sequence, String operation, String table, String id, String csv) throws IOException {
+        writer.write(sequence + "\t" + operation + "\t" + table + "\t" + id + "\t" + csv);
+        writer.newLine();
+    }
+
+    public long getShippedSequence() {
+        return shippedSequence;
+    }
+}
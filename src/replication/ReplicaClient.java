@@ -0,0 +1,107 @@
+package replication;
+
+import events.EventRingBuffer;
+import services.AuthenticationService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Primary-side handle on the reporting replica. Returns null whenever the replica
+// can't answer so callers can fall back to running the report locally.
+public class ReplicaClient {
+    private static final long STARTUP_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+
+    private final Process process;
+    private final ChangeLogShipper shipper;
+    private final EventRingBuffer events;
+    private final AuthenticationService authService;
+    private final String token;
+    private int port = -1;
+
+    ReplicaClient(Process process, ChangeLogShipper shipper, EventRingBuffer events,
+                  AuthenticationService authService, String token) {
+        this.process = process;
+        this.shipper = shipper;
+        this.events = events;
+        this.authService = authService;
+        this.token = token;
+    }
+
+    public String requestReport(String type, String... args) {
+        if (!process.isAlive() || !authService.isCurrentUserAdmin()) return null;
+
+        try {
+            int replicaPort = resolvePort();
+            if (replicaPort < 0) return null;
+
+            // everything published so far has to be in the log before the replica can answer
+            events.awaitHandled(events.getCursor());
+            StringBuilder request = new StringBuilder()
+                    .append(token).append('\t')
+                    .append(shipper.getShippedSequence()).append('\t')
+                    .append(authService.getCurrentUser().getUserId()).append('\t')
+                    .append(type);
+            for (String arg : args) {
+                request.append('\t').append(arg);
+            }
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), replicaPort)) {
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                out.println(request);
+
+                String status = in.readLine();
+                if (status == null || !status.equals("OK")) {
+                    System.err.println("Reporting replica error: " + status);
+                    return null;
+                }
+
+                StringBuilder report = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    report.append(line).append("\n");
+                }
+                return report.toString();
+            }
+        } catch (IOException e) {
+            System.err.println("Reporting replica unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private int resolvePort() throws IOException {
+        if (port > 0) return port;
+
+        Path portFile = ReplicaLauncher.REPLICA_DIR.resolve(ReplicaLauncher.PORT_FILE);
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (!Files.exists(portFile)) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) return -1;
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        port = Integer.parseInt(Files.readString(portFile).trim());
+        return port;
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    public void close() {
+        process.destroy();
+    }
+}
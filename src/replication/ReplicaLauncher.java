@@ -0,0 +1,98 @@
+package replication;
+
+import data.FileHandler;
+import events.EventRingBuffer;
+import services.AuthenticationService;
+import services.RentalService;
+import utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// Seeds the replica directory with the current data files, truncates the shipping
+// log and starts the follower process in that directory. Each launch hands the
+// follower a fresh random token in an owner-only file; requests without it are
+// refused, so another local process that finds the port cannot pose as an admin.
+public class ReplicaLauncher {
+    public static final Path REPLICA_DIR = FileHandler.BASE_DIR.resolve("replica");
+    static final String LOG_FILE = "changes.log";
+    static final String PORT_FILE = "replica.port";
+    static final String TOKEN_FILE = "replica.token";
+    private static final int TOKEN_BYTES = 32;
+    private static final String OUTPUT_FILE = "replica.out";
+
+    public static ReplicaClient launch(EventRingBuffer events, RentalService rentalService,
+                                       AuthenticationService authService) throws IOException {
+        Files.createDirectories(REPLICA_DIR);
+        // the follower always runs unsharded, so it gets a merged copy of the inventory
+        rentalService.exportSnapshot(REPLICA_DIR);
+        Files.copy(FileHandler.BASE_DIR.resolve(Constants.USERS_FILE), REPLICA_DIR.resolve(Constants.USERS_FILE),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(REPLICA_DIR.resolve(PORT_FILE));
+        Files.write(REPLICA_DIR.resolve(LOG_FILE), new byte[0]);
+        byte[] secret = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(secret);
+        String token = HexFormat.of().formatHex(secret);
+        writeOwnerOnly(REPLICA_DIR.resolve(TOKEN_FILE), token);
+
+        ChangeLogShipper shipper = new ChangeLogShipper(REPLICA_DIR.resolve(LOG_FILE), rentalService, authService);
+        events.addHandler(shipper);
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        // the replica answers the approximate report too, so it needs the same sketches
+        if (Boolean.getBoolean("rental.approximateAnalytics")) {
+            command.add("-Drental.approximateAnalytics=true");
+        }
+        // the follower is reseeded on every launch and never saves a warm-start cache
+        command.add("-Drental.warmStart=false");
+        // same jar, so the class-data archive the primary was started with fits the follower too
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (option.startsWith("-XX:SharedArchiveFile=")) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(absoluteClassPath());
+        command.add(ReplicaMain.class.getName());
+        command.add(String.valueOf(ProcessHandle.current().pid()));
+
+        Process process = new ProcessBuilder(command)
+                .directory(REPLICA_DIR.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(REPLICA_DIR.resolve(OUTPUT_FILE).toFile())
+                .start();
+
+        return new ReplicaClient(process, shipper, events, authService, token);
+    }
+
+    // created with its permissions in place, so there is no moment anyone else can read it
+    private static void writeOwnerOnly(Path file, String content) throws IOException {
+        Files.deleteIfExists(file);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.writeString(file, content);
+    }
+
+    // the follower runs in another working directory, so relative entries must be resolved first
+    private static String absoluteClassPath() {
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            entries.add(Path.of(entry).toAbsolutePath().toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+}
@@ -0,0 +1,232 @@
+package replication;
+
+import data.PersistenceQueue;
+import events.EventRingBuffer;
+import services.AuthenticationService;
+import services.RentalService;
+import services.ReportGenerator;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Follower process: loads the seeded copy of the data from its working directory,
+// applies the shipped change log as it grows and serves admin reports over a
+// loopback socket. It never writes the data files back.
+public class ReplicaMain {
+    private static final long POLL_MILLIS = 50;
+    private static final long CATCH_UP_TIMEOUT_MILLIS = 5_000;
+
+    private final AuthenticationService authService;
+    private final RentalService rentalService;
+    private final ReportGenerator reportGenerator;
+    private final byte[] token;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object progress = new Object();
+    private volatile long appliedSequence = -1;
+
+    private ReplicaMain(byte[] token) {
+        this.token = token;
+        PersistenceQueue persistence = new PersistenceQueue();
+        EventRingBuffer events = new EventRingBuffer();
+        this.authService = new AuthenticationService(persistence, events);
+        this.rentalService = new RentalService(authService, persistence, events, 1,
+                RentalService.ShardKey.CATEGORY);
+        this.reportGenerator = new ReportGenerator(rentalService, authService);
+        // applied returns reach the aggregates through the ring
+        events.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        long primaryPid = Long.parseLong(args[0]);
+        // only the primary and this process know the token once the file is gone
+        Path tokenFile = Path.of(ReplicaLauncher.TOKEN_FILE);
+        byte[] token = Files.readString(tokenFile).trim().getBytes(StandardCharsets.UTF_8);
+        Files.delete(tokenFile);
+        ReplicaMain replica = new ReplicaMain(token);
+
+        Thread applier = new Thread(replica::tailLog, "replica-applier");
+        applier.setDaemon(true);
+        applier.start();
+
+        Thread watchdog = new Thread(() -> {
+            ProcessHandle.of(primaryPid).ifPresent(primary -> primary.onExit().join());
+            System.exit(0);
+        }, "replica-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        try (ServerSocket server = new ServerSocket(0, 16, InetAddress.getLoopbackAddress())) {
+            Files.writeString(Path.of(ReplicaLauncher.PORT_FILE), String.valueOf(server.getLocalPort()));
+            System.out.println("Replica serving reports on port " + server.getLocalPort());
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    replica.serve(socket);
+                } catch (IOException e) {
+                    System.err.println("Error serving report request: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void tailLog() {
+        ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        try (RandomAccessFile log = new RandomAccessFile(ReplicaLauncher.LOG_FILE, "r")) {
+            while (true) {
+                int read = log.read(buffer);
+                if (read <= 0) {
+                    Thread.sleep(POLL_MILLIS);
+                    continue;
+                }
+                pending.write(buffer, 0, read);
+
+                // only complete lines are applied; a trailing partial line waits for the next read
+                byte[] bytes = pending.toByteArray();
+                int end = bytes.length - 1;
+                while (end >= 0 && bytes[end] != '\n') end--;
+                if (end < 0) continue;
+
+                apply(new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n"));
+                pending.reset();
+                pending.write(bytes, end + 1, bytes.length - end - 1);
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Replica stopped applying changes: " + e.getMessage());
+        }
+    }
+
+    private void apply(String[] lines) {
+        lock.writeLock().lock();
+        try {
+            for (String line : lines) {
+                // one bad entry must not stop the applier, or every later report waits for it
+                try {
+                    applyEntry(line);
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping change log entry " + line + ": " + e);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyEntry(String line) {
+        String[] parts = line.split("\t", 5);
+        if (parts.length < 5) return;
+
+        long sequence = Long.parseLong(parts[0]);
+        String operation = parts[1];
+        switch (operation) {
+            case "COMMIT" -> {
+                synchronized (progress) {
+                    appliedSequence = sequence;
+                    progress.notifyAll();
+                }
+            }
+            case "PUT", "DEL" -> {
+                if (parts[2].equals("users")) {
+                    authService.applyReplicatedUser(parts[3], parts[4]);
+                } else {
+                    rentalService.applyReplicatedRow(operation, parts[2], parts[3], parts[4]);
+                }
+            }
+            default -> System.err.println("Unknown change log entry: " + line);
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+
+        String request = in.readLine();
+        if (request == null) return;
+        try {
+            answer(request.split("\t"), out);
+        } catch (RuntimeException e) {
+            // a malformed request gets an error reply instead of taking the accept loop down
+            out.println("ERROR bad request: " + e);
+        }
+        out.flush();
+    }
+
+    private void answer(String[] request, PrintWriter out) {
+        // constant-time, so the reply time says nothing about how much of a guess was right
+        if (!MessageDigest.isEqual(token, request[0].getBytes(StandardCharsets.UTF_8))) {
+            System.err.println("Rejected a report request without the launch token.");
+            out.println("ERROR unauthorized");
+            return;
+        }
+        String[] parts = Arrays.copyOfRange(request, 1, request.length);
+        if (!awaitApplied(Long.parseLong(parts[0]))) {
+            out.println("ERROR replica is behind the primary");
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (!authService.assumeSession(parts[1])) {
+                out.println("ERROR admin session rejected");
+            } else {
+                String report = generate(parts);
+                if (report == null) {
+                    out.println("ERROR unknown report " + parts[2]);
+                } else {
+                    out.println("OK");
+                    out.print(report);
+                }
+            }
+        } finally {
+            authService.endSession();
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean awaitApplied(long sequence) {
+        long deadline = System.currentTimeMillis() + CATCH_UP_TIMEOUT_MILLIS;
+        synchronized (progress) {
+            while (appliedSequence < sequence) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    progress.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private String generate(String[] request) {
+        return switch (request[2]) {
+            case "DAILY" -> reportGenerator.generateDailySummary(LocalDate.parse(request[3]));
+            case "MONTHLY" -> reportGenerator.generateMonthlyReport(
+                    Integer.parseInt(request[3]), Integer.parseInt(request[4]));
+            case "CUSTOMERS" -> request.length > 4
+                    ? reportGenerator.generateCustomerAnalyticsReport(Integer.parseInt(request[3]),
+                            ReportGenerator.CustomerRanking.valueOf(request[4]))
+                    : reportGenerator.generateCustomerAnalyticsReport();
+            case "RANGE" -> reportGenerator.generateRevenueRangeReport(
+                    LocalDate.parse(request[3]), LocalDate.parse(request[4]));
+            case "UTILIZATION" -> reportGenerator.generateUtilizationReport(
+                    LocalDate.parse(request[3]), LocalDate.parse(request[4]));
+            case "APPROXIMATE" -> reportGenerator.generateApproximateAnalyticsReport(Integer.parseInt(request[3]));
+            case "EQUIPMENT" -> reportGenerator.generateEquipmentPerformanceReport();
+            case "FINANCIAL" -> reportGenerator.generateFinancialSummaryReport();
+            case "SECURITY" -> reportGenerator.generateSecurityAuditReport();
+            default -> null;
+        };
+    }
+}
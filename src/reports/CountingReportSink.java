@@ -0,0 +1,66 @@
+package reports;
+
+// Passes everything through to another sink and counts the rows on the way
+public class CountingReportSink implements ReportSink {
+    private final ReportSink sink;
+    private int rows;
+
+    public CountingReportSink(ReportSink sink) {
+        this.sink = sink;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public void title(String title) {
+        sink.title(title);
+    }
+
+    @Override
+    public void section(String heading) {
+        sink.section(heading);
+    }
+
+    @Override
+    public void section(String heading, Object detail) {
+        sink.section(heading, detail);
+    }
+
+    @Override
+    public void metric(String label, Object value) {
+        sink.metric(label, value);
+    }
+
+    @Override
+    public void money(String label, double amount) {
+        sink.money(label, amount);
+    }
+
+    @Override
+    public void note(String text) {
+        sink.note(text);
+    }
+
+    @Override
+    public void columns(String... names) {
+        sink.columns(names);
+    }
+
+    @Override
+    public void row(String text, Object... values) {
+        rows++;
+        sink.row(text, values);
+    }
+
+    @Override
+    public void blank() {
+        sink.blank();
+    }
+
+    @Override
+    public void end() {
+        sink.end();
+    }
+}
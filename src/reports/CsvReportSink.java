@@ -0,0 +1,94 @@
+package reports;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Metrics come out as label,value lines and each table as a header line followed by
+// its rows; titles, sections and notes become # comment lines.
+public class CsvReportSink implements ReportSink {
+    private final Appendable out;
+
+    public CsvReportSink(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void title(String title) {
+        write("# " + title + "\n");
+    }
+
+    @Override
+    public void section(String heading) {
+        write("\n# " + heading + "\n");
+    }
+
+    @Override
+    public void section(String heading, Object detail) {
+        write("\n# " + heading + ": " + detail + "\n");
+    }
+
+    @Override
+    public void metric(String label, Object value) {
+        line(label, value);
+    }
+
+    @Override
+    public void money(String label, double amount) {
+        line(label, String.format("%.2f", amount));
+    }
+
+    @Override
+    public void note(String text) {
+        write("# " + text + "\n");
+    }
+
+    @Override
+    public void columns(String... names) {
+        line((Object[]) names);
+    }
+
+    @Override
+    public void row(String text, Object... values) {
+        line(values.length > 0 ? values : new Object[]{text});
+    }
+
+    @Override
+    public void blank() {
+    }
+
+    @Override
+    public void end() {
+        if (out instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void line(Object... values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) line.append(',');
+            line.append(escape(String.valueOf(values[i])));
+        }
+        write(line.append('\n').toString());
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private void write(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package reports;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Writes {"title": ..., "entries": [...]} one entry at a time; each entry records the
+// section it belongs to, so nothing has to be held back until a section is complete.
+public class JsonReportSink implements ReportSink {
+    private final Appendable out;
+    private String section;
+    private String[] columns = new String[0];
+    private boolean started;
+    private boolean firstEntry = true;
+
+    public JsonReportSink(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void title(String title) {
+        write("{\"title\":" + quote(title) + ",\"entries\":[");
+        started = true;
+    }
+
+    @Override
+    public void section(String heading) {
+        section = heading;
+        columns = new String[0];
+    }
+
+    @Override
+    public void section(String heading, Object detail) {
+        section(heading);
+        entry("\"type\":\"metric\",\"label\":" + quote(heading) + ",\"value\":" + value(detail));
+    }
+
+    @Override
+    public void metric(String label, Object value) {
+        entry("\"type\":\"metric\",\"label\":" + quote(label) + ",\"value\":" + value(value));
+    }
+
+    @Override
+    public void money(String label, double amount) {
+        entry("\"type\":\"metric\",\"label\":" + quote(label) + ",\"value\":" + String.format("%.2f", amount));
+    }
+
+    @Override
+    public void note(String text) {
+        entry("\"type\":\"note\",\"text\":" + quote(text));
+    }
+
+    @Override
+    public void columns(String... names) {
+        columns = names;
+    }
+
+    @Override
+    public void row(String text, Object... values) {
+        StringBuilder row = new StringBuilder("\"type\":\"row\",\"text\":").append(quote(text));
+        if (values.length > 0) {
+            row.append(",\"values\":{");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) row.append(',');
+                String name = i < columns.length ? columns[i] : "column" + (i + 1);
+                row.append(quote(name)).append(':').append(value(values[i]));
+            }
+            row.append('}');
+        }
+        entry(row.toString());
+    }
+
+    @Override
+    public void blank() {
+    }
+
+    @Override
+    public void end() {
+        if (!started) title("");
+        write("]}\n");
+        if (out instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void entry(String fields) {
+        if (!started) title("");
+        StringBuilder entry = new StringBuilder(firstEntry ? "\n" : ",\n");
+        entry.append('{');
+        if (section != null) {
+            entry.append("\"section\":").append(quote(section)).append(',');
+        }
+        entry.append(fields).append('}');
+        write(entry.toString());
+        firstEntry = false;
+    }
+
+    private static String value(Object value) {
+        if (value == null) return "null";
+        // JSON has no NaN or Infinity, e.g. from a ratio over a zero denominator
+        if (value instanceof Double d && !Double.isFinite(d)) return "null";
+        if (value instanceof Float f && !Float.isFinite(f)) return "null";
+        if (value instanceof Number || value instanceof Boolean) return value.toString();
+        return quote(value.toString());
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private void write(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
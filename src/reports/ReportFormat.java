@@ -0,0 +1,25 @@
+package reports;
+
+public enum ReportFormat {
+    TEXT("txt"),
+    CSV("csv"),
+    JSON("json");
+
+    private final String extension;
+
+    ReportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public ReportSink open(Appendable out) {
+        return switch (this) {
+            case TEXT -> new TextReportSink(out);
+            case CSV -> new CsvReportSink(out);
+            case JSON -> new JsonReportSink(out);
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package reports;
+
+// Receives a report piece by piece as it is produced, so a renderer can write each
+// line out straight away instead of the report being built up as one string first.
+public interface ReportSink {
+    void title(String title);
+
+    void section(String heading);
+
+    // a heading that carries a value, e.g. a count
+    void section(String heading, Object detail);
+
+    void metric(String label, Object value);
+
+    void money(String label, double amount);
+
+    // free-form line that has no structure, e.g. "No data available."
+    void note(String text);
+
+    // names the values of the rows that follow, for renderers that keep them apart
+    void columns(String... names);
+
+    // text is the human-readable line; values are the same row split into columns
+    void row(String text, Object... values);
+
+    void blank();
+
+    void end();
+}
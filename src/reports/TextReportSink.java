@@ -0,0 +1,77 @@
+package reports;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// The plain console layout all reports have always used
+public class TextReportSink implements ReportSink {
+    private final Appendable out;
+
+    public TextReportSink(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public void title(String title) {
+        write("\n\t=== " + title + " ===\n\n");
+    }
+
+    @Override
+    public void section(String heading) {
+        write(heading + ":\n");
+    }
+
+    @Override
+    public void section(String heading, Object detail) {
+        write(heading + ": " + detail + "\n");
+    }
+
+    @Override
+    public void metric(String label, Object value) {
+        write(label + ": " + value + "\n");
+    }
+
+    @Override
+    public void money(String label, double amount) {
+        write(label + ": $" + String.format("%.2f", amount) + "\n");
+    }
+
+    @Override
+    public void note(String text) {
+        write(text + "\n");
+    }
+
+    @Override
+    public void columns(String... names) {
+    }
+
+    @Override
+    public void row(String text, Object... values) {
+        write("- " + text + "\n");
+    }
+
+    @Override
+    public void blank() {
+        write("\n");
+    }
+
+    @Override
+    public void end() {
+        if (out instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void write(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package services;
+
+import events.DomainEvent;
+import events.EventHandler;
+import models.ReturnRecord;
+
+// Folds every return on the event stream into the revenue, utilization and
+// approximate aggregates, off the rental path and outside the partition locks.
+// Readers wait for this handler to reach the cursor, so they still see their own returns.
+class AggregatesEventHandler implements EventHandler {
+    private final RevenueAggregates revenue;
+    private final UtilizationIndex utilization;
+    private final ApproximateAnalytics approximate;
+
+    AggregatesEventHandler(RevenueAggregates revenue, UtilizationIndex utilization,
+                           ApproximateAnalytics approximate) {
+        this.revenue = revenue;
+        this.utilization = utilization;
+        this.approximate = approximate;
+    }
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        ReturnRecord record = event.getReturnRecord();
+        if (record == null) return;
+
+        revenue.record(record);
+        utilization.record(record);
+        if (approximate != null) approximate.record(record);
+    }
+}
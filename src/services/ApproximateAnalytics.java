@@ -0,0 +1,129 @@
+package services;
+
+import models.ReturnRecord;
+import utils.HeavyHitters;
+import utils.HyperLogLog;
+import utils.QuantileSketch;
+
+import java.io.Serializable;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Fixed-size sketches over the returns history for the approximate report mode,
+// updated as each return lands. Memory does not grow with the number of returns,
+// only with the number of months seen (one distinct-count sketch each).
+public class ApproximateAnalytics {
+    static final int HLL_PRECISION = 12;
+    static final int HEAVY_HITTER_CANDIDATES = 64;
+    static final double FREQUENCY_EPSILON = 0.001;
+    static final double FREQUENCY_DELTA = 0.01;
+    static final double QUANTILE_ACCURACY = 0.01;
+
+    public record Sketches(HyperLogLog customers, Map<YearMonth, HyperLogLog> customersByMonth,
+                           HeavyHitters equipmentByRentals, HeavyHitters customersBySpend,
+                           QuantileSketch durationDays, QuantileSketch spend) implements Serializable {}
+
+    private HyperLogLog customers;
+    private Map<YearMonth, HyperLogLog> customersByMonth;
+    private HeavyHitters equipmentByRentals;
+    private HeavyHitters customersBySpend;
+    private QuantileSketch durationDays;
+    private QuantileSketch spend;
+
+    public ApproximateAnalytics() {
+        clear();
+    }
+
+    public synchronized void record(ReturnRecord record) {
+        customers.add(record.getCustomerId());
+        customersByMonth.computeIfAbsent(YearMonth.from(record.getEndDate()), month -> new HyperLogLog(HLL_PRECISION))
+                .add(record.getCustomerId());
+        equipmentByRentals.add(record.getEquipmentId(), 1);
+        customersBySpend.add(record.getCustomerId(), RevenueAggregates.toCents(record.getFinalAmount()));
+        durationDays.add(record.getEndDate().toEpochDay() - record.getStartDate().toEpochDay());
+        spend.add(Math.max(0, record.getFinalAmount()));
+    }
+
+    public synchronized void clear() {
+        customers = new HyperLogLog(HLL_PRECISION);
+        customersByMonth = new HashMap<>();
+        equipmentByRentals = new HeavyHitters(HEAVY_HITTER_CANDIDATES, FREQUENCY_EPSILON, FREQUENCY_DELTA);
+        customersBySpend = new HeavyHitters(HEAVY_HITTER_CANDIDATES, FREQUENCY_EPSILON, FREQUENCY_DELTA);
+        durationDays = new QuantileSketch(QUANTILE_ACCURACY);
+        spend = new QuantileSketch(QUANTILE_ACCURACY);
+    }
+
+    public synchronized void rebuild(List<ReturnRecord> returns) {
+        clear();
+        for (ReturnRecord record : returns) {
+            record(record);
+        }
+    }
+
+    // the live sketches, not copies: callers must keep returns from being recorded until
+    // they are done with them
+    public synchronized Sketches exportState() {
+        return new Sketches(customers, customersByMonth, equipmentByRentals, customersBySpend, durationDays, spend);
+    }
+
+    public synchronized void restore(Sketches state) {
+        customers = state.customers();
+        customersByMonth = state.customersByMonth();
+        equipmentByRentals = state.equipmentByRentals();
+        customersBySpend = state.customersBySpend();
+        durationDays = state.durationDays();
+        spend = state.spend();
+    }
+
+    public synchronized long getDistinctCustomers() {
+        return customers.estimate();
+    }
+
+    public synchronized long getDistinctCustomers(YearMonth month) {
+        HyperLogLog sketch = customersByMonth.get(month);
+        return sketch != null ? sketch.estimate() : 0;
+    }
+
+    public synchronized double getDistinctCountError() {
+        return customers.relativeError();
+    }
+
+    public synchronized List<HeavyHitters.Entry> getTopEquipmentByRentals(int k) {
+        return equipmentByRentals.top(k);
+    }
+
+    public synchronized long getRentalCountErrorBound() {
+        return equipmentByRentals.errorBound();
+    }
+
+    // estimates are in cents
+    public synchronized List<HeavyHitters.Entry> getTopCustomersBySpend(int k) {
+        return customersBySpend.top(k);
+    }
+
+    public synchronized long getSpendErrorBoundCents() {
+        return customersBySpend.errorBound();
+    }
+
+    public double getFrequencyConfidence() {
+        return 1 - FREQUENCY_DELTA;
+    }
+
+    public synchronized double getDurationQuantile(double quantile) {
+        return durationDays.quantile(quantile);
+    }
+
+    public synchronized double getSpendQuantile(double quantile) {
+        return spend.quantile(quantile);
+    }
+
+    public double getQuantileAccuracy() {
+        return QUANTILE_ACCURACY;
+    }
+
+    public synchronized long getReturnCount() {
+        return durationDays.count();
+    }
+}
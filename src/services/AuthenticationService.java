@@ -1,26 +1,73 @@
 package services;
 
+import data.PersistenceQueue;
+import data.PersistenceQueue.Durability;
 import data.UserFileHandler;
+import events.EventRingBuffer;
+import events.EventType;
+import metrics.FlightEvents;
+import metrics.Metrics;
 import models.User;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AuthenticationService {
     private List<User> users;
-    private User currentUser;
-
-    public AuthenticationService() {
+    // lookups by ID and lower-cased username, kept in step with the users list
+    private final Map<String, User> usersById = new ConcurrentHashMap<>();
+    private final Map<String, User> usersByUsername = new ConcurrentHashMap<>();
+    // bumped after every change to a user, once the change is visible
+    private final AtomicLong dataVersion = new AtomicLong();
+    // one session per thread: the console has a single one, while the replica and the
+    // load harness serve many users side by side
+    private final ThreadLocal<User> currentUser = new ThreadLocal<>();
+    private final PersistenceQueue persistence;
+    private final EventRingBuffer events;
+    private Durability durability;
+
+    public AuthenticationService(PersistenceQueue persistence, EventRingBuffer events) {
+        this.persistence = persistence;
+        this.events = events;
+        this.durability = Durability.valueOf(System.getProperty("rental.durability", "QUEUED"));
         loadUsers();
     }
 
     public void loadUsers() {
-        users = UserFileHandler.loadUsers();
+        long started = System.nanoTime();
+        try {
+            users = UserFileHandler.loadUsers();
+
+            if (users.isEmpty()) {
+                createDefaultAccounts();
+            }
 
-        if (users.isEmpty()) {
-            createDefaultAccounts();
+            usersById.clear();
+            usersByUsername.clear();
+            for (User user : users) {
+                index(user);
+            }
+            dataVersion.incrementAndGet();
+        } finally {
+            Metrics.record("auth.loadUsers", started);
         }
     }
 
+    private void index(User user) {
+        usersById.put(user.getUserId(), user);
+        usersByUsername.put(user.getUsername().toLowerCase(), user);
+    }
+
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    public User findUserById(String userId) {
+        return userId != null ? usersById.get(userId) : null;
+    }
+
     private void createDefaultAccounts() {
         System.out.println("Creating default accounts...");
 
@@ -43,6 +90,26 @@ public class AuthenticationService {
     }
 
     public AuthenticationResult login(String username, String password) {
+        FlightEvents.Login event = new FlightEvents.Login();
+        event.begin();
+        long started = System.nanoTime();
+        try {
+            AuthenticationResult result = authenticate(username, password);
+            if (!result.success()) Metrics.count("auth.login.failed");
+            if (event.shouldCommit()) {
+                event.username = username;
+                event.userId = result.user() != null ? result.user().getUserId() : null;
+                event.succeeded = result.success();
+                event.message = result.message();
+                event.commit();
+            }
+            return result;
+        } finally {
+            Metrics.record("auth.login", started);
+        }
+    }
+
+    private AuthenticationResult authenticate(String username, String password) {
         if (username == null || username.trim().isEmpty()) {
             return new AuthenticationResult(false, "Username cannot be empty", null);
         }
@@ -66,7 +133,8 @@ public class AuthenticationService {
 
         if (!user.verifyPassword(password)) {
             user.recordFailedLogin();
-            UserFileHandler.saveUsers(users);
+            publish(EventType.USER_CHANGED, user.getUserId(),
+                    user.getStatus() == User.AccountStatus.LOCKED ? "locked after failed logins" : null);
 
             String message = "Invalid password";
             if (user.getStatus() == User.AccountStatus.LOCKED) {
@@ -76,33 +144,41 @@ public class AuthenticationService {
         }
 
         user.recordSuccessfulLogin();
-        this.currentUser = user;
-        UserFileHandler.saveUsers(users);
+        currentUser.set(user);
+        publish(EventType.USER_LOGGED_IN, user.getUserId(), null);
 
         return new AuthenticationResult(true, "Login successful", user);
     }
 
     public void logout() {
-        if (currentUser != null) {
-            System.out.println("Goodbye, " + currentUser.getFullName() + "!");
-            currentUser = null;
+        long started = System.nanoTime();
+        try {
+            User user = currentUser.get();
+            if (user != null) {
+                System.out.println("Goodbye, " + user.getFullName() + "!");
+                currentUser.remove();
+            }
+        } finally {
+            Metrics.record("auth.logout", started);
         }
     }
 
     public boolean isLoggedIn() {
-        return currentUser != null;
+        return currentUser.get() != null;
     }
 
     public User getCurrentUser() {
-        return currentUser;
+        return currentUser.get();
     }
 
     public boolean isCurrentUserAdmin() {
-        return currentUser != null && currentUser.isAdmin();
+        User user = currentUser.get();
+        return user != null && user.isAdmin();
     }
 
     public boolean isCurrentUserCustomer() {
-        return currentUser != null && currentUser.isCustomer();
+        User user = currentUser.get();
+        return user != null && user.isCustomer();
     }
 
     // admin only
@@ -112,43 +188,125 @@ public class AuthenticationService {
 
     // admin only
     public boolean unlockUserAccount(String username) {
-        User user = findUserByUsername(username);
-        if (user != null && user.getStatus() == User.AccountStatus.LOCKED) {
-            user.setStatus(User.AccountStatus.ACTIVE);
-            user.setFailedLoginAttempts(0);
-            UserFileHandler.saveUsers(users);
-            return true;
+        long started = System.nanoTime();
+        try {
+            User user = findUserByUsername(username);
+            if (user != null && user.getStatus() == User.AccountStatus.LOCKED) {
+                user.setStatus(User.AccountStatus.ACTIVE);
+                user.setFailedLoginAttempts(0);
+                publish(EventType.USER_CHANGED, user.getUserId(), "unlocked");
+                return true;
+            }
+            return false;
+        } finally {
+            Metrics.record("auth.unlockUserAccount", started);
+        }
+    }
+
+    private void publish(EventType type, String userId, String detail) {
+        long sequence = events.publish(type, userId, null, null, detail, 0.0, 0.0,
+                durability == Durability.FSYNCED);
+        dataVersion.incrementAndGet();
+        if (durability == Durability.QUEUED) return;
+
+        events.awaitHandled(sequence);
+        if (!persistence.await(persistence.getLastTicket(), durability)) {
+            // the change is applied in memory; the next snapshot of the file retries the write
+            System.err.println("Warning: " + type + " could not be confirmed on disk.");
+            Metrics.count("persistence.unconfirmed");
+        }
+    }
+
+    synchronized void saveSnapshot(PersistenceQueue queue, Durability durability) {
+        queue.saveUsers(users, durability);
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public synchronized String exportUserRow(String userId) {
+        User user = findUserById(userId);
+        return user != null ? user.toCsvString() : null;
+    }
+
+    // applied on a read replica only
+    public synchronized void applyReplicatedUser(String userId, String csv) {
+        long started = System.nanoTime();
+        try {
+            User replicated = UserFileHandler.parseUserFromCsv(csv);
+            if (replicated == null) return;
+
+            User previous = usersById.get(userId);
+            if (previous != null) {
+                users.remove(previous);
+                usersByUsername.remove(previous.getUsername().toLowerCase());
+            }
+            users.add(replicated);
+            index(replicated);
+            dataVersion.incrementAndGet();
+        } finally {
+            Metrics.record("auth.applyReplicatedUser", started);
         }
-        return false;
+    }
+
+    // lets the reporting replica run admin reports on behalf of the requesting admin
+    public boolean assumeSession(String userId) {
+        User user = findUserById(userId);
+        if (user == null || !user.isAdmin() || !user.canLogin()) {
+            return false;
+        }
+        currentUser.set(user);
+        return true;
+    }
+
+    public void endSession() {
+        currentUser.remove();
     }
 
     private User findUserByUsername(String username) {
-        return users.stream()
-                .filter(user -> user.getUsername().equalsIgnoreCase(username))
-                .findFirst()
-                .orElse(null);
+        return username != null ? usersByUsername.get(username.toLowerCase()) : null;
     }
 
     public boolean changePassword(String username, String oldPassword, String newPassword) {
-        User user = findUserByUsername(username);
-        if (user != null && user.verifyPassword(oldPassword)) {
-            user.updatePassword(newPassword);
-            UserFileHandler.saveUsers(users);
-            return true;
+        long started = System.nanoTime();
+        try {
+            User user = findUserByUsername(username);
+            if (user != null && user.verifyPassword(oldPassword)) {
+                user.updatePassword(newPassword);
+                publish(EventType.USER_CHANGED, user.getUserId(), "password changed");
+                return true;
+            }
+            return false;
+        } finally {
+            Metrics.record("auth.changePassword", started);
         }
-        return false;
     }
 
     public boolean registerCustomer(String username, String password, String fullName, String email) {
-        if (findUserByUsername(username) != null) {
-            return false;
-        }
+        long started = System.nanoTime();
+        try {
+            String userId;
+            // check, ID and insert under one lock so concurrent registrations can't share a name or an ID
+            synchronized (this) {
+                if (findUserByUsername(username) != null) {
+                    return false;
+                }
 
-        String userId = generateCustomerId();
-        User newUser = new User(userId, username, password, fullName, email, User.UserType.CUSTOMER);
-        users.add(newUser);
-        UserFileHandler.saveUsers(users);
-        return true;
+                userId = generateCustomerId();
+                User newUser = new User(userId, username, password, fullName, email, User.UserType.CUSTOMER);
+                users.add(newUser);
+                index(newUser);
+            }
+            publish(EventType.USER_CHANGED, userId, "registered");
+            return true;
+        } finally {
+            Metrics.record("auth.registerCustomer", started);
+        }
     }
 
     private synchronized String generateCustomerId() {
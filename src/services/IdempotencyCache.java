@@ -0,0 +1,124 @@
+package services;
+
+import data.FileHandler;
+import data.IoStats;
+import data.PersistenceQueue;
+import data.PersistenceQueue.Durability;
+import models.IdempotencyRecord;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Remembers the outcome of keyed operations so a retried request gets the original
+// answer instead of running twice. Entries expire after the TTL and the oldest ones
+// are dropped once the cache is full; all entries share one TTL, so insertion order
+// is also expiry order.
+class IdempotencyCache {
+    static final int DEFAULT_CAPACITY = 1024;
+    static final long DEFAULT_TTL_MINUTES = 60;
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, IdempotencyRecord> entries = new LinkedHashMap<>();
+    // one lock per key being executed, so concurrent retries wait for the first attempt
+    private final Map<String, Object> inFlight = new ConcurrentHashMap<>();
+    private long hits;
+    private long misses;
+    // keys reused for a different request; refused, so not hits
+    private long mismatches;
+
+    IdempotencyCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+    }
+
+    synchronized void restore(List<IdempotencyRecord> records) {
+        long now = System.currentTimeMillis();
+        for (IdempotencyRecord record : records) {
+            if (!record.isExpired(now)) {
+                entries.put(record.getKey(), record);
+            }
+        }
+        trim(now);
+    }
+
+    // Returns the cached result for the key, or runs the operation, caches its result
+    // and calls onStored so the caller can persist the new entry.
+    String execute(String key, String request, Supplier<String> operation, Runnable onStored) {
+        String cached = lookup(key, request);
+        if (cached != null) return cached;
+
+        while (true) {
+            Object lock = inFlight.computeIfAbsent(key, k -> new Object());
+            synchronized (lock) {
+                // the holder we waited for has released the key, and a newer caller may hold it by now
+                if (inFlight.get(key) != lock) continue;
+                try {
+                    cached = lookup(key, request);
+                    if (cached != null) return cached;
+
+                    synchronized (this) {
+                        misses++;
+                    }
+                    String result = operation.get();
+                    store(new IdempotencyRecord(key, request, result, System.currentTimeMillis() + ttlMillis));
+                    onStored.run();
+                    return result;
+                } finally {
+                    inFlight.remove(key, lock);
+                }
+            }
+        }
+    }
+
+    private synchronized String lookup(String key, String request) {
+        trim(System.currentTimeMillis());
+        IdempotencyRecord record = entries.get(key);
+        if (record == null) return null;
+        if (!record.getRequest().equals(request)) {
+            mismatches++;
+            return "Idempotency key was already used for a different request.";
+        }
+        hits++;
+        return record.getResult();
+    }
+
+    private synchronized void store(IdempotencyRecord record) {
+        entries.remove(record.getKey());
+        entries.put(record.getKey(), record);
+        trim(System.currentTimeMillis());
+    }
+
+    private void trim(long now) {
+        Iterator<IdempotencyRecord> it = entries.values().iterator();
+        while (it.hasNext()) {
+            IdempotencyRecord record = it.next();
+            if (entries.size() > capacity || record.isExpired(now)) {
+                it.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    // snapshot and submit under the lock so saves reach the queue in the order they were taken
+    synchronized long saveSnapshot(PersistenceQueue queue, Durability durability) {
+        IoStats.recordChanged(FileHandler.IDEMPOTENCY_FILE);
+        return queue.saveIdempotencyRecords(new ArrayList<>(entries.values()), durability);
+    }
+
+    synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("entries", entries.size());
+        metrics.put("capacity", capacity);
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("mismatches", mismatches);
+        return metrics;
+    }
+}
@@ -0,0 +1,95 @@
+package services;
+
+import data.FileHandler;
+import data.IoStats;
+import data.PersistenceQueue;
+import data.PersistenceQueue.Durability;
+import data.UserFileHandler;
+import events.DomainEvent;
+import events.EventHandler;
+
+// Turns domain events into file rewrites. Dirty files are collected per partition
+// over a batch and each one is snapshotted once at the end of it, so a rental only
+// rewrites the files of the shard that owns the equipment.
+public class PersistenceEventHandler implements EventHandler {
+    private final PersistenceQueue persistence;
+    private final AuthenticationService authService;
+    private final RentalService rentalService;
+
+    private final int[] dirtyFiles;
+    private boolean usersDirty;
+    private boolean fsync;
+
+    public PersistenceEventHandler(PersistenceQueue persistence, AuthenticationService authService,
+                                   RentalService rentalService) {
+        this.persistence = persistence;
+        this.authService = authService;
+        this.rentalService = rentalService;
+        this.dirtyFiles = new int[rentalService.getPartitionCount()];
+    }
+
+    @Override
+    public void onEvent(DomainEvent event, long sequence, boolean endOfBatch) {
+        switch (event.getType()) {
+            case EQUIPMENT_RENTED -> markDirty(event.getEquipmentId(),
+                    RentalPartition.RENTALS_FILE | RentalPartition.EQUIPMENT_FILE);
+            case EQUIPMENT_RETURNED, FORCE_RETURNED -> markDirty(event.getEquipmentId(),
+                    RentalPartition.RETURNS_FILE | RentalPartition.RENTALS_FILE | RentalPartition.EQUIPMENT_FILE);
+            case STATUS_CHANGED, EQUIPMENT_ADDED, EQUIPMENT_REMOVED -> markDirty(event.getEquipmentId(),
+                    RentalPartition.EQUIPMENT_FILE);
+            case USER_LOGGED_IN, USER_CHANGED -> usersDirty = true;
+        }
+        countChangedRecords(event);
+        fsync |= event.isFsyncRequested();
+
+        if (endOfBatch) {
+            flushDirty();
+        }
+    }
+
+    // one record per file the event touches, however many bytes its rewrite costs
+    private static void countChangedRecords(DomainEvent event) {
+        switch (event.getType()) {
+            case EQUIPMENT_RENTED -> {
+                IoStats.recordChanged(FileHandler.RENTALS_FILE);
+                IoStats.recordChanged(FileHandler.EQUIPMENT_FILE);
+            }
+            case EQUIPMENT_RETURNED, FORCE_RETURNED -> {
+                IoStats.recordChanged(FileHandler.RETURNS_FILE);
+                IoStats.recordChanged(FileHandler.RENTALS_FILE);
+                IoStats.recordChanged(FileHandler.EQUIPMENT_FILE);
+            }
+            case STATUS_CHANGED, EQUIPMENT_ADDED, EQUIPMENT_REMOVED -> IoStats.recordChanged(FileHandler.EQUIPMENT_FILE);
+            case USER_LOGGED_IN, USER_CHANGED -> IoStats.recordChanged(UserFileHandler.USERS_FILE);
+        }
+    }
+
+    private void markDirty(String equipmentId, int files) {
+        int partition = rentalService.partitionIndexOf(equipmentId);
+        if (partition >= 0) {
+            dirtyFiles[partition] |= files;
+            return;
+        }
+        // unknown equipment: rewrite that file everywhere rather than risk losing the change
+        for (int i = 0; i < dirtyFiles.length; i++) {
+            dirtyFiles[i] |= files;
+        }
+    }
+
+    private void flushDirty() {
+        Durability durability = fsync ? Durability.FSYNCED : Durability.WRITTEN;
+
+        for (int i = 0; i < dirtyFiles.length; i++) {
+            if (dirtyFiles[i] != 0) {
+                rentalService.saveSnapshot(persistence, i, dirtyFiles[i], durability);
+                dirtyFiles[i] = 0;
+            }
+        }
+        if (usersDirty) {
+            authService.saveSnapshot(persistence, durability);
+        }
+
+        usersDirty = false;
+        fsync = false;
+    }
+}
@@ -0,0 +1,66 @@
+package services;
+
+import data.FileHandler;
+import data.PersistenceQueue;
+import data.ReturnColumns;
+import data.PersistenceQueue.Durability;
+import models.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// One shard of the inventory with its own rentals, returns and data files.
+// All fields are guarded by the partition's monitor.
+class RentalPartition {
+    static final int EQUIPMENT_FILE = 1;
+    static final int RENTALS_FILE = 2;
+    static final int RETURNS_FILE = 4;
+
+    final int index;
+    final Path dataDir;
+    List<Equipment> equipment = new ArrayList<>();
+    List<Rental> rentals = new ArrayList<>();
+    ReturnColumns returns = new ReturnColumns();
+
+    RentalPartition(int index, Path dataDir) {
+        this.index = index;
+        this.dataDir = dataDir;
+    }
+
+    synchronized void load() {
+        equipment = FileHandler.loadEquipment(dataDir);
+        rentals = FileHandler.loadRentals(dataDir);
+        returns = ReturnColumns.of(FileHandler.loadReturns(dataDir));
+    }
+
+    // Called only from the persistence event handler's thread, so snapshots still reach
+    // the queue in order. The returns history is formatted after the monitor is released.
+    void saveSnapshot(PersistenceQueue queue, int files, Durability durability) {
+        ReturnColumns.Snapshot returnsSnapshot = null;
+        synchronized (this) {
+            if ((files & EQUIPMENT_FILE) != 0) queue.saveEquipment(dataDir, equipment, durability);
+            if ((files & RENTALS_FILE) != 0) queue.saveRentals(dataDir, rentals, durability);
+            if ((files & RETURNS_FILE) != 0) returnsSnapshot = returns.snapshot();
+        }
+        if (returnsSnapshot != null) queue.saveReturns(dataDir, returnsSnapshot, durability);
+    }
+
+    Equipment findEquipment(String id) {
+        for (Equipment eq : equipment) {
+            if (eq.getId().equals(id)) return eq;
+        }
+        return null;
+    }
+
+    Rental findRental(String rentalId) {
+        for (Rental rental : rentals) {
+            if (rental.getRentalId().equals(rentalId)) return rental;
+        }
+        return null;
+    }
+
+    ReturnRecord findReturn(String rentalId) {
+        return returns.findByRentalId(rentalId);
+    }
+}
@@ -1,62 +1,408 @@
 package services;
 
 import data.FileHandler;
+import data.IoStats;
+import data.PersistenceQueue;
+import data.PersistenceQueue.Durability;
+import events.EventRingBuffer;
+import events.EventType;
+import metrics.FlightEvents;
+import metrics.Metrics;
+import metrics.StartupProfile;
 import models.*;
 import utils.Constants;
 import utils.ValidationUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+// Routes every call to the partition that owns the equipment involved; catalog-wide
+// queries scatter over all partitions and gather the results. With one partition
+// (the default) the data lives in the usual files in the working directory.
 public class RentalService {
-    private List<Equipment> equipment;
-    private List<Rental> rentals;
-    private List<ReturnRecord> returns;
-    private int rentalCounter;
+    public enum ShardKey { CATEGORY, EQUIPMENT_ID }
+
+    private static final Path SHARD_ROOT = FileHandler.BASE_DIR.resolve("shards");
+    private static final String LAYOUT_FILE = "layout";
+    private static final boolean WARM_START = Boolean.parseBoolean(System.getProperty("rental.warmStart", "true"));
+
+    private final RentalPartition[] partitions;
+    private final ShardKey shardKey;
+    // removed equipment keeps its entry so late events can still be routed to its files
+    private final Map<String, RentalPartition> equipmentIndex = new ConcurrentHashMap<>();
+    private final Map<String, RentalPartition> rentalIndex = new ConcurrentHashMap<>();
+    private final AtomicInteger rentalCounter = new AtomicInteger(1);
+    private final AtomicInteger equipmentCounter = new AtomicInteger(101);
     private final AuthenticationService authService;
+    private final PersistenceQueue persistence;
+    private final EventRingBuffer events;
+    private final IdempotencyCache idempotency;
+    private final RevenueAggregates revenue = new RevenueAggregates();
+    private final UtilizationIndex utilization = new UtilizationIndex();
+    // sketches for the opt-in approximate report mode; null unless enabled
+    private final ApproximateAnalytics approximate =
+            Boolean.getBoolean("rental.approximateAnalytics") ? new ApproximateAnalytics() : null;
+    private final AggregatesEventHandler aggregates;
+    // bumped after every change to the data, once the change is visible
+    private final AtomicLong dataVersion = new AtomicLong();
+    private final ReportCache<Map<String, Object>> statusCache;
+    private Durability durability;
+
+    public RentalService(AuthenticationService authService, PersistenceQueue persistence, EventRingBuffer events) {
+        this(authService, persistence, events, Integer.getInteger("rental.shards", 1),
+                ShardKey.valueOf(System.getProperty("rental.shardKey", "CATEGORY").toUpperCase()));
+    }
 
-    public RentalService(AuthenticationService authService) {
+    public RentalService(AuthenticationService authService, PersistenceQueue persistence, EventRingBuffer events,
+                         int shardCount, ShardKey shardKey) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
         this.authService = authService;
-        loadData();
-        initializeRentalCounter();
+        this.persistence = persistence;
+        this.events = events;
+        this.aggregates = new AggregatesEventHandler(revenue, utilization, approximate);
+        events.addHandler(aggregates);
+        this.durability = authService.getDurability();
+        this.statusCache = new ReportCache<>(1, () -> dataVersion.get() + authService.getDataVersion());
+        this.shardKey = shardKey;
+        this.idempotency = new IdempotencyCache(
+                Integer.getInteger("rental.idempotencyCapacity", IdempotencyCache.DEFAULT_CAPACITY),
+                TimeUnit.MINUTES.toMillis(Long.getLong("rental.idempotencyTtlMinutes",
+                        IdempotencyCache.DEFAULT_TTL_MINUTES)));
+        this.partitions = new RentalPartition[shardCount];
+        long started = System.nanoTime();
+        List<Path> dirs = prepareShardDirectories(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            partitions[i] = new RentalPartition(i, dirs.get(i));
+        }
+        StartupProfile.phase("rental.shards", started);
+        if (!loadData()) {
+            started = System.nanoTime();
+            initializeRentalCounter();
+            StartupProfile.phase("rental.counters", started);
+        }
+        started = System.nanoTime();
+        idempotency.restore(FileHandler.loadIdempotencyRecords());
+        StartupProfile.phase("rental.idempotency", started);
     }
 
-    private void loadData() {
-        equipment = FileHandler.loadEquipment();
-        rentals = FileHandler.loadRentals();
-        returns = FileHandler.loadReturns();
+    // true when the derived state and ID counters came from the warm-start cache
+    private boolean loadData() {
+        long started = System.nanoTime();
+        Arrays.stream(partitions).parallel().forEach(RentalPartition::load);
+        StartupProfile.phase("rental.files", started);
+
+        started = System.nanoTime();
+        equipmentIndex.clear();
+        rentalIndex.clear();
+        for (RentalPartition partition : partitions) {
+            synchronized (partition) {
+                for (Equipment eq : partition.equipment) {
+                    equipmentIndex.put(eq.getId(), partition);
+                }
+                for (Rental rental : partition.rentals) {
+                    rentalIndex.put(rental.getRentalId(), partition);
+                }
+            }
+        }
+        StartupProfile.phase("rental.indexes", started);
+
+        if (restoreWarmStart()) {
+            dataVersion.incrementAndGet();
+            return true;
+        }
+
+        started = System.nanoTime();
+        List<ReturnRecord> allReturns = gather(p -> p.returns.toList());
+        StartupProfile.phase("rental.returns", started);
+        started = System.nanoTime();
+        revenue.rebuild(allReturns);
+        StartupProfile.phase("rental.revenue", started);
+        started = System.nanoTime();
+        utilization.rebuild(allReturns);
+        StartupProfile.phase("rental.utilization", started);
+        if (approximate != null) {
+            started = System.nanoTime();
+            approximate.rebuild(allReturns);
+            StartupProfile.phase("rental.approximate", started);
+        }
+        dataVersion.incrementAndGet();
+        return false;
     }
 
-    private void initializeRentalCounter() {
-        rentalCounter = 1;
-        for (Rental rental : rentals) {
-            String id = rental.getRentalId();
-            if (id.startsWith("R")) {
+    private String warmStartLayout() {
+        return partitions.length + "," + shardKey + "," + (approximate != null);
+    }
+
+    private boolean restoreWarmStart() {
+        if (!WARM_START) return false;
+
+        long started = System.nanoTime();
+        WarmStartCache.State state = WarmStartCache.load(warmStartLayout(), partitions);
+        StartupProfile.phase("rental.warmStart", started);
+        // a shutdown racing a return can leave memory one return ahead of the files
+        if (state == null || state.returnCount() != (int) sum(p -> p.returns.size())) return false;
+
+        started = System.nanoTime();
+        revenue.restore(state.revenue());
+        utilization.restore(state.utilization());
+        if (approximate != null) approximate.restore(state.approximate());
+        rentalCounter.set(state.nextRental());
+        equipmentCounter.set(state.nextEquipment());
+        StartupProfile.phase("rental.restore", started);
+        return true;
+    }
+
+    // Called on shutdown once the events are drained and every queued write has reached
+    // the files, so the aggregates have seen every return; holding every lock keeps the
+    // rows in step with the checksums while they are written out.
+    public void saveWarmStart() {
+        if (!WARM_START || persistence.getFailedWriteCount() > 0) return;
+
+        long started = System.nanoTime();
+        try {
+            awaitAggregates();
+            withAllPartitions(0, () -> {
+                int returnCount = 0;
+                for (RentalPartition partition : partitions) {
+                    returnCount += partition.returns.size();
+                }
+                if (returnCount < WarmStartCache.MIN_RETURNS) {
+                    WarmStartCache.discard();
+                    return;
+                }
                 try {
-                    int num = Integer.parseInt(id.substring(1));
-                    if (num >= rentalCounter) {
-                        rentalCounter = num + 1;
+                    WarmStartCache.save(new WarmStartCache.State(warmStartLayout(),
+                            WarmStartCache.checksums(partitions), returnCount, rentalCounter.get(),
+                            equipmentCounter.get(), revenue.exportState(), utilization.exportState(),
+                            approximate != null ? approximate.exportState() : null));
+                } catch (IOException e) {
+                    System.err.println("Error checking data files for warm start: " + e.getMessage());
+                    Metrics.count("file.errors");
+                }
+            });
+        } finally {
+            Metrics.record("rental.saveWarmStart", started);
+        }
+    }
+
+    private void withAllPartitions(int index, Runnable action) {
+        if (index == partitions.length) {
+            action.run();
+            return;
+        }
+        synchronized (partitions[index]) {
+            withAllPartitions(index + 1, action);
+        }
+    }
+
+    // (Re)distributes the data whenever the shard count or key differs from what is on disk
+    // and returns each shard's directory. A single shard lives in the base directory and
+    // has no layout file. The layout file is the commit point: new shards are written in
+    // full and forced to disk in a fresh set directory before the layout names them, and
+    // the old shards are deleted only after that, so a crash at any step leaves one
+    // complete copy in use. Going back to one shard rewrites the base files while the
+    // layout still names the old shards, so an interrupted merge is redone on the next start.
+    private List<Path> prepareShardDirectories(int count) {
+        Path layoutFile = SHARD_ROOT.resolve(LAYOUT_FILE);
+        String layout = count + "," + shardKey;
+
+        try {
+            String previous = Files.exists(layoutFile) ? Files.readString(layoutFile).trim() : null;
+            List<Path> previousDirs = previous != null ? shardDirectories(previous) : List.of(FileHandler.BASE_DIR);
+            if (previous == null ? count == 1 : previous.equals(layout) || previous.startsWith(layout + ",")) {
+                removeUnusedSets(previousDirs);
+                return previousDirs;
+            }
+
+            List<FileHandler.DataFiles> sources = new ArrayList<>();
+            for (Path dir : previousDirs) {
+                sources.add(FileHandler.readDataFiles(dir));
+            }
+            List<FileHandler.DataFiles> parts = redistribute(sources, count);
+
+            if (count == 1) {
+                FileHandler.writeDataFiles(FileHandler.BASE_DIR, parts.get(0));
+                Files.delete(layoutFile);
+                FileHandler.forceDirectory(SHARD_ROOT);
+                deleteShards(previousDirs);
+                removeUnusedSets(List.of());
+                System.out.println("Merged " + previousDirs.size() + " shards back into "
+                        + FileHandler.BASE_DIR.toAbsolutePath() + ".");
+                return List.of(FileHandler.BASE_DIR);
+            }
+
+            String set = "set-" + System.currentTimeMillis();
+            List<Path> dirs = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                Path dir = SHARD_ROOT.resolve(set).resolve("shard-" + i);
+                FileHandler.writeDataFiles(dir, parts.get(i));
+                dirs.add(dir);
+            }
+            FileHandler.forceDirectory(SHARD_ROOT.resolve(set));
+            FileHandler.forceDirectory(SHARD_ROOT);
+            FileHandler.writeLines(layoutFile, List.of(layout + "," + set), true);
+
+            // the base files stay as they were when the data was first partitioned
+            if (previous != null) deleteShards(previousDirs);
+            removeUnusedSets(dirs);
+            System.out.println("Partitioned data into " + count + " shards by " + shardKey + ".");
+            return dirs;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Could not prepare the shard directories, so the data in use was "
+                    + "left as it was: " + e.getMessage(), e);
+        }
+    }
+
+    // layouts written before shard sets kept the shards directly under the shard root
+    private static List<Path> shardDirectories(String layout) {
+        String[] fields = layout.split(",");
+        Path root = fields.length > 2 ? SHARD_ROOT.resolve(fields[2]) : SHARD_ROOT;
+        List<Path> dirs = new ArrayList<>();
+        for (int i = 0; i < Integer.parseInt(fields[0]); i++) {
+            dirs.add(root.resolve("shard-" + i));
+        }
+        return dirs;
+    }
+
+    private List<FileHandler.DataFiles> redistribute(List<FileHandler.DataFiles> sources, int count) {
+        Map<String, Integer> owners = new HashMap<>();
+        List<FileHandler.DataFiles> parts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            parts.add(new FileHandler.DataFiles(new ArrayList<>(), new ArrayList<>(), new ArrayList<>()));
+        }
+        for (FileHandler.DataFiles source : sources) {
+            for (Equipment eq : source.equipment()) {
+                int index = partitionIndexFor(eq);
+                owners.put(eq.getId(), index);
+                parts.get(index).equipment().add(eq);
+            }
+        }
+        for (FileHandler.DataFiles source : sources) {
+            for (Rental rental : source.rentals()) {
+                parts.get(ownerOf(owners, rental.getEquipmentId())).rentals().add(rental);
+            }
+            for (ReturnRecord record : source.returns()) {
+                parts.get(ownerOf(owners, record.getEquipmentId())).returns().add(record);
+            }
+        }
+        return parts;
+    }
+
+    // only after the layout moved on; a shard left behind is untidy but never read again
+    private static void deleteShards(List<Path> dirs) {
+        for (Path dir : dirs) {
+            try {
+                FileHandler.deleteDataFiles(dir);
+                Files.deleteIfExists(dir);
+                Path parent = dir.getParent();
+                if (parent != null && parent.getFileName().toString().startsWith("set-")) {
+                    try (Stream<Path> left = Files.list(parent)) {
+                        if (left.findAny().isEmpty()) Files.delete(parent);
                     }
-                } catch (NumberFormatException e) {
-                    System.err.println("Error initializing rental counter: " + e.getCause());
                 }
+            } catch (IOException e) {
+                System.err.println("Error removing old shard " + dir + ": " + e.getMessage());
+                Metrics.count("file.errors");
             }
         }
+    }
 
-        for (ReturnRecord record : returns) {
-            String id = record.getRentalId();
-            if (id.startsWith("R")) {
-                try {
-                    int num = Integer.parseInt(id.substring(1));
-                    if (num >= rentalCounter) {
-                        rentalCounter = num + 1;
+    // shard sets a crash left half-written before the layout could name them
+    private static void removeUnusedSets(List<Path> inUse) {
+        if (!Files.isDirectory(SHARD_ROOT)) return;
+
+        try (Stream<Path> sets = Files.list(SHARD_ROOT)) {
+            for (Path set : sets.filter(set -> set.getFileName().toString().startsWith("set-"))
+                    .filter(set -> inUse.stream().noneMatch(dir -> dir.startsWith(set)))
+                    .toList()) {
+                List<Path> shards;
+                try (Stream<Path> dirs = Files.list(set)) {
+                    shards = dirs.filter(Files::isDirectory).toList();
+                }
+                if (shards.isEmpty()) {
+                    Files.deleteIfExists(set);
+                } else {
+                    deleteShards(shards);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error removing unused shards: " + e.getMessage());
+            Metrics.count("file.errors");
+        }
+    }
+
+    private int partitionIndexFor(Equipment eq) {
+        String key = shardKey == ShardKey.CATEGORY ? eq.getCategory().toLowerCase() : eq.getId();
+        return Math.floorMod(key.hashCode(), partitions.length);
+    }
+
+    // rows whose equipment no longer exists are placed by equipment ID
+    private int ownerOf(Map<String, Integer> owners, String equipmentId) {
+        Integer owner = owners.get(equipmentId);
+        return owner != null ? owner : Math.floorMod(equipmentId.hashCode(), partitions.length);
+    }
+
+    private void initializeRentalCounter() {
+        int nextRental = 1;
+        int maxEquipment = 100;
+        for (RentalPartition partition : partitions) {
+            synchronized (partition) {
+                for (Rental rental : partition.rentals) {
+                    String id = rental.getRentalId();
+                    if (id.startsWith("R")) {
+                        try {
+                            int num = Integer.parseInt(id.substring(1));
+                            if (num >= nextRental) {
+                                nextRental = num + 1;
+                            }
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error initializing rental counter: " + e.getCause());
+                        }
+                    }
+                }
+
+                for (int row = 0; row < partition.returns.size(); row++) {
+                    String id = partition.returns.rentalIdAt(row);
+                    if (id.startsWith("R")) {
+                        try {
+                            int num = Integer.parseInt(id.substring(1));
+                            if (num >= nextRental) {
+                                nextRental = num + 1;
+                            }
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error initializing rental counter (record): " + e.getCause());
+                        }
+                    }
+                }
+
+                for (Equipment eq : partition.equipment) {
+                    if ((eq.getId().startsWith("E"))) {
+                        try {
+                            int id = Integer.parseInt(eq.getId().substring(1));
+                            if (id > maxEquipment) maxEquipment = id;
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error generating equipment id: " + e.getCause());
+                        }
                     }
-                } catch (NumberFormatException e) {
-                    System.err.println("Error initializing rental counter (record): " + e.getCause());
                 }
             }
         }
+        rentalCounter.set(nextRental);
+        equipmentCounter.set(maxEquipment + 1);
     }
 
     private boolean requireAdminAccess() {
@@ -75,493 +421,1010 @@ public class RentalService {
         return true;
     }
 
-    public boolean addEquipment(String name, double rentPerDay, String category) {
-        if (!requireAdminAccess()) return false;
+    private <T> List<T> gather(Function<RentalPartition, List<T>> query) {
+        if (partitions.length == 1) {
+            return read(partitions[0], query);
+        }
+        return Arrays.stream(partitions).parallel()
+                .map(partition -> read(partition, query))
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
 
-        String id = generateEquipmentId();
-        Equipment eq= new Equipment(id, name, rentPerDay, "Available", category);
-        equipment.add(eq);
-        FileHandler.saveEquipment(equipment);
-        return true;
+    private double sum(ToDoubleFunction<RentalPartition> query) {
+        double total = 0.0;
+        for (RentalPartition partition : partitions) {
+            synchronized (partition) {
+                total += query.applyAsDouble(partition);
+            }
+        }
+        return total;
     }
 
-    private synchronized String generateEquipmentId() {
-        int maxId = 100;
-        for (Equipment eq : equipment) {
-            if ((eq.getId().startsWith("E"))) {
-                try {
-                    int id = Integer.parseInt(eq.getId().substring(1));
-                    if (id > maxId) maxId = id;
-                } catch (NumberFormatException e) {
-                    System.err.println("Error generating equipment id: " + e.getCause());
-                }
+    private static <T> T read(RentalPartition partition, Function<RentalPartition, T> query) {
+        synchronized (partition) {
+            return query.apply(partition);
+        }
+    }
+
+    public boolean addEquipment(String name, double rentPerDay, String category) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return false;
+
+            String id = generateEquipmentId();
+            Equipment eq= new Equipment(id, name, rentPerDay, "Available", category);
+            RentalPartition partition = partitions[partitionIndexFor(eq)];
+            synchronized (partition) {
+                partition.equipment.add(eq);
             }
+            equipmentIndex.put(id, partition);
+
+            publish(EventType.EQUIPMENT_ADDED, authService.getCurrentUser().getUserId(), id, null, null, 0.0, 0.0);
+            return true;
+        } finally {
+            Metrics.record("rental.addEquipment", started);
+        }
+    }
+
+    // Side effects (file saves, counters, notifications) hang off the event; the
+    // configured durability decides how long the caller waits for them to land.
+    private void publish(EventType type, String userId, String equipmentId, String rentalId,
+                         String detail, double amount, double lateFee) {
+        publish(type, userId, equipmentId, rentalId, detail, amount, lateFee, null);
+    }
+
+    private void publish(EventType type, String userId, String equipmentId, String rentalId,
+                         String detail, double amount, double lateFee, ReturnRecord returnRecord) {
+        long sequence = events.publish(type, userId, equipmentId, rentalId, detail, amount, lateFee,
+                durability == Durability.FSYNCED, returnRecord);
+        dataVersion.incrementAndGet();
+        if (durability == Durability.QUEUED) return;
+
+        events.awaitHandled(sequence);
+        if (!persistence.await(persistence.getLastTicket(), durability)) {
+            // the change is applied in memory; the next snapshot of the file retries the write
+            System.err.println("Warning: " + type + " could not be confirmed on disk.");
+            Metrics.count("persistence.unconfirmed");
         }
-        return String.format("E%03d", maxId + 1);
+    }
+
+    // reads of the aggregates wait for the returns published before them
+    private void awaitAggregates() {
+        events.awaitHandled(aggregates, events.getCursor());
+    }
+
+    void saveSnapshot(PersistenceQueue queue, int partition, int files, Durability durability) {
+        partitions[partition].saveSnapshot(queue, files, durability);
+    }
+
+    int getPartitionCount() {
+        return partitions.length;
+    }
+
+    // the base directory, or one directory per shard
+    public List<Path> getDataDirectories() {
+        return Arrays.stream(partitions).map(partition -> partition.dataDir).toList();
+    }
+
+    int partitionIndexOf(String equipmentId) {
+        RentalPartition partition = equipmentId != null ? equipmentIndex.get(equipmentId) : null;
+        return partition != null ? partition.index : -1;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    private String generateEquipmentId() {
+        return String.format("E%03d", equipmentCounter.getAndIncrement());
     }
 
     public List<Equipment> getAvailableEquipment() {
-        return equipment.stream()
-                .filter(Equipment::isAvailable)
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            return gather(p -> p.equipment.stream()
+                    .filter(Equipment::isAvailable)
+                    .collect(Collectors.toList()));
+        } finally {
+            Metrics.record("rental.getAvailableEquipment", started);
+        }
     }
 
     public List<Equipment> getAllEquipment() {
-        return new ArrayList<>(equipment);
+        long started = System.nanoTime();
+        try {
+            return gather(p -> new ArrayList<>(p.equipment));
+        } finally {
+            Metrics.record("rental.getAllEquipment", started);
+        }
     }
 
     public List<ReturnRecord> getAllReturns() {
-        if (!requireAdminAccess()) return new ArrayList<>();
-        return new ArrayList<>(returns);
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new ArrayList<>();
+            return gather(p -> p.returns.toList());
+        } finally {
+            Metrics.record("rental.getAllReturns", started);
+        }
     }
 
     public Equipment findEquipmentById(String id) {
-        return equipment.stream()
-                .filter(eq -> eq.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        long started = System.nanoTime();
+        try {
+            RentalPartition partition = id != null ? equipmentIndex.get(id) : null;
+            if (partition == null) return null;
+            return read(partition, p -> p.findEquipment(id));
+        } finally {
+            Metrics.record("rental.findEquipmentById", started);
+        }
     }
 
     public boolean updateEquipmentStatus(String equipmentId, String newStatus) {
-        if (!requireAdminAccess()) return false;
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return false;
 
-        Equipment eq = findEquipmentById(equipmentId);
-        if (eq == null) return false;
+            RentalPartition partition = equipmentId != null ? equipmentIndex.get(equipmentId) : null;
+            if (partition == null) return false;
 
-        eq.setAvailability(newStatus);
-        FileHandler.saveEquipment(equipment);
-        return true;
+            synchronized (partition) {
+                Equipment eq = partition.findEquipment(equipmentId);
+                if (eq == null) return false;
+
+                eq.setAvailability(newStatus);
+            }
+            publish(EventType.STATUS_CHANGED, authService.getCurrentUser().getUserId(), equipmentId, null,
+                    newStatus, 0.0, 0.0);
+            return true;
+        } finally {
+            Metrics.record("rental.updateEquipmentStatus", started);
+        }
     }
 
     public boolean removeEquipment(String equipmentId) {
-        if (!requireAdminAccess()) return false;
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return false;
 
-        Equipment eq = findEquipmentById(equipmentId);
-        if (eq == null) return false;
+            RentalPartition partition = equipmentId != null ? equipmentIndex.get(equipmentId) : null;
+            if (partition == null) return false;
 
-        boolean isRented = rentals.stream()
-                        .anyMatch(r -> r.getEquipmentId().equals(equipmentId));
+            synchronized (partition) {
+                Equipment eq = partition.findEquipment(equipmentId);
+                if (eq == null) return false;
 
-        if (isRented) {
-            System.err.println("Cannot remove equipment that is currently rented.");
-            return false;
-        }
+                boolean isRented = partition.rentals.stream()
+                                .anyMatch(r -> r.getEquipmentId().equals(equipmentId));
 
-        equipment.remove(eq);
-        FileHandler.saveEquipment(equipment);
-        return true;
+                if (isRented) {
+                    System.err.println("Cannot remove equipment that is currently rented.");
+                    return false;
+                }
+
+                partition.equipment.remove(eq);
+            }
+            publish(EventType.EQUIPMENT_REMOVED, authService.getCurrentUser().getUserId(), equipmentId, null,
+                    null, 0.0, 0.0);
+            return true;
+        } finally {
+            Metrics.record("rental.removeEquipment", started);
+        }
     }
 
     public List<Rental> getRentalsByDateRange(LocalDate startDate, LocalDate endDate) {
-        if (!requireAdminAccess()) return new ArrayList<>();
-
-        return rentals.stream()
-                .filter(r -> !r.getStartDate().isBefore(startDate) &&
-                                    !r.getStartDate().isAfter(endDate))
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new ArrayList<>();
+
+            return gather(p -> p.rentals.stream()
+                    .filter(r -> !r.getStartDate().isBefore(startDate) &&
+                                        !r.getStartDate().isAfter(endDate))
+                    .collect(Collectors.toList()));
+        } finally {
+            Metrics.record("rental.getRentalsByDateRange", started);
+        }
     }
 
     public List<ReturnRecord> getReturnsByDateRange(LocalDate startDate, LocalDate endDate) {
-        if (!requireAdminAccess()) return new ArrayList<>();
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new ArrayList<>();
 
-        return returns.stream()
-                .filter(r -> !r.getEndDate().isBefore(startDate) &&
-                                         !r.getEndDate().isAfter(endDate))
-                .collect(Collectors.toList());
+            return gather(p -> p.returns.selectEndDateBetween(startDate, endDate));
+        } finally {
+            Metrics.record("rental.getReturnsByDateRange", started);
+        }
     }
 
     public List<Equipment> getEquipmentByCategory(String category) {
-        List<Equipment> categoryEquipment = equipment.stream()
-                .filter(eq -> eq.getCategory().equalsIgnoreCase(category))
-                .toList();
+        long started = System.nanoTime();
+        try {
+            Function<RentalPartition, List<Equipment>> query = p -> p.equipment.stream()
+                    .filter(eq -> eq.getCategory().equalsIgnoreCase(category))
+                    .collect(Collectors.toList());
 
-        if (authService.isCurrentUserCustomer()) {
-            categoryEquipment = categoryEquipment.stream()
-                    .filter(Equipment::isAvailable)
-                    .toList();
-        }
+            // with category sharding the whole category lives in a single partition
+            List<Equipment> categoryEquipment = shardKey == ShardKey.CATEGORY
+                    ? read(partitions[Math.floorMod(category.toLowerCase().hashCode(), partitions.length)], query)
+                    : gather(query);
 
-        return categoryEquipment;
+            if (authService.isCurrentUserCustomer()) {
+                categoryEquipment = categoryEquipment.stream()
+                        .filter(Equipment::isAvailable)
+                        .toList();
+            }
+
+            return categoryEquipment;
+        } finally {
+            Metrics.record("rental.getEquipmentByCategory", started);
+        }
     }
 
     public List<String> getAllCategories() {
-        return equipment.stream()
-                .map(Equipment::getCategory)
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            return gather(p -> p.equipment.stream()
+                            .map(Equipment::getCategory)
+                            .collect(Collectors.toList()))
+                    .stream()
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.toList());
+        } finally {
+            Metrics.record("rental.getAllCategories", started);
+        }
     }
 
     public double calculatePotentialLateFees(String customerId) {
-        if (!requireAuthentication()) return 0.0;
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return 0.0;
 
-        User currentUser = authService.getCurrentUser();
+            User currentUser = authService.getCurrentUser();
 
-        if (currentUser.isCustomer() && !currentUser.getUserId().equals(customerId)) {
-            return 0.0;
-        }
+            if (currentUser.isCustomer() && !currentUser.getUserId().equals(customerId)) {
+                return 0.0;
+            }
 
-        return rentals.stream()
-                .filter(r -> r.getCustomerId().equals(customerId))
-                .filter(Rental::isOverdue)
-                .mapToDouble(r -> r.getDaysOverdue() * Constants.LATE_FEE_PER_DAY)
-                .sum();
+            return sum(p -> p.rentals.stream()
+                    .filter(r -> r.getCustomerId().equals(customerId))
+                    .filter(Rental::isOverdue)
+                    .mapToDouble(r -> r.getDaysOverdue() * Constants.LATE_FEE_PER_DAY)
+                    .sum());
+        } finally {
+            Metrics.record("rental.calculatePotentialLateFees", started);
+        }
     }
 
     public List<Equipment> searchEquipment(String searchTerm) {
-        if (!requireAuthentication()) return new ArrayList<>();
-
-        String term = searchTerm.toLowerCase();
-        return equipment.stream()
-                .filter(eq -> eq.getName().toLowerCase().contains(term) ||
-                                        eq.getId().toLowerCase().contains(term) ||
-                                        eq.getCategory().toLowerCase().contains(term))
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return new ArrayList<>();
+
+            String term = searchTerm.toLowerCase();
+            return gather(p -> p.equipment.stream()
+                    .filter(eq -> eq.getName().toLowerCase().contains(term) ||
+                                            eq.getId().toLowerCase().contains(term) ||
+                                            eq.getCategory().toLowerCase().contains(term))
+                    .collect(Collectors.toList()));
+        } finally {
+            Metrics.record("rental.searchEquipment", started);
+        }
     }
     public List<Equipment> getEquipmentSortedByPrice(boolean ascending) {
-        return equipment.stream()
-                .sorted(ascending ?
-                        Comparator.comparingDouble(Equipment::getRentPerDay) :
-                        Comparator.comparingDouble(Equipment::getRentPerDay).reversed())
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            return getAllEquipment().stream()
+                    .sorted(ascending ?
+                            Comparator.comparingDouble(Equipment::getRentPerDay) :
+                            Comparator.comparingDouble(Equipment::getRentPerDay).reversed())
+                    .collect(Collectors.toList());
+        } finally {
+            Metrics.record("rental.getEquipmentSortedByPrice", started);
+        }
     }
 
     public String rentEquipment(String equipmentId, int days) {
-        if (!requireAuthentication()) return "Please log in first.";
+        return rentEquipment(equipmentId, days, null);
+    }
 
-        User currentUser = authService.getCurrentUser();
-        if (!currentUser.isCustomer()) {
-            return "Only customers can rent equipment.";
+    // With a key, a retry of the same request returns the first result instead of renting again
+    public String rentEquipment(String equipmentId, int days, String idempotencyKey) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return "Please log in first.";
+            if (idempotencyKey == null) return doRentEquipment(equipmentId, days);
+
+            return withIdempotencyKey(idempotencyKey, "rent:" + equipmentId + ":" + days,
+                    () -> doRentEquipment(equipmentId, days));
+        } finally {
+            Metrics.record("rental.rentEquipment", started);
         }
+    }
 
-        Equipment eq = findEquipmentById(equipmentId);
-        if (eq == null) {
-            return "Equipment not found.";
-        }
-        if (!eq.isAvailable()) {
-            return "Equipment is not available for rent.";
-        }
-        if (!ValidationUtils.isValidRentDays(days)) {
-            return "Invalid rental days: " + days;
-        }
+    private String doRentEquipment(String equipmentId, int days) {
+        FlightEvents.Rent event = new FlightEvents.Rent();
+        event.begin();
+        try {
+            User currentUser = authService.getCurrentUser();
+            if (!currentUser.isCustomer()) {
+                return "Only customers can rent equipment.";
+            }
 
-        double totalCost = eq.getRentPerDay() * days;
-        String rentalId = "R" + String.format("%03d", rentalCounter++);
+            RentalPartition partition = equipmentId != null ? equipmentIndex.get(equipmentId) : null;
+            if (partition == null) {
+                return "Equipment not found.";
+            }
+
+            double totalCost;
+            String rentalId;
+            synchronized (partition) {
+                Equipment eq = partition.findEquipment(equipmentId);
+                if (eq == null) {
+                    return "Equipment not found.";
+                }
+                if (!eq.isAvailable()) {
+                    return "Equipment is not available for rent.";
+                }
+                if (!ValidationUtils.isValidRentDays(days)) {
+                    return "Invalid rental days: " + days;
+                }
 
-        Rental rental = new Rental(rentalId, equipmentId, currentUser.getUserId(), LocalDate.now(), days, totalCost);
-        rentals.add(rental);
+                totalCost = eq.getRentPerDay() * days;
+                rentalId = "R" + String.format("%03d", rentalCounter.getAndIncrement());
 
-        eq.setAvailability("Rented");
+                Rental rental = new Rental(rentalId, equipmentId, currentUser.getUserId(), LocalDate.now(), days, totalCost);
+                partition.rentals.add(rental);
+                rentalIndex.put(rentalId, partition);
 
-        FileHandler.saveRentals(rentals);
-        FileHandler.saveEquipment(equipment);
+                eq.setAvailability("Rented");
+            }
 
-        return "Equipment rented successfully. Rental ID: " + rentalId + ", Total Cost: $" + String.format("%.2f", totalCost);
+            publish(EventType.EQUIPMENT_RENTED, currentUser.getUserId(), equipmentId, rentalId,
+                    "Rented", totalCost, 0.0);
+            event.rentalId = rentalId;
+            event.totalCost = totalCost;
+            event.succeeded = true;
+
+            return "Equipment rented successfully. Rental ID: " + rentalId + ", Total Cost: $" + String.format("%.2f", totalCost);
+        } finally {
+            if (event.shouldCommit()) {
+                event.equipmentId = equipmentId;
+                event.customerId = authService.getCurrentUser().getUserId();
+                event.days = days;
+                event.commit();
+            }
+        }
     }
 
     public String returnEquipment(String rentalId) {
-        if (!requireAuthentication()) return "Please log in first.";
+        return returnEquipment(rentalId, null);
+    }
 
-        Rental rental = findRentalById(rentalId);
-        if (rental == null) {
-            return "Rental not found.";
+    public String returnEquipment(String rentalId, String idempotencyKey) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return "Please log in first.";
+            if (idempotencyKey == null) return doReturnEquipment(rentalId);
+
+            return withIdempotencyKey(idempotencyKey, "return:" + rentalId, () -> doReturnEquipment(rentalId));
+        } finally {
+            Metrics.record("rental.returnEquipment", started);
         }
+    }
 
-        User currentUser = authService.getCurrentUser();
+    private String doReturnEquipment(String rentalId) {
+        FlightEvents.Return event = new FlightEvents.Return();
+        event.begin();
+        try {
+            RentalPartition partition = rentalId != null ? rentalIndex.get(rentalId) : null;
+            if (partition == null) {
+                return "Rental not found.";
+            }
 
-        if (currentUser.isCustomer() && !rental.getCustomerId().equals(currentUser.getUserId())) {
-            return "You can only return your own rentals.";
-        }
+            User currentUser = authService.getCurrentUser();
+            Rental rental;
+            ReturnRecord record;
+            double lateFee = 0.0;
 
-        Equipment eq = findEquipmentById(rental.getEquipmentId());
-        if (eq == null) {
-            return "Equipment not found.";
-        }
+            synchronized (partition) {
+                rental = partition.findRental(rentalId);
+                if (rental == null) {
+                    return "Rental not found.";
+                }
 
-        LocalDate returnDate = LocalDate.now();
-        double lateFee = 0.0;
+                if (currentUser.isCustomer() && !rental.getCustomerId().equals(currentUser.getUserId())) {
+                    return "You can only return your own rentals.";
+                }
 
-        if (rental.isOverdue()) {
-            long daysLate = rental.getDaysOverdue();
-            lateFee = daysLate * Constants.LATE_FEE_PER_DAY;
-        }
+                Equipment eq = partition.findEquipment(rental.getEquipmentId());
+                if (eq == null) {
+                    return "Equipment not found.";
+                }
+
+                LocalDate returnDate = LocalDate.now();
+
+                if (rental.isOverdue()) {
+                    long daysLate = rental.getDaysOverdue();
+                    lateFee = daysLate * Constants.LATE_FEE_PER_DAY;
+                }
 
-        ReturnRecord record = new ReturnRecord(
-                rental.getRentalId(),
-                rental.getEquipmentId(),
-                rental.getCustomerId(),
-                rental.getStartDate(),
-                returnDate,
-                rental.getTotalCost()
-        );
-        record.setLateFee(lateFee);
+                record = new ReturnRecord(
+                        rental.getRentalId(),
+                        rental.getEquipmentId(),
+                        rental.getCustomerId(),
+                        rental.getStartDate(),
+                        returnDate,
+                        rental.getTotalCost()
+                );
+                record.setLateFee(lateFee);
+
+                partition.returns.add(record);
+                partition.rentals.remove(rental);
+                rentalIndex.remove(rentalId);
+                eq.setAvailability("Available");
+            }
 
-        returns.add(record);
-        rentals.remove(rental);
-        eq.setAvailability("Available");
+            publish(EventType.EQUIPMENT_RETURNED, rental.getCustomerId(), rental.getEquipmentId(), rentalId,
+                    "Good", rental.getTotalCost(), lateFee, record);
+            event.equipmentId = rental.getEquipmentId();
+            event.customerId = rental.getCustomerId();
+            event.lateFee = lateFee;
+            event.succeeded = true;
 
-        FileHandler.saveReturns(returns);
-        FileHandler.saveRentals(rentals);
-        FileHandler.saveEquipment(equipment);
+            String result =  "Equipment returned successfully.";
+            if (lateFee > 0) {
+                result += " Late fee: $" + String.format("%.2f", lateFee);
+            }
+            result += " Total amount: $" + String.format("%.2f", rental.getTotalCost() + lateFee);
 
-        String result =  "Equipment returned successfully.";
-        if (lateFee > 0) {
-            result += " Late fee: $" + String.format("%.2f", lateFee);
+            return result;
+        } finally {
+            if (event.shouldCommit()) {
+                event.rentalId = rentalId;
+                event.commit();
+            }
         }
-        result += " Total amount: $" + String.format("%.2f", rental.getTotalCost() + lateFee);
+    }
 
-        return result;
+    // keys are scoped to the user, so two customers can't collide on the same key
+    private String withIdempotencyKey(String idempotencyKey, String request, Supplier<String> operation) {
+        if (!ValidationUtils.isValidIdempotencyKey(idempotencyKey)) {
+            return "Invalid idempotency key.";
+        }
+
+        String key = authService.getCurrentUser().getUserId() + ":" + idempotencyKey;
+        return idempotency.execute(key, request, operation, () -> {
+            long ticket = idempotency.saveSnapshot(persistence, durability);
+            if (!persistence.await(ticket, durability)) {
+                System.err.println("Warning: idempotency key could not be confirmed on disk.");
+                Metrics.count("persistence.unconfirmed");
+            }
+        });
     }
 
     public String forceReturnEquipment(String rentalId, String condition, double additionalFees) {
-        if (!requireAdminAccess()) return "Access denied";
+        FlightEvents.Return event = new FlightEvents.Return();
+        event.begin();
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied";
+
+            RentalPartition partition = rentalId != null ? rentalIndex.get(rentalId) : null;
+            if (partition == null) {
+                return "Rental not found.";
+            }
 
-        Rental rental = findRentalById(rentalId);
-        if (rental == null) {
-            return "Rental not found.";
-        }
+            Rental rental;
+            ReturnRecord record;
+            double lateFee = 0.0;
 
-        Equipment eq = findEquipmentById(rental.getEquipmentId());
-        if (eq == null) {
-            return "Equipment not found.";
-        }
+            synchronized (partition) {
+                rental = partition.findRental(rentalId);
+                if (rental == null) {
+                    return "Rental not found.";
+                }
 
-        LocalDate returnDate = LocalDate.now();
+                Equipment eq = partition.findEquipment(rental.getEquipmentId());
+                if (eq == null) {
+                    return "Equipment not found.";
+                }
 
-        double lateFee = 0.0;
+                LocalDate returnDate = LocalDate.now();
 
-        if (rental .isOverdue()) {
-            long daysLate = rental.getDaysOverdue();
-            lateFee = daysLate * Constants.LATE_FEE_PER_DAY;
-        }
+                if (rental .isOverdue()) {
+                    long daysLate = rental.getDaysOverdue();
+                    lateFee = daysLate * Constants.LATE_FEE_PER_DAY;
+                }
+
+                record = new ReturnRecord(
+                        rental.getRentalId(),
+                        rental.getEquipmentId(),
+                        rental.getCustomerId(),
+                        rental.getStartDate(),
+                        returnDate,
+                        rental.getTotalCost()
+                );
+                record.setLateFee(lateFee);
+                record.setCondition(condition);
+
+                partition.returns.add(record);
+                partition.rentals.remove(rental);
+                rentalIndex.remove(rentalId);
+
+                if ("Damage".equalsIgnoreCase(condition) || "Lost".equalsIgnoreCase(condition)) {
+                    eq.setAvailability("Maintenance");
+                } else {
+                    eq.setAvailability("Available");
+                }
+            }
 
-        ReturnRecord record = new ReturnRecord(
-                rental.getRentalId(),
-                rental.getEquipmentId(),
-                rental.getCustomerId(),
-                rental.getStartDate(),
-                returnDate,
-                rental.getTotalCost()
-        );
-        record.setLateFee(lateFee);
-        record.setCondition(condition);
+            publish(EventType.FORCE_RETURNED, rental.getCustomerId(), rental.getEquipmentId(), rentalId,
+                    condition, rental.getTotalCost(), lateFee, record);
+            event.equipmentId = rental.getEquipmentId();
+            event.customerId = rental.getCustomerId();
+            event.lateFee = lateFee;
+            event.succeeded = true;
 
-        returns.add(record);
-        rentals.remove(rental);
+            String result = "Equipment force-returned. Condition: " + condition;
+            if (lateFee > 0 || additionalFees > 0) {
+                result += "\n Total fees $" + String.format("%.2f", lateFee + additionalFees);
+            }
 
-        if ("Damage".equalsIgnoreCase(condition) || "Lost".equalsIgnoreCase(condition)) {
-            eq.setAvailability("Maintenance");
-        } else {
-            eq.setAvailability("Available");
+            return result;
+        } finally {
+            Metrics.record("rental.forceReturnEquipment", started);
+            if (event.shouldCommit()) {
+                event.rentalId = rentalId;
+                event.forced = true;
+                event.commit();
+            }
         }
+    }
 
-        FileHandler.saveEquipment(equipment);
-        FileHandler.saveRentals(rentals);
-        FileHandler.saveReturns(returns);
+    // row-level access for log shipping: CSV of the current row, or null if it no longer exists
+    public String exportRow(String table, String id) {
+        switch (table) {
+            case "equipment" -> {
+                Equipment eq = findEquipmentById(id);
+                return eq != null ? eq.toCsvString() : null;
+            }
+            case "rentals" -> {
+                Rental rental = findRentalById(id);
+                return rental != null ? rental.toCsvString() : null;
+            }
+            case "returns" -> {
+                for (RentalPartition partition : partitions) {
+                    ReturnRecord record = read(partition, p -> p.findReturn(id));
+                    if (record != null) {
+                        return record.toCsvString();
+                    }
+                }
+                return null;
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    // applied on a read replica only; mirrors a row change shipped from the primary
+    public void applyReplicatedRow(String operation, String table, String id, String csv) {
+        long started = System.nanoTime();
+        try {
+            try {
+                applyRow("DEL".equals(operation), table, id, csv);
+            } finally {
+                dataVersion.incrementAndGet();
+            }
+        } finally {
+            Metrics.record("rental.applyReplicatedRow", started);
+        }
+    }
+
+    private void applyRow(boolean delete, String table, String id, String csv) {
+        switch (table) {
+            case "equipment" -> {
+                RentalPartition owner = equipmentIndex.get(id);
+                if (delete) {
+                    if (owner != null) {
+                        synchronized (owner) {
+                            owner.equipment.removeIf(eq -> eq.getId().equals(id));
+                        }
+                    }
+                    return;
+                }
+                Equipment replicated = FileHandler.parseEquipment(csv);
+                RentalPartition target = owner != null ? owner : partitions[partitionIndexFor(replicated)];
+                synchronized (target) {
+                    target.equipment.removeIf(eq -> eq.getId().equals(id));
+                    target.equipment.add(replicated);
+                }
+                equipmentIndex.put(id, target);
+            }
+            case "rentals" -> {
+                RentalPartition owner = rentalIndex.remove(id);
+                if (owner != null) {
+                    synchronized (owner) {
+                        owner.rentals.removeIf(r -> r.getRentalId().equals(id));
+                    }
+                }
+                if (delete) return;
 
-        String result = "Equipment force-returned. Condition: " + condition;
-        if (lateFee > 0 || additionalFees > 0) {
-            result += "\n Total fees $" + String.format("%.2f", lateFee + additionalFees);
+                Rental replicated = FileHandler.parseRental(csv);
+                RentalPartition target = partitionForEquipment(replicated.getEquipmentId());
+                synchronized (target) {
+                    target.rentals.add(replicated);
+                }
+                rentalIndex.put(id, target);
+            }
+            case "returns" -> {
+                if (delete) return;
+                ReturnRecord replicated = FileHandler.parseReturn(csv);
+                RentalPartition target = partitionForEquipment(replicated.getEquipmentId());
+                synchronized (target) {
+                    if (target.findReturn(id) != null) return;
+                    target.returns.add(replicated);
+                }
+                // the replica's ring only feeds its aggregates
+                events.publish(EventType.EQUIPMENT_RETURNED, replicated.getCustomerId(), replicated.getEquipmentId(),
+                        id, replicated.getCondition(), replicated.getTotalCost(), replicated.getLateFee(), false,
+                        replicated);
+            }
+            default -> System.err.println("Unknown replicated table: " + table);
         }
+    }
 
-        return result;
+    private RentalPartition partitionForEquipment(String equipmentId) {
+        RentalPartition owner = equipmentIndex.get(equipmentId);
+        return owner != null ? owner : partitions[Math.floorMod(equipmentId.hashCode(), partitions.length)];
     }
 
-    public User findCustomerById(String customerId) {
-        return authService.getAllUsers().stream()
-                .filter(user -> user.isCustomer() &&
-                        user.getUserId().equals(customerId))
-                .findFirst()
-                .orElse(null);
+    // merged, unsharded copy of the current data, used to seed the reporting replica
+    public void exportSnapshot(Path dir) {
+        long started = System.nanoTime();
+        try {
+            FileHandler.saveEquipment(dir, getAllEquipment());
+            FileHandler.saveRentals(dir, gather(p -> new ArrayList<>(p.rentals)));
+            FileHandler.saveReturns(dir, gather(p -> p.returns.toList()));
+        } finally {
+            Metrics.record("rental.exportSnapshot", started);
+        }
+    }
 
+    public User findCustomerById(String customerId) {
+        long started = System.nanoTime();
+        try {
+            User user = authService.findUserById(customerId);
+            return user != null && user.isCustomer() ? user : null;
+        } finally {
+            Metrics.record("rental.findCustomerById", started);
+        }
     }
 
     public Rental findRentalById(String rentalId) {
-        return rentals.stream()
-                .filter(r -> r.getRentalId().equals(rentalId))
-                .findFirst()
-                .orElse(null);
+        long started = System.nanoTime();
+        try {
+            RentalPartition partition = rentalId != null ? rentalIndex.get(rentalId) : null;
+            if (partition == null) return null;
+            return read(partition, p -> p.findRental(rentalId));
+        } finally {
+            Metrics.record("rental.findRentalById", started);
+        }
     }
 
     public List<Rental> getActiveRentals() {
-        if (!requireAuthentication()) return new ArrayList<>();
-
-        User currentUser = authService.getCurrentUser();
-
-        if (currentUser.isAdmin()) {
-            return new ArrayList<>(rentals);
-        } else {
-            return rentals.stream()
-                    .filter(r -> r.getCustomerId().equals(currentUser.getUserId()))
-                    .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return new ArrayList<>();
+
+            User currentUser = authService.getCurrentUser();
+
+            if (currentUser.isAdmin()) {
+                return gather(p -> new ArrayList<>(p.rentals));
+            } else {
+                return gather(p -> p.rentals.stream()
+                        .filter(r -> r.getCustomerId().equals(currentUser.getUserId()))
+                        .collect(Collectors.toList()));
+            }
+        } finally {
+            Metrics.record("rental.getActiveRentals", started);
         }
     }
 
     public List<Rental> getAllActiveRentals() {
-        if (!requireAdminAccess()) return new ArrayList<>();
-        return new ArrayList<>(rentals);
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new ArrayList<>();
+            return gather(p -> new ArrayList<>(p.rentals));
+        } finally {
+            Metrics.record("rental.getAllActiveRentals", started);
+        }
     }
 
     public List<Rental> getDailyRentals(LocalDate date) {
-        if (!requireAdminAccess()) return new ArrayList<>();
-
-        return rentals.stream()
-                .filter(r -> r.getStartDate().equals(date))
-                .collect(Collectors.toList());
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new ArrayList<>();
+
+            return gather(p -> p.rentals.stream()
+                    .filter(r -> r.getStartDate().equals(date))
+                    .collect(Collectors.toList()));
+        } finally {
+            Metrics.record("rental.getDailyRentals", started);
+        }
     }
 
     public List<Rental> getCustomerRentals(String customerId) {
-        if (!requireAuthentication()) return new ArrayList<>();
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return new ArrayList<>();
 
-        User currentUser = authService.getCurrentUser();
+            User currentUser = authService.getCurrentUser();
 
-        if (currentUser.isCustomer()) {
-            customerId = currentUser.getUserId();
-        }
+            if (currentUser.isCustomer()) {
+                customerId = currentUser.getUserId();
+            }
 
-        String finalCustomerId = customerId;
-        return rentals.stream()
-                .filter(r -> r.getCustomerId().equals(finalCustomerId))
-                .collect(Collectors.toList());
+            String finalCustomerId = customerId;
+            return gather(p -> p.rentals.stream()
+                    .filter(r -> r.getCustomerId().equals(finalCustomerId))
+                    .collect(Collectors.toList()));
+        } finally {
+            Metrics.record("rental.getCustomerRentals", started);
+        }
     }
 
     public List<ReturnRecord> getCustomerHistory(String customerId) {
-        if (!requireAuthentication()) return new ArrayList<>();
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return new ArrayList<>();
 
-        User currentUser = authService.getCurrentUser();
+            User currentUser = authService.getCurrentUser();
 
-        if (currentUser.isCustomer()) {
-            customerId = currentUser.getUserId();
-        }
+            if (currentUser.isCustomer()) {
+                customerId = currentUser.getUserId();
+            }
 
-        String finalCustomerId = customerId;
-        return returns.stream()
-                .filter(r -> r.getCustomerId().equals(finalCustomerId))
-                .collect(Collectors.toList());
+            String finalCustomerId = customerId;
+            return gather(p -> p.returns.selectCustomer(finalCustomerId));
+        } finally {
+            Metrics.record("rental.getCustomerHistory", started);
+        }
     }
 
     public List<Rental> getOverdueRentals() {
-        if (!requireAdminAccess()) return new ArrayList<>();
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new ArrayList<>();
+
+            return gather(p -> p.rentals.stream()
+                    .filter(Rental::isOverdue)
+                    .collect(Collectors.toList()));
+        } finally {
+            Metrics.record("rental.getOverdueRentals", started);
+        }
+    }
 
-        return rentals.stream()
-                .filter(Rental::isOverdue)
-                .collect(Collectors.toList());
+    // kept up to date by every return; reports read it instead of scanning the history
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    ApproximateAnalytics getApproximateAnalytics() {
+        awaitAggregates();
+        return approximate;
+    }
+
+    RevenueAggregates getRevenueAggregates() {
+        awaitAggregates();
+        return revenue;
     }
 
     public double getTotalRevenue() {
-        return returns.stream()
-                .mapToDouble(ReturnRecord::getFinalAmount)
-                .sum();
+        long started = System.nanoTime();
+        try {
+            awaitAggregates();
+            return revenue.getTotal().getTotalRevenue();
+        } finally {
+            Metrics.record("rental.getTotalRevenue", started);
+        }
+    }
+
+    public double getTotalLateFees() {
+        long started = System.nanoTime();
+        try {
+            awaitAggregates();
+            return revenue.getTotal().getLateFees();
+        } finally {
+            Metrics.record("rental.getTotalLateFees", started);
+        }
     }
 
     public double getDailyRevenue(LocalDate date) {
-        if (!requireAdminAccess()) return 0.0;
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return 0.0;
+
+            awaitAggregates();
+            return revenue.getDay(date).getTotalRevenue();
+        } finally {
+            Metrics.record("rental.getDailyRevenue", started);
+        }
+    }
 
-        return returns.stream()
-                .filter(r -> r.getEndDate().equals(date))
-                .mapToDouble(ReturnRecord::getFinalAmount)
-                .sum();
+    // days out per item between the dates, with current rentals counted through today
+    public UtilizationIndex.FleetUtilization getUtilization(LocalDate startDate, LocalDate endDate) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new UtilizationIndex.FleetUtilization(Map.of(), 0, 0);
+
+            List<String> equipmentIds = getAllEquipment().stream().map(Equipment::getId).toList();
+            List<Rental> active = gather(p -> new ArrayList<>(p.rentals));
+            awaitAggregates();
+            return utilization.getUtilization(equipmentIds, active, startDate, endDate, LocalDate.now());
+        } finally {
+            Metrics.record("rental.getUtilization", started);
+        }
     }
 
-    public Map<String, Integer> getEquipmentUsageStats() {
-        if (!requireAdminAccess()) return new HashMap<>();
+    public double getRevenueBetween(LocalDate startDate, LocalDate endDate) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return 0.0;
 
-        Map<String, Integer> stats = new HashMap<>();
-        for (ReturnRecord record : returns) {
-            Equipment eq = findEquipmentById(record.getEquipmentId());
-            if (eq != null) {
-                stats.put(eq.getName(), stats.getOrDefault(eq.getName(), 0) + 1);
-            }
+            awaitAggregates();
+            return revenue.getRange(startDate, endDate).getTotalRevenue();
+        } finally {
+            Metrics.record("rental.getRevenueBetween", started);
         }
-        return stats;
     }
 
-    public Map<String, Object> getEquipmentStatistics(String equipmentId) {
-        if (!requireAdminAccess()) return new HashMap<>();
+    public Map<String, Integer> getEquipmentUsageStats() {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new HashMap<>();
+
+            Map<String, Integer> stats = new HashMap<>();
+            awaitAggregates();
+            revenue.getByEquipment().forEach((equipmentId, totals) -> {
+                Equipment eq = findEquipmentById(equipmentId);
+                if (eq != null) {
+                    stats.merge(eq.getName(), totals.count(), Integer::sum);
+                }
+            });
+            return stats;
+        } finally {
+            Metrics.record("rental.getEquipmentUsageStats", started);
+        }
+    }
 
-        Equipment eq = findEquipmentById(equipmentId);
-        if (eq == null) return new HashMap<>();
+    public Map<String, Object> getEquipmentStatistics(String equipmentId) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new HashMap<>();
 
-        Map<String, Object> stats = new HashMap<>();
+            RentalPartition partition = equipmentId != null ? equipmentIndex.get(equipmentId) : null;
+            if (partition == null) return new HashMap<>();
 
-        long totalRentals = returns.stream()
-                .filter(r -> r.getEquipmentId().equals(equipmentId))
-                .count();
+            awaitAggregates();
+            synchronized (partition) {
+                Equipment eq = partition.findEquipment(equipmentId);
+                if (eq == null) return new HashMap<>();
 
-        double totalRevenue = returns.stream()
-                .filter(r -> r.getEquipmentId().equals(equipmentId))
-                .mapToDouble(ReturnRecord::getFinalAmount)
-                .sum();
+                Map<String, Object> stats = new HashMap<>();
 
-        long totalDaysRented = returns.stream()
-                .filter(r -> r.getEquipmentId().equals(equipmentId))
-                .mapToLong(r -> r.getEndDate().toEpochDay() - r.getStartDate().toEpochDay())
-                .sum();
+                RevenueAggregates.Totals totals = revenue.getEquipment(equipmentId);
+                long totalRentals = totals.count();
+                double totalRevenue = totals.getTotalRevenue();
+                long totalDaysRented = totals.daysRented();
 
-        boolean currentlyRented = rentals.stream()
-                .anyMatch(r -> r.getEquipmentId().equals(equipmentId));
+                boolean currentlyRented = partition.rentals.stream()
+                        .anyMatch(r -> r.getEquipmentId().equals(equipmentId));
 
-        stats.put("equipmentName", eq.getName());
-        stats.put("totalRentals", totalRentals);
-        stats.put("totalRevenue", totalRevenue);
-        stats.put("totalDaysRented", totalDaysRented);
-        stats.put("currentlyRented", currentlyRented);
-        stats.put("averageRevenuePerRental", totalRentals > 0 ? totalRevenue / totalRentals : 0.0);
+                stats.put("equipmentName", eq.getName());
+                stats.put("totalRentals", totalRentals);
+                stats.put("totalRevenue", totalRevenue);
+                stats.put("totalDaysRented", totalDaysRented);
+                stats.put("currentlyRented", currentlyRented);
+                stats.put("averageRevenuePerRental", totalRentals > 0 ? totalRevenue / totalRentals : 0.0);
 
-        return stats;
+                return stats;
+            }
+        } finally {
+            Metrics.record("rental.getEquipmentStatistics", started);
+        }
     }
 
     public String getCurrentUserRentalSummary() {
-        if (!requireAuthentication()) return "Please log in first.";
-
-        User currentUser = authService.getCurrentUser();
-        List<Rental> userRentals = getCustomerRentals(currentUser.getUserId());
-        List<ReturnRecord> userHistory = getCustomerHistory(currentUser.getUserId());
-
-        StringBuilder summary = new StringBuilder();
-        summary.append("=== RENTAL SUMMARY FOR ").append(currentUser.getFullName().toUpperCase()).append(" ===\n");
-        summary.append("Active Rentals: ").append(userRentals.size()).append("\n");
-        summary.append("Rental History: ").append(userHistory.size()).append("\n");
-
-        double totalSpent = userHistory.stream()
-                .mapToDouble(ReturnRecord::getFinalAmount)
-                .sum();
-        summary.append("Total Amount Spent: $").append(String.format("%.2f", totalSpent)).append("\n");
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return "Please log in first.";
+
+            User currentUser = authService.getCurrentUser();
+            List<Rental> userRentals = getCustomerRentals(currentUser.getUserId());
+            List<ReturnRecord> userHistory = getCustomerHistory(currentUser.getUserId());
+
+            StringBuilder summary = new StringBuilder();
+            summary.append("=== RENTAL SUMMARY FOR ").append(currentUser.getFullName().toUpperCase()).append(" ===\n");
+            summary.append("Active Rentals: ").append(userRentals.size()).append("\n");
+            summary.append("Rental History: ").append(userHistory.size()).append("\n");
+
+            double totalSpent = userHistory.stream()
+                    .mapToDouble(ReturnRecord::getFinalAmount)
+                    .sum();
+            summary.append("Total Amount Spent: $").append(String.format("%.2f", totalSpent)).append("\n");
+
+            long overdueCount = userRentals.stream()
+                    .mapToLong(r -> r.isOverdue() ? 1 : 0)
+                    .sum();
+            if (overdueCount > 0) {
+                summary.append("OVERDUE RENTALS: ").append(overdueCount).append("\n");
+            }
 
-        long overdueCount = userRentals.stream()
-                .mapToLong(r -> r.isOverdue() ? 1 : 0)
-                .sum();
-        if (overdueCount > 0) {
-            summary.append("OVERDUE RENTALS: ").append(overdueCount).append("\n");
+            return summary.toString();
+        } finally {
+            Metrics.record("rental.getCurrentUserRentalSummary", started);
         }
-
-        return summary.toString();
     }
 
     // for debugging
     public void refreshData() {
-        if (!requireAdminAccess()) return;
-
-        loadData();
-        System.out.println("Data refreshed from files.");
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return;
+
+            events.awaitHandled(events.getCursor());
+            // reloading now would drop the changes that did not reach the files
+            if (!persistence.flush()) {
+                System.out.println("Pending changes could not be written; refresh skipped.");
+                return;
+            }
+            loadData();
+            System.out.println("Data refreshed from files.");
+        } finally {
+            Metrics.record("rental.refreshData", started);
+        }
     }
 
     public Map<String, Object> getSystemStatus() {
-        if (!requireAdminAccess()) return new HashMap<>();
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return new HashMap<>();
+
+            // the data-derived part only changes with the data; queue metrics are always live
+            Map<String, Object> status = new HashMap<>(statusCache.get("STATUS", this::computeSystemStatus));
+            status.put("idempotency", idempotency.getMetrics());
+            status.put("persistence", persistence.getMetrics());
+            status.put("eventBacklog", events.getBacklog());
+            status.put("statusCache", statusCache.getMetrics());
+            status.put("metrics", Metrics.getMetrics());
+            status.put("io", IoStats.getMetrics());
+
+            return status;
+        } finally {
+            Metrics.record("rental.getSystemStatus", started);
+        }
+    }
 
+    private Map<String, Object> computeSystemStatus() {
         Map<String, Object> status = new HashMap<>();
 
-        status.put("totalEquipment", equipment.size());
-        status.put("availableEquipment", equipment.stream().filter(Equipment::isAvailable).count());
-        status.put("activeRentals", rentals.size());
-        status.put("overdueRentals", rentals.stream().filter(Rental::isOverdue).count());
-        status.put("totalReturns", returns.size());
+        status.put("totalEquipment", (int) sum(p -> p.equipment.size()));
+        status.put("availableEquipment", (long) sum(p -> p.equipment.stream().filter(Equipment::isAvailable).count()));
+        status.put("activeRentals", (int) sum(p -> p.rentals.size()));
+        status.put("overdueRentals", (long) sum(p -> p.rentals.stream().filter(Rental::isOverdue).count()));
+        status.put("totalReturns", (int) sum(p -> p.returns.size()));
         status.put("totalUsers", authService.getAllUsers());
-
-        double totalRevenue = returns.stream()
-                .mapToDouble(ReturnRecord::getFinalAmount)
-                .sum();
-        status.put("totalRevenue", totalRevenue);
+        status.put("totalRevenue", getTotalRevenue());
+        status.put("shards", partitions.length);
+        status.put("shardKey", shardKey);
 
         return status;
     }
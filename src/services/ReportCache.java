@@ -0,0 +1,83 @@
+package services;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Keeps recently computed results keyed by report type and parameters. Each entry
+// is stamped with the data version it was computed from and the day (overdue
+// figures move with the calendar), so an entry is served only while neither has
+// changed. Least recently used entries are evicted once the cache is full.
+public class ReportCache<V> {
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("rental.reportCacheSize", 64);
+
+    private record Entry<V>(long version, LocalDate day, V value) {}
+
+    private final int capacity;
+    private final LongSupplier dataVersion;
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ReportCache(int capacity, LongSupplier dataVersion) {
+        this.capacity = capacity;
+        this.dataVersion = dataVersion;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > ReportCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(String key, Supplier<V> compute) {
+        // read the version before computing: a mutation that lands mid-way leaves the
+        // entry stamped with the older version, so it is never served as current
+        long version = dataVersion.getAsLong();
+        LocalDate today = LocalDate.now();
+
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.version() == version && entry.day().equals(today)) {
+                hits++;
+                return entry.value();
+            }
+            misses++;
+        }
+
+        V value = compute.get();
+        synchronized (this) {
+            entries.put(key, new Entry<>(version, today, value));
+        }
+        return value;
+    }
+
+    public static String key(String type, Object... params) {
+        StringBuilder key = new StringBuilder(type);
+        for (Object param : params) {
+            key.append('|').append(param);
+        }
+        return key.toString();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("entries", entries.size());
+        metrics.put("capacity", capacity);
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("evictions", evictions);
+        return metrics;
+    }
+}
@@ -1,20 +1,59 @@
 package services;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
+import metrics.FlightEvents;
+import metrics.Metrics;
 import models.*;
+import reports.CountingReportSink;
+import reports.ReportSink;
+import reports.TextReportSink;
+import utils.GroupedAggregator;
+import utils.HeavyHitters;
+import utils.TopK;
 
 
 public class ReportGenerator {
+    public static final int DEFAULT_TOP_CUSTOMERS = Integer.getInteger("rental.topCustomers", 10);
+
+    // best first
+    public enum CustomerRanking {
+        SPEND("SPENDING", Comparator.comparingLong((RevenueAggregates.Totals t) -> t.baseCents() + t.lateFeeCents()).reversed()),
+        COUNT("RENTAL COUNT", Comparator.comparingInt(RevenueAggregates.Totals::count).reversed()),
+        LATE_FEE_RATIO("LATE FEE RATIO", Comparator.comparingDouble(RevenueAggregates.Totals::getLateFeeRatio).reversed()),
+        RECENCY("MOST RECENT RETURN", Comparator.comparingLong(RevenueAggregates.Totals::lastReturnDay).reversed());
+
+        private final String label;
+        private final Comparator<RevenueAggregates.Totals> order;
+
+        CustomerRanking(String label, Comparator<RevenueAggregates.Totals> order) {
+            this.label = label;
+            this.order = order;
+        }
+    }
+
     private final RentalService rentalService;
     private final AuthenticationService authService;
+    private final RevenueAggregates revenue;
+    private final ApproximateAnalytics approximate;
+    private final ReportCache<String> cache;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM dd, yyyy");
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     public ReportGenerator(RentalService rentalService, AuthenticationService authService) {
         this.rentalService = rentalService;
         this.authService = authService;
+        this.revenue = rentalService.getRevenueAggregates();
+        this.approximate = rentalService.getApproximateAnalytics();
+        this.cache = new ReportCache<>(ReportCache.DEFAULT_CAPACITY,
+                () -> rentalService.getDataVersion() + authService.getDataVersion());
+    }
+
+    public Map<String, Object> getCacheMetrics() {
+        return cache.getMetrics();
     }
 
     private boolean requireAuthentication() {
@@ -33,234 +72,579 @@ public class ReportGenerator {
         return true;
     }
 
+    // Every report can be streamed into a sink line by line (writeX) or rendered to a
+    // cached string (generateX) for callers that need the whole text.
+    private String render(String name, Consumer<ReportSink> report) {
+        StringBuilder text = new StringBuilder();
+        emit(name, false, new TextReportSink(text), report);
+        return text.toString();
+    }
+
+    private void emit(String name, boolean streamed, ReportSink sink, Consumer<ReportSink> report) {
+        FlightEvents.Report event = new FlightEvents.Report();
+        event.begin();
+        // rows are only counted while a recording wants the event
+        CountingReportSink counter = event.isEnabled() ? new CountingReportSink(sink) : null;
+        report.accept(counter != null ? counter : sink);
+        if (event.shouldCommit()) {
+            event.report = name;
+            event.streamed = streamed;
+            event.rows = counter != null ? counter.getRows() : 0;
+            event.commit();
+        }
+    }
+
+    private boolean requireAdminAccess(ReportSink sink) {
+        if (requireAdminAccess()) return true;
+        sink.note("Access denied.");
+        sink.end();
+        return false;
+    }
+
     public String generateDailySummary(LocalDate date) {
-        if (!requireAdminAccess()) return "Access denied.";
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("DAILY", date),
+                    () -> render("DAILY", sink -> emitDailySummary(date, sink)));
+        } finally {
+            Metrics.record("report.generateDailySummary", started);
+        }
+    }
+
+    public void writeDailySummary(LocalDate date, ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("DAILY", true, sink, out -> emitDailySummary(date, out));
+            sink.end();
+        } finally {
+            Metrics.record("report.writeDailySummary", started);
+        }
+    }
 
-        StringBuilder report = new StringBuilder();
-        report.append("\n\t=== DAILY SUMMARY FOR ").append(date.format(DATE_FORMATTER)).append(" ===\n\n");
+    private void emitDailySummary(LocalDate date, ReportSink sink) {
+        sink.title("DAILY SUMMARY FOR " + date.format(DATE_FORMATTER));
 
         List<Rental> dailyRentals = rentalService.getDailyRentals(date);
         double dailyRevenue = rentalService.getDailyRevenue(date);
 
-        report.append("Total Rentals: ").append(dailyRentals.size()).append("\n");
-        report.append("Daily Revenue: $").append(String.format("%.2f", dailyRevenue)).append("\n\n");
+        sink.metric("Total Rentals", dailyRentals.size());
+        sink.money("Daily Revenue", dailyRevenue);
+        sink.blank();
 
         if (!dailyRentals.isEmpty()) {
-            report.append("RENTALS:\n");
+            sink.section("RENTALS");
+            sink.columns(RENTAL_COLUMNS);
             for (Rental rental : dailyRentals) {
-                report.append("- ").append(rental.toString()).append("\n");
+                sink.row(rental.toString(), rentalValues(rental));
             }
         }
 
         List<Rental> overdueRentals = rentalService.getOverdueRentals();
         if (!overdueRentals.isEmpty()) {
-            report.append("\nOVERDUE RENTALS: ").append(overdueRentals.size()).append("\n");
+            sink.blank();
+            sink.section("OVERDUE RENTALS", overdueRentals.size());
+            sink.columns(OVERDUE_COLUMNS);
             for (Rental rental : overdueRentals) {
-                report.append("- ").append(rental.toString())
-                        .append(" (").append(rental.getDaysOverdue()).append(" days late)\n");
+                sink.row(rental + " (" + rental.getDaysOverdue() + " days late)",
+                        rental.getRentalId(), rental.getEquipmentId(), rental.getCustomerId(),
+                        rental.getStartDate(), rental.getDaysRented(), rental.getTotalCost(), rental.getDaysOverdue());
             }
         }
+    }
+
+    private static final String[] RENTAL_COLUMNS =
+            {"rentalId", "equipmentId", "customerId", "startDate", "days", "cost"};
+    private static final String[] OVERDUE_COLUMNS =
+            {"rentalId", "equipmentId", "customerId", "startDate", "days", "cost", "daysOverdue"};
 
-        return report.toString();
+    private static Object[] rentalValues(Rental rental) {
+        return new Object[]{rental.getRentalId(), rental.getEquipmentId(), rental.getCustomerId(),
+                rental.getStartDate(), rental.getDaysRented(), rental.getTotalCost()};
     }
 
     public String generateUserRentalSummary() {
-        if (!requireAuthentication()) return "Access denied.";
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) return "Access denied.";
+            return render("USER_SUMMARY", this::emitUserRentalSummary);
+        } finally {
+            Metrics.record("report.generateUserRentalSummary", started);
+        }
+    }
 
+    public void writeUserRentalSummary(ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAuthentication()) {
+                sink.note("Access denied.");
+                sink.end();
+                return;
+            }
+            emit("USER_SUMMARY", true, sink, this::emitUserRentalSummary);
+            sink.end();
+        } finally {
+            Metrics.record("report.writeUserRentalSummary", started);
+        }
+    }
+
+    private void emitUserRentalSummary(ReportSink sink) {
         User currentUser = authService.getCurrentUser();
-        StringBuilder report = new StringBuilder();
 
-        report.append("\n\t=== RENTAL SUMMARY FOR ").append(currentUser.getFullName().toUpperCase()).append(" ===\n\n");
+        sink.title("RENTAL SUMMARY FOR " + currentUser.getFullName().toUpperCase());
 
         List<Rental> activeRentals = rentalService.getCustomerRentals(currentUser.getUserId());
         List<ReturnRecord> history = rentalService.getCustomerHistory(currentUser.getUserId());
 
-        report.append("Active Rentals: ").append(activeRentals.size()).append("\n");
-        report.append("Rental History: ").append(history.size()).append("\n");
+        sink.metric("Active Rentals", activeRentals.size());
+        sink.metric("Rental History", history.size());
 
-        double totalSpent = history.stream().mapToDouble(ReturnRecord::getFinalAmount).sum();
-        report.append("Total Amount Spent: $").append(String.format("%.2f", totalSpent)).append("\n\n");
+        double totalSpent = revenue.getCustomer(currentUser.getUserId()).getTotalRevenue();
+        sink.money("Total Amount Spent", totalSpent);
+        sink.blank();
 
         // Active rentals details
         if (!activeRentals.isEmpty()) {
-            report.append("ACTIVE RENTALS:\n");
+            sink.section("ACTIVE RENTALS");
+            sink.columns(OVERDUE_COLUMNS);
             for (Rental rental : activeRentals) {
-                report.append("- ").append(rental.toString());
+                String text = rental.toString();
                 if (rental.isOverdue()) {
-                    report.append(" *** OVERDUE by ").append(rental.getDaysOverdue()).append(" days ***");
+                    text += " *** OVERDUE by " + rental.getDaysOverdue() + " days ***";
                 }
-                report.append("\n");
+                sink.row(text, rental.getRentalId(), rental.getEquipmentId(), rental.getCustomerId(),
+                        rental.getStartDate(), rental.getDaysRented(), rental.getTotalCost(),
+                        rental.isOverdue() ? rental.getDaysOverdue() : 0);
             }
-            report.append("\n");
+            sink.blank();
         }
 
         // Recent history (last 5)
         if (!history.isEmpty()) {
-            report.append("RECENT RENTAL HISTORY:\n");
+            sink.section("RECENT RENTAL HISTORY");
+            sink.columns("rentalId", "equipmentId", "startDate", "endDate", "cost", "lateFee", "condition");
             history.stream()
                     .sorted(Comparator.comparing(ReturnRecord::getEndDate).reversed())
                     .limit(5)
-                    .forEach(record -> report.append("- ").append(record).append("\n"));
+                    .forEach(record -> sink.row(record.toString(), record.getRentalId(), record.getEquipmentId(),
+                            record.getStartDate(), record.getEndDate(), record.getTotalCost(),
+                            record.getLateFee(), record.getCondition()));
         }
-
-        return report.toString();
     }
 
     public String generateMonthlyReport(int year, int month) {
-        if (!requireAdminAccess()) return "Access denied.";
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("MONTHLY", year, month),
+                    () -> render("MONTHLY", sink -> emitMonthlyReport(year, month, sink)));
+        } finally {
+            Metrics.record("report.generateMonthlyReport", started);
+        }
+    }
 
-        StringBuilder report = new StringBuilder();
-        LocalDate startDate = LocalDate.of(year, month, 1);
-        LocalDate endDate = startDate.plusMonths(1).minusDays(1);
+    public void writeMonthlyReport(int year, int month, ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("MONTHLY", true, sink, out -> emitMonthlyReport(year, month, out));
+            sink.end();
+        } finally {
+            Metrics.record("report.writeMonthlyReport", started);
+        }
+    }
 
-        report.append("\n\t=== MONTHLY REPORT FOR ")
-                .append(startDate.format(DateTimeFormatter.ofPattern("MMMM yyyy")))
-                .append(" ===\n\n");
+    private void emitMonthlyReport(int year, int month, ReportSink sink) {
+        LocalDate startDate = LocalDate.of(year, month, 1);
 
-        // Get all returns in the month
-        List<ReturnRecord> monthlyReturns = rentalService.getAllReturns().stream()
-                .filter(r -> !r.getEndDate().isBefore(startDate) && !r.getEndDate().isAfter(endDate))
-                .toList();
+        sink.title("MONTHLY REPORT FOR " + startDate.format(DateTimeFormatter.ofPattern("MMMM yyyy")));
 
         // Revenue calculations
-        double totalRevenue = monthlyReturns.stream().mapToDouble(ReturnRecord::getTotalCost).sum();
-        double totalLateFees = monthlyReturns.stream().mapToDouble(ReturnRecord::getLateFee).sum();
-        double finalRevenue = totalRevenue + totalLateFees;
+        YearMonth yearMonth = YearMonth.of(year, month);
+        RevenueAggregates.Totals monthly = revenue.getMonth(yearMonth);
 
-        report.append("Total Rentals Completed: ").append(monthlyReturns.size()).append("\n");
-        report.append("Base Revenue: $").append(String.format("%.2f", totalRevenue)).append("\n");
-        report.append("Late Fees: $").append(String.format("%.2f", totalLateFees)).append("\n");
-        report.append("Total Revenue: $").append(String.format("%.2f", finalRevenue)).append("\n\n");
+        sink.metric("Total Rentals Completed", monthly.count());
+        sink.money("Base Revenue", monthly.getBaseRevenue());
+        sink.money("Late Fees", monthly.getLateFees());
+        sink.money("Total Revenue", monthly.getTotalRevenue());
+        sink.blank();
 
         // Equipment usage statistics
         Map<String, Integer> equipmentUsage = new HashMap<>();
         Map<String, Double> equipmentRevenue = new HashMap<>();
 
-        for (ReturnRecord record : monthlyReturns) {
-            Equipment eq = rentalService.findEquipmentById(record.getEquipmentId());
+        revenue.getByEquipment(yearMonth).forEach((equipmentId, totals) -> {
+            Equipment eq = rentalService.findEquipmentById(equipmentId);
             if (eq != null) {
                 String name = eq.getName();
-                equipmentUsage.put(name, equipmentUsage.getOrDefault(name, 0) + 1);
-                equipmentRevenue.put(name, equipmentRevenue.getOrDefault(name, 0.0) + record.getFinalAmount());
+                equipmentUsage.put(name, equipmentUsage.getOrDefault(name, 0) + totals.count());
+                equipmentRevenue.put(name, equipmentRevenue.getOrDefault(name, 0.0) + totals.getTotalRevenue());
             }
-        }
+        });
 
         if (!equipmentUsage.isEmpty()) {
-            report.append("EQUIPMENT USAGE STATISTICS:\n");
+            sink.section("EQUIPMENT USAGE STATISTICS");
+            sink.columns("equipment", "rentals", "revenue");
             equipmentUsage.entrySet().stream()
                     .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
                     .forEach(entry -> {
                         String name = entry.getKey();
                         int count = entry.getValue();
                         double revenue = equipmentRevenue.getOrDefault(name, 0.0);
-                        report.append(String.format("- %s: %d rentals, $%.2f revenue\n", name, count, revenue));
+                        sink.row(String.format("%s: %d rentals, $%.2f revenue", name, count, revenue),
+                                name, count, revenue);
                     });
         }
+    }
 
-        return report.toString();
+    public String generateRevenueRangeReport(LocalDate from, LocalDate to) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("RANGE", from, to),
+                    () -> render("RANGE", sink -> emitRevenueRangeReport(from, to, sink)));
+        } finally {
+            Metrics.record("report.generateRevenueRangeReport", started);
+        }
     }
 
-    public String generateCustomerAnalyticsReport() {
-        if (!requireAdminAccess()) return "Access denied.";
+    public void writeRevenueRangeReport(LocalDate from, LocalDate to, ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("RANGE", true, sink, out -> emitRevenueRangeReport(from, to, out));
+            sink.end();
+        } finally {
+            Metrics.record("report.writeRevenueRangeReport", started);
+        }
+    }
 
-        StringBuilder report = new StringBuilder();
-        report.append("\n\t=== CUSTOMER ANALYTICS REPORT ===\n\n");
+    // every figure is a range query on the revenue index, so no returns are scanned
+    private void emitRevenueRangeReport(LocalDate from, LocalDate to, ReportSink sink) {
+        sink.title("REVENUE FROM " + from.format(DATE_FORMATTER).toUpperCase()
+                + " TO " + to.format(DATE_FORMATTER).toUpperCase());
 
-        List<User> allUsers = authService.getAllUsers();
-        List<User> customers = allUsers.stream()
-                .filter(User::isCustomer)
-                .toList();
+        if (to.isBefore(from)) {
+            sink.note("The end date is before the start date.");
+            return;
+        }
 
-        Map<String, Integer> customerRentalCount = new HashMap<>();
-        Map<String, Double> customerSpending = new HashMap<>();
-        Map<String, Integer> customerOverdueCount = new HashMap<>();
+        RevenueAggregates.Totals totals = revenue.getRange(from, to);
+        long days = to.toEpochDay() - from.toEpochDay() + 1;
+
+        sink.metric("Returns Completed", totals.count());
+        sink.money("Base Revenue", totals.getBaseRevenue());
+        sink.money("Late Fees", totals.getLateFees());
+        sink.money("Total Revenue", totals.getTotalRevenue());
+        sink.money("Average Daily Revenue", totals.getTotalRevenue() / days);
+        sink.metric("Rentals with Late Fees", totals.lateCount());
+        if (totals.count() == 0) return;
+
+        sink.metric("Last Return in Range", totals.getLastReturnDate());
+
+        sink.blank();
+        sink.section("MONTHLY BREAKDOWN");
+        sink.columns("month", "returns", "revenue");
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            LocalDate start = month.atDay(1).isBefore(from) ? from : month.atDay(1);
+            LocalDate end = month.atEndOfMonth().isAfter(to) ? to : month.atEndOfMonth();
+            RevenueAggregates.Totals monthly = revenue.getRange(start, end);
+            if (monthly.count() > 0) {
+                String label = month.format(DateTimeFormatter.ofPattern("MMMM yyyy"));
+                sink.row(String.format("%s: %d returns, $%.2f revenue", label, monthly.count(),
+                        monthly.getTotalRevenue()), label, monthly.count(), monthly.getTotalRevenue());
+            }
+        }
+    }
 
-        // Analyze rental history
-        List<ReturnRecord> allReturns = rentalService.getAllReturns();
-        for (ReturnRecord record : allReturns) {
-            String customerId = record.getCustomerId();
-            customerRentalCount.put(customerId, customerRentalCount.getOrDefault(customerId, 0) + 1);
-            customerSpending.put(customerId, customerSpending.getOrDefault(customerId, 0.0) + record.getFinalAmount());
+    public String generateUtilizationReport(LocalDate from, LocalDate to) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("UTILIZATION", from, to),
+                    () -> render("UTILIZATION", sink -> emitUtilizationReport(from, to, sink)));
+        } finally {
+            Metrics.record("report.generateUtilizationReport", started);
         }
+    }
 
-        // Analyze current overdue rentals
-        List<Rental> overdueRentals = rentalService.getOverdueRentals();
-        for (Rental rental : overdueRentals) {
-            String customerId = rental.getCustomerId();
-            customerOverdueCount.put(customerId, customerOverdueCount.getOrDefault(customerId, 0) + 1);
+    public void writeUtilizationReport(LocalDate from, LocalDate to, ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("UTILIZATION", true, sink, out -> emitUtilizationReport(from, to, out));
+            sink.end();
+        } finally {
+            Metrics.record("report.writeUtilizationReport", started);
         }
+    }
 
-        report.append("CUSTOMER STATISTICS:\n");
-        report.append("Total Customers: ").append(customers.size()).append("\n");
-        report.append("Active Customers: ").append(customerRentalCount.size()).append("\n\n");
+    private void emitUtilizationReport(LocalDate from, LocalDate to, ReportSink sink) {
+        sink.title("EQUIPMENT UTILIZATION FROM " + from.format(DATE_FORMATTER).toUpperCase()
+                + " TO " + to.format(DATE_FORMATTER).toUpperCase());
 
-        report.append("TOP CUSTOMERS BY SPENDING:\n");
-        customerSpending.entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .limit(10)
+        if (to.isBefore(from)) {
+            sink.note("The end date is before the start date.");
+            return;
+        }
+
+        UtilizationIndex.FleetUtilization fleet = rentalService.getUtilization(from, to);
+
+        sink.section("FLEET OCCUPANCY");
+        sink.metric("Equipment Items", fleet.byEquipment().size());
+        sink.metric("Days in Period", fleet.days());
+        sink.metric("Fleet Occupancy", String.format("%.1f%%", fleet.getOccupancy() * 100));
+        sink.metric("Days With Equipment Out", fleet.daysWithEquipmentOut() + " of " + fleet.days());
+        sink.blank();
+
+        sink.section("UTILIZATION BY EQUIPMENT");
+        sink.columns("equipment", "equipmentId", "daysOut", "days", "utilization", "longestIdleStreak");
+        fleet.byEquipment().entrySet().stream()
+                .sorted(Map.Entry.<String, UtilizationIndex.Utilization>comparingByValue(
+                                Comparator.comparingDouble(UtilizationIndex.Utilization::getRate).reversed())
+                        .thenComparing(Map.Entry.comparingByKey()))
                 .forEach(entry -> {
-                    String customerId = entry.getKey();
-                    User customer = allUsers.stream()
-                            .filter(u -> u.getUserId().equals(customerId))
-                            .findFirst().orElse(null);
-                    String name = customer != null ? customer.getFullName() : "Unknown";
-                    int rentalCount = customerRentalCount.getOrDefault(customerId, 0);
-                    report.append(String.format("- %s (%s): %d rentals, $%.2f total\n",
-                            name, customerId, rentalCount, entry.getValue()));
+                    Equipment equipment = rentalService.findEquipmentById(entry.getKey());
+                    String name = equipment != null ? equipment.getName() : "Unknown";
+                    UtilizationIndex.Utilization usage = entry.getValue();
+                    sink.row(String.format("%s (%s): %d of %d days out (%.1f%%), longest idle streak %d days",
+                                    name, entry.getKey(), usage.daysOut(), usage.days(), usage.getRate() * 100,
+                                    usage.longestIdleStreak()),
+                            name, entry.getKey(), usage.daysOut(), usage.days(), usage.getRate(),
+                            usage.longestIdleStreak());
                 });
+    }
 
-        if (!customerOverdueCount.isEmpty()) {
-            report.append("\nCUSTOMERS WITH OVERDUE RENTALS:\n");
-            customerOverdueCount.entrySet().stream()
-                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+    public String generateCustomerAnalyticsReport() {
+        return generateCustomerAnalyticsReport(DEFAULT_TOP_CUSTOMERS, CustomerRanking.SPEND);
+    }
+
+    public String generateCustomerAnalyticsReport(int topCustomers, CustomerRanking ranking) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("CUSTOMERS", topCustomers, ranking),
+                    () -> render("CUSTOMERS", sink -> emitCustomerAnalyticsReport(topCustomers, ranking, sink)));
+        } finally {
+            Metrics.record("report.generateCustomerAnalyticsReport", started);
+        }
+    }
+
+    public void writeCustomerAnalyticsReport(int topCustomers, CustomerRanking ranking, ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("CUSTOMERS", true, sink, out -> emitCustomerAnalyticsReport(topCustomers, ranking, out));
+            sink.end();
+        } finally {
+            Metrics.record("report.writeCustomerAnalyticsReport", started);
+        }
+    }
+
+    private void emitCustomerAnalyticsReport(int topCustomers, CustomerRanking ranking, ReportSink sink) {
+        sink.title("CUSTOMER ANALYTICS REPORT");
+
+        long customerCount = authService.getAllUsers().stream()
+                .filter(User::isCustomer)
+                .count();
+
+        // Analyze rental history
+        Map<String, RevenueAggregates.Totals> customerTotals = revenue.getByCustomer();
+
+        // Analyze current overdue rentals
+        GroupedAggregator<Rental> overdue = new GroupedAggregator<Rental>()
+                .groupBy("customer", Rental::getCustomerId);
+        overdue.addAll(rentalService.getOverdueRentals());
+        Map<String, GroupedAggregator<Rental>.Row> customerOverdue = overdue.groups("customer");
+
+        sink.section("CUSTOMER STATISTICS");
+        sink.metric("Total Customers", customerCount);
+        sink.metric("Active Customers", customerTotals.size());
+        sink.blank();
+
+        sink.section("TOP CUSTOMERS BY " + ranking.label);
+        sink.columns("name", "customerId", "rentals", "total", "lateFeeRatio", "lastReturn");
+        List<Map.Entry<String, RevenueAggregates.Totals>> top = TopK.select(customerTotals.entrySet(), topCustomers,
+                Map.Entry.<String, RevenueAggregates.Totals>comparingByValue(ranking.order)
+                        .thenComparing(Map.Entry.comparingByKey()));
+        for (Map.Entry<String, RevenueAggregates.Totals> entry : top) {
+            String customerId = entry.getKey();
+            RevenueAggregates.Totals totals = entry.getValue();
+            String name = customerName(customerId);
+            String text = String.format("%s (%s): %d rentals, $%.2f total",
+                    name, customerId, totals.count(), totals.getTotalRevenue());
+            switch (ranking) {
+                case LATE_FEE_RATIO -> text += String.format(", %.1f%% late fees", totals.getLateFeeRatio() * 100);
+                case RECENCY -> text += ", last return " + totals.getLastReturnDate();
+                default -> { }
+            }
+            sink.row(text, name, customerId, totals.count(), totals.getTotalRevenue(),
+                    totals.getLateFeeRatio(), totals.getLastReturnDate());
+        }
+
+        if (!customerOverdue.isEmpty()) {
+            sink.blank();
+            sink.section("CUSTOMERS WITH OVERDUE RENTALS");
+            sink.columns("name", "customerId", "overdueRentals");
+            customerOverdue.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<String, GroupedAggregator<Rental>.Row> e) -> e.getValue().count())
+                            .reversed()
+                            .thenComparing(Map.Entry::getKey))
                     .forEach(entry -> {
-                        String customerId = entry.getKey();
-                        User customer = allUsers.stream()
-                                .filter(u -> u.getUserId().equals(customerId))
-                                .findFirst().orElse(null);
-                        String name = customer != null ? customer.getFullName() : "Unknown";
-                        report.append(String.format("- %s (%s): %d overdue rentals\n",
-                                name, customerId, entry.getValue()));
+                        String name = customerName(entry.getKey());
+                        sink.row(String.format("%s (%s): %d overdue rentals",
+                                name, entry.getKey(), entry.getValue().count()),
+                                name, entry.getKey(), entry.getValue().count());
                     });
         }
+    }
+
+    private String customerName(String customerId) {
+        User customer = authService.findUserById(customerId);
+        return customer != null ? customer.getFullName() : "Unknown";
+    }
 
-        return report.toString();
+    // the approximate mode is enabled with -Drental.approximateAnalytics=true
+    public boolean isApproximateModeEnabled() {
+        return approximate != null;
+    }
+
+    public String generateApproximateAnalyticsReport(int top) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("APPROXIMATE", top),
+                    () -> render("APPROXIMATE", sink -> emitApproximateAnalyticsReport(top, sink)));
+        } finally {
+            Metrics.record("report.generateApproximateAnalyticsReport", started);
+        }
+    }
+
+    public void writeApproximateAnalyticsReport(int top, ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("APPROXIMATE", true, sink, out -> emitApproximateAnalyticsReport(top, out));
+            sink.end();
+        } finally {
+            Metrics.record("report.writeApproximateAnalyticsReport", started);
+        }
+    }
+
+    // sketch estimates with their error bounds; nothing here scans the returns
+    private void emitApproximateAnalyticsReport(int top, ReportSink sink) {
+        sink.title("APPROXIMATE ANALYTICS");
+
+        if (approximate == null) {
+            sink.note("Approximate mode is off. Start with -Drental.approximateAnalytics=true to enable it.");
+            return;
+        }
+
+        double distinctError = approximate.getDistinctCountError() * 100;
+        double confidence = approximate.getFrequencyConfidence() * 100;
+        double accuracy = approximate.getQuantileAccuracy() * 100;
+
+        sink.section("DISTINCT CUSTOMERS");
+        sink.metric("Returns Seen", approximate.getReturnCount());
+        sink.metric("All Time", String.format("~%d (standard error %.1f%%)", approximate.getDistinctCustomers(), distinctError));
+        sink.columns("month", "distinctCustomers", "standardErrorPercent");
+        YearMonth current = YearMonth.now();
+        for (YearMonth month = current.minusMonths(11); !month.isAfter(current); month = month.plusMonths(1)) {
+            long customers = approximate.getDistinctCustomers(month);
+            if (customers > 0) {
+                String label = month.format(DateTimeFormatter.ofPattern("MMMM yyyy"));
+                sink.row(String.format("%s: ~%d customers", label, customers), label, customers, distinctError);
+            }
+        }
+        sink.blank();
+
+        sink.section("TOP EQUIPMENT BY RENTALS",
+                String.format("overcount at most %d with %.0f%% confidence", approximate.getRentalCountErrorBound(), confidence));
+        sink.columns("equipment", "equipmentId", "rentals");
+        for (HeavyHitters.Entry entry : approximate.getTopEquipmentByRentals(top)) {
+            Equipment equipment = rentalService.findEquipmentById(entry.key());
+            String name = equipment != null ? equipment.getName() : "Unknown";
+            sink.row(String.format("%s (%s): ~%d rentals", name, entry.key(), entry.estimate()),
+                    name, entry.key(), entry.estimate());
+        }
+        sink.blank();
+
+        sink.section("TOP CUSTOMERS BY SPEND",
+                String.format("overcount at most $%.2f with %.0f%% confidence",
+                        approximate.getSpendErrorBoundCents() / 100.0, confidence));
+        sink.columns("name", "customerId", "spend");
+        for (HeavyHitters.Entry entry : approximate.getTopCustomersBySpend(top)) {
+            String name = customerName(entry.key());
+            sink.row(String.format("%s (%s): ~$%.2f", name, entry.key(), entry.estimate() / 100.0),
+                    name, entry.key(), entry.estimate() / 100.0);
+        }
+        sink.blank();
+
+        sink.section("RENTAL DURATION", String.format("within %.0f%% of the true value", accuracy));
+        for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+            sink.metric(String.format("p%.0f", quantile * 100),
+                    String.format("%.1f days", approximate.getDurationQuantile(quantile)));
+        }
+        sink.blank();
+
+        sink.section("SPEND PER RETURN", String.format("within %.0f%% of the true value", accuracy));
+        for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+            sink.money(String.format("p%.0f", quantile * 100), approximate.getSpendQuantile(quantile));
+        }
     }
 
     public String generateEquipmentPerformanceReport() {
-        if (!requireAdminAccess()) return "Access denied.";
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("EQUIPMENT"), () -> render("EQUIPMENT", this::emitEquipmentPerformanceReport));
+        } finally {
+            Metrics.record("report.generateEquipmentPerformanceReport", started);
+        }
+    }
 
-        StringBuilder report = new StringBuilder();
-        report.append("\n\t=== EQUIPMENT PERFORMANCE REPORT ===\n\n");
+    public void writeEquipmentPerformanceReport(ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("EQUIPMENT", true, sink, this::emitEquipmentPerformanceReport);
+            sink.end();
+        } finally {
+            Metrics.record("report.writeEquipmentPerformanceReport", started);
+        }
+    }
+
+    private void emitEquipmentPerformanceReport(ReportSink sink) {
+        sink.title("EQUIPMENT PERFORMANCE REPORT");
 
         List<Equipment> allEquipment = rentalService.getAllEquipment();
-        List<ReturnRecord> allReturns = rentalService.getAllReturns();
 
         Map<String, Integer> equipmentRentals = new HashMap<>();
         Map<String, Double> equipmentRevenue = new HashMap<>();
         Map<String, Double> equipmentUtilization = new HashMap<>();
 
         // Calculate statistics
-        for (ReturnRecord record : allReturns) {
-            String equipmentId = record.getEquipmentId();
+        revenue.getByEquipment().forEach((equipmentId, totals) -> {
             Equipment equipment = rentalService.findEquipmentById(equipmentId);
 
             if (equipment != null) {
                 String name = equipment.getName();
-                equipmentRentals.put(name, equipmentRentals.getOrDefault(name, 0) + 1);
-                equipmentRevenue.put(name, equipmentRevenue.getOrDefault(name, 0.0) + record.getFinalAmount());
+                equipmentRentals.put(name, equipmentRentals.getOrDefault(name, 0) + totals.count());
+                equipmentRevenue.put(name, equipmentRevenue.getOrDefault(name, 0.0) + totals.getTotalRevenue());
 
                 // Calculate utilization (days rented / total days since first rental)
-                long daysRented = record.getEndDate().toEpochDay() - record.getStartDate().toEpochDay();
-                equipmentUtilization.put(name, equipmentUtilization.getOrDefault(name, 0.0) + daysRented);
+                equipmentUtilization.put(name, equipmentUtilization.getOrDefault(name, 0.0) + totals.daysRented());
             }
-        }
+        });
 
-        report.append("EQUIPMENT PERFORMANCE:\n");
-        report.append("Total Equipment Items: ").append(allEquipment.size()).append("\n");
-        report.append("Equipment with Rental History: ").append(equipmentRentals.size()).append("\n\n");
+        sink.section("EQUIPMENT PERFORMANCE");
+        sink.metric("Total Equipment Items", allEquipment.size());
+        sink.metric("Equipment with Rental History", equipmentRentals.size());
+        sink.blank();
 
-        report.append("TOP PERFORMING EQUIPMENT:\n");
+        sink.section("TOP PERFORMING EQUIPMENT");
+        sink.columns("equipment", "rentals", "revenue", "daysRented");
         equipmentRevenue.entrySet().stream()
                 .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
                 .limit(10)
@@ -268,8 +652,8 @@ public class ReportGenerator {
                     String name = entry.getKey();
                     int rentals = equipmentRentals.getOrDefault(name, 0);
                     double utilization = equipmentUtilization.getOrDefault(name, 0.0);
-                    report.append(String.format("- %s: %d rentals, $%.2f revenue, %.1f total days rented\n",
-                            name, rentals, entry.getValue(), utilization));
+                    sink.row(String.format("%s: %d rentals, $%.2f revenue, %.1f total days rented",
+                            name, rentals, entry.getValue(), utilization), name, rentals, entry.getValue(), utilization);
                 });
 
         // Equipment never rented
@@ -279,55 +663,79 @@ public class ReportGenerator {
                 .toList();
 
         if (!neverRented.isEmpty()) {
-            report.append("\nEQUIPMENT NEVER RENTED:\n");
-            neverRented.forEach(name -> report.append("- ").append(name).append("\n"));
+            sink.blank();
+            sink.section("EQUIPMENT NEVER RENTED");
+            sink.columns("equipment");
+            neverRented.forEach(name -> sink.row(name, name));
         }
-
-        return report.toString();
     }
 
     public String generateSecurityAuditReport() {
-        if (!requireAdminAccess()) return "Access denied.";
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("SECURITY"), () -> render("SECURITY", this::emitSecurityAuditReport));
+        } finally {
+            Metrics.record("report.generateSecurityAuditReport", started);
+        }
+    }
+
+    public void writeSecurityAuditReport(ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("SECURITY", true, sink, this::emitSecurityAuditReport);
+            sink.end();
+        } finally {
+            Metrics.record("report.writeSecurityAuditReport", started);
+        }
+    }
 
-        StringBuilder report = new StringBuilder();
-        report.append("\n\t=== SECURITY AUDIT REPORT ===\n\n");
+    private void emitSecurityAuditReport(ReportSink sink) {
+        sink.title("SECURITY AUDIT REPORT");
 
         List<User> allUsers = authService.getAllUsers();
 
-        // Account status summary
-        long activeAccounts = allUsers.stream().filter(u -> u.getStatus() == User.AccountStatus.ACTIVE).count();
-        long lockedAccounts = allUsers.stream().filter(u -> u.getStatus() == User.AccountStatus.LOCKED).count();
-        long inactiveAccounts = allUsers.stream().filter(u -> u.getStatus() == User.AccountStatus.INACTIVE).count();
-
-        report.append("ACCOUNT STATUS SUMMARY:\n");
-        report.append("Total Users: ").append(allUsers.size()).append("\n");
-        report.append("Active Accounts: ").append(activeAccounts).append("\n");
-        report.append("Locked Accounts: ").append(lockedAccounts).append("\n");
-        report.append("Inactive Accounts: ").append(inactiveAccounts).append("\n\n");
+        // Account status and user type counts in one pass
+        GroupedAggregator<User> userStats = new GroupedAggregator<User>()
+                .countIf("active", u -> u.getStatus() == User.AccountStatus.ACTIVE)
+                .countIf("locked", u -> u.getStatus() == User.AccountStatus.LOCKED)
+                .countIf("inactive", u -> u.getStatus() == User.AccountStatus.INACTIVE)
+                .countIf("admins", User::isAdmin)
+                .countIf("customers", User::isCustomer);
+        userStats.addAll(allUsers);
+        GroupedAggregator<User>.Row users = userStats.total();
+
+        sink.section("ACCOUNT STATUS SUMMARY");
+        sink.metric("Total Users", allUsers.size());
+        sink.metric("Active Accounts", users.get("active"));
+        sink.metric("Locked Accounts", users.get("locked"));
+        sink.metric("Inactive Accounts", users.get("inactive"));
+        sink.blank();
 
         // User type distribution
-        long adminCount = allUsers.stream().filter(User::isAdmin).count();
-        long customerCount = allUsers.stream().filter(User::isCustomer).count();
-
-        report.append("USER TYPE DISTRIBUTION:\n");
-        report.append("Administrators: ").append(adminCount).append("\n");
-        report.append("Customers: ").append(customerCount).append("\n\n");
+        sink.section("USER TYPE DISTRIBUTION");
+        sink.metric("Administrators", users.get("admins"));
+        sink.metric("Customers", users.get("customers"));
+        sink.blank();
 
         // Security alerts
-        report.append("SECURITY ALERTS:\n");
+        sink.section("SECURITY ALERTS");
 
         List<User> lockedUsers = allUsers.stream()
                 .filter(u -> u.getStatus() == User.AccountStatus.LOCKED)
                 .toList();
 
         if (!lockedUsers.isEmpty()) {
-            report.append("LOCKED ACCOUNTS:\n");
+            sink.section("LOCKED ACCOUNTS");
+            sink.columns("name", "username", "failedAttempts");
             for (User user : lockedUsers) {
-                report.append(String.format("- %s (%s): %d failed attempts\n",
-                        user.getFullName(), user.getUsername(), user.getFailedLoginAttempts()));
+                sink.row(String.format("%s (%s): %d failed attempts",
+                        user.getFullName(), user.getUsername(), user.getFailedLoginAttempts()),
+                        user.getFullName(), user.getUsername(), user.getFailedLoginAttempts());
             }
         } else {
-            report.append("- No locked accounts\n");
+            sink.row("No locked accounts");
         }
 
         List<User> neverLoggedIn = allUsers.stream()
@@ -335,83 +743,94 @@ public class ReportGenerator {
                 .toList();
 
         if (!neverLoggedIn.isEmpty()) {
-            report.append("\nACCOUNTS NEVER LOGGED IN:\n");
+            sink.blank();
+            sink.section("ACCOUNTS NEVER LOGGED IN");
+            sink.columns("name", "username", "created");
             for (User user : neverLoggedIn) {
-                report.append(String.format("- %s (%s): Created %s\n",
-                        user.getFullName(), user.getUsername(),
-                        user.getCreatedDate().format(DATETIME_FORMATTER)));
+                String created = user.getCreatedDate().format(DATETIME_FORMATTER);
+                sink.row(String.format("%s (%s): Created %s", user.getFullName(), user.getUsername(), created),
+                        user.getFullName(), user.getUsername(), created);
             }
         }
-
-        return report.toString();
     }
 
     public String generateFinancialSummaryReport() {
-        if (!requireAdminAccess()) return "Access denied.";
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess()) return "Access denied.";
+            return cache.get(ReportCache.key("FINANCIAL"), () -> render("FINANCIAL", this::emitFinancialSummaryReport));
+        } finally {
+            Metrics.record("report.generateFinancialSummaryReport", started);
+        }
+    }
 
-        StringBuilder report = new StringBuilder();
-        report.append("\n\t=== FINANCIAL SUMMARY REPORT ===\n\n");
+    public void writeFinancialSummaryReport(ReportSink sink) {
+        long started = System.nanoTime();
+        try {
+            if (!requireAdminAccess(sink)) return;
+            emit("FINANCIAL", true, sink, this::emitFinancialSummaryReport);
+            sink.end();
+        } finally {
+            Metrics.record("report.writeFinancialSummaryReport", started);
+        }
+    }
 
-        List<ReturnRecord> allReturns = rentalService.getAllReturns();
+    private void emitFinancialSummaryReport(ReportSink sink) {
+        sink.title("FINANCIAL SUMMARY REPORT");
 
-        if (allReturns.isEmpty()) {
-            report.append("No financial data available.\n");
-            return report.toString();
+        RevenueAggregates.Totals totals = revenue.getTotal();
+
+        if (totals.count() == 0) {
+            sink.note("No financial data available.");
+            return;
         }
 
         // Calculate totals
-        double totalBaseRevenue = allReturns.stream().mapToDouble(ReturnRecord::getTotalCost).sum();
-        double totalLateFees = allReturns.stream().mapToDouble(ReturnRecord::getLateFee).sum();
-        double totalRevenue = totalBaseRevenue + totalLateFees;
+        double totalBaseRevenue = totals.getBaseRevenue();
+        double totalLateFees = totals.getLateFees();
+        double totalRevenue = totals.getTotalRevenue();
 
         // Calculate averages
-        double averageRentalValue = totalBaseRevenue / allReturns.size();
-        double averageLateFee = totalLateFees / allReturns.size();
+        double averageRentalValue = totalBaseRevenue / totals.count();
+        double averageLateFee = totalLateFees / totals.count();
 
         // Late fee statistics
-        long rentalsWithLateFee = allReturns.stream().filter(r -> r.getLateFee() > 0).count();
-        double lateFeePercentage = (double) rentalsWithLateFee / allReturns.size() * 100;
+        long rentalsWithLateFee = totals.lateCount();
+        double lateFeePercentage = (double) rentalsWithLateFee / totals.count() * 100;
 
-        report.append("REVENUE SUMMARY:\n");
-        report.append(String.format("Total Rentals Processed: %d\n", allReturns.size()));
-        report.append(String.format("Base Revenue: $%.2f\n", totalBaseRevenue));
-        report.append(String.format("Late Fees: $%.2f\n", totalLateFees));
-        report.append(String.format("Total Revenue: $%.2f\n\n", totalRevenue));
+        sink.section("REVENUE SUMMARY");
+        sink.metric("Total Rentals Processed", totals.count());
+        sink.money("Base Revenue", totalBaseRevenue);
+        sink.money("Late Fees", totalLateFees);
+        sink.money("Total Revenue", totalRevenue);
+        sink.blank();
 
-        report.append("AVERAGES:\n");
-        report.append(String.format("Average Rental Value: $%.2f\n", averageRentalValue));
-        report.append(String.format("Average Late Fee: $%.2f\n\n", averageLateFee));
+        sink.section("AVERAGES");
+        sink.money("Average Rental Value", averageRentalValue);
+        sink.money("Average Late Fee", averageLateFee);
+        sink.blank();
 
-        report.append("LATE FEE ANALYSIS:\n");
-        report.append(String.format("Rentals with Late Fees: %d (%.1f%%)\n", rentalsWithLateFee, lateFeePercentage));
+        sink.section("LATE FEE ANALYSIS");
+        sink.metric("Rentals with Late Fees", String.format("%d (%.1f%%)", rentalsWithLateFee, lateFeePercentage));
 
         if (rentalsWithLateFee > 0) {
-            double averageLateFeeForLateRentals = totalLateFees / rentalsWithLateFee;
-            report.append(String.format("Average Late Fee (for late rentals): $%.2f\n", averageLateFeeForLateRentals));
+            sink.money("Average Late Fee (for late rentals)", totalLateFees / rentalsWithLateFee);
         }
 
         // Monthly breakdown for current year
         int currentYear = LocalDate.now().getYear();
-        report.append(String.format("\nMONTHLY BREAKDOWN FOR %d:\n", currentYear));
+        sink.blank();
+        sink.section("MONTHLY BREAKDOWN FOR " + currentYear);
+        sink.columns("month", "rentals", "revenue");
 
         for (int month = 1; month <= 12; month++) {
-            final int currentMonth = month;
-            List<ReturnRecord> monthlyReturns = allReturns.stream()
-                    .filter(r -> r.getEndDate().getYear() == currentYear &&
-                            r.getEndDate().getMonthValue() == currentMonth)
-                    .toList();
-
-            if (!monthlyReturns.isEmpty()) {
-                double monthlyRevenue = monthlyReturns.stream()
-                        .mapToDouble(ReturnRecord::getFinalAmount)
-                        .sum();
-
-                report.append(String.format("- %s: %d rentals, $%.2f revenue\n",
-                        LocalDate.of(currentYear, month, 1).format(DateTimeFormatter.ofPattern("MMMM")),
-                        monthlyReturns.size(), monthlyRevenue));
+            RevenueAggregates.Totals monthly = revenue.getMonth(YearMonth.of(currentYear, month));
+
+            if (monthly.count() > 0) {
+                String monthName = LocalDate.of(currentYear, month, 1).format(DateTimeFormatter.ofPattern("MMMM"));
+                sink.row(String.format("%s: %d rentals, $%.2f revenue", monthName, monthly.count(),
+                        monthly.getTotalRevenue()), monthName, monthly.count(), monthly.getTotalRevenue());
             }
         }
-
-        return report.toString();
     }
 }
@@ -0,0 +1,218 @@
+package services;
+
+import models.ReturnRecord;
+import utils.FenwickTree;
+import utils.GroupedAggregator;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Running revenue totals, updated as each return lands so reports read a handful of
+// buckets instead of the whole returns history. Amounts are kept in cents to avoid
+// drift from summing doubles.
+// Daily values are also kept in Fenwick trees indexed by epoch day, so the totals of
+// any date range come back in O(log n) without walking the days in between.
+public class RevenueAggregates {
+    public record Totals(long baseCents, long lateFeeCents, int count, int lateCount, long daysRented,
+                         long lastReturnDay) {
+        public double getBaseRevenue() { return baseCents / 100.0; }
+        public double getLateFees() { return lateFeeCents / 100.0; }
+        public double getTotalRevenue() { return (baseCents + lateFeeCents) / 100.0; }
+        public double getLateFeeRatio() { return baseCents > 0 ? (double) lateFeeCents / baseCents : 0.0; }
+        public LocalDate getLastReturnDate() { return count > 0 ? LocalDate.ofEpochDay(lastReturnDay) : null; }
+    }
+
+    // months since year 0 rather than a YearMonth: there is one key per item and month,
+    // and plain ints keep the warm-start cache small and quick to read back
+    private record MonthAndEquipment(int month, String equipmentId) implements Serializable {
+        MonthAndEquipment(YearMonth month, String equipmentId) {
+            this(index(month), equipmentId);
+        }
+
+        static int index(YearMonth month) {
+            return month.getYear() * 12 + month.getMonthValue() - 1;
+        }
+    }
+
+    private final GroupedAggregator<ReturnRecord> aggregator = new GroupedAggregator<ReturnRecord>()
+            .sum("base", r -> toCents(r.getTotalCost()))
+            .sum("lateFees", r -> toCents(r.getLateFee()))
+            .countIf("late", r -> toCents(r.getLateFee()) > 0)
+            .sum("days", r -> r.getEndDate().toEpochDay() - r.getStartDate().toEpochDay())
+            .max("lastDay", r -> r.getEndDate().toEpochDay())
+            .groupBy("day", ReturnRecord::getEndDate)
+            .groupBy("month", r -> YearMonth.from(r.getEndDate()))
+            .groupBy("year", r -> r.getEndDate().getYear())
+            .groupBy("equipment", ReturnRecord::getEquipmentId)
+            .groupBy("customer", ReturnRecord::getCustomerId)
+            .groupBy("monthAndEquipment", r -> new MonthAndEquipment(YearMonth.from(r.getEndDate()), r.getEquipmentId()));
+
+    // one tree per summed metric, indexed by days since originDay; guarded by this
+    private static final String[] RANGE_METRICS = {"base", "lateFees", "late", "days"};
+    private static final int ORIGIN_MARGIN_DAYS = 3660;
+    private final FenwickTree[] dailyTrees = new FenwickTree[RANGE_METRICS.length + 1];
+    private long originDay = Long.MIN_VALUE;
+
+    // the items returned in each month index, so a month's breakdown looks up its own
+    // rows instead of copying every month ever recorded; guarded by this
+    private final Map<Integer, Set<String>> equipmentByMonth = new HashMap<>();
+
+    public void record(ReturnRecord record) {
+        aggregator.add(record);
+        synchronized (this) {
+            equipmentByMonth.computeIfAbsent(MonthAndEquipment.index(YearMonth.from(record.getEndDate())),
+                    month -> new HashSet<>()).add(record.getEquipmentId());
+            long day = record.getEndDate().toEpochDay();
+            if (originDay == Long.MIN_VALUE || day < originDay) {
+                rebuildRangeIndex(day);
+            } else {
+                GroupedAggregator<ReturnRecord>.Row row = aggregator.group("day", record.getEndDate());
+                // the day's new totals minus what the trees already hold for it
+                int index = (int) (day - originDay);
+                dailyTrees[0].add(index, row.count() - dailyTrees[0].rangeSum(index, index));
+                for (int i = 0; i < RANGE_METRICS.length; i++) {
+                    long value = row.get(RANGE_METRICS[i]);
+                    dailyTrees[i + 1].add(index, value - dailyTrees[i + 1].rangeSum(index, index));
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        aggregator.clear();
+        equipmentByMonth.clear();
+        originDay = Long.MIN_VALUE;
+    }
+
+    // large histories are aggregated in parallel chunks
+    public synchronized void rebuild(List<ReturnRecord> returns) {
+        aggregator.clear();
+        aggregator.addAll(returns);
+        rebuildMonthIndex();
+        originDay = Long.MIN_VALUE;
+        Map<LocalDate, GroupedAggregator<ReturnRecord>.Row> days = aggregator.groups("day");
+        days.keySet().stream().mapToLong(LocalDate::toEpochDay).min().ifPresent(this::rebuildRangeIndex);
+    }
+
+    public synchronized GroupedAggregator.State exportState() {
+        return aggregator.exportState();
+    }
+
+    // puts back exported totals in place of a rebuild from the returns history
+    public synchronized void restore(GroupedAggregator.State state) {
+        aggregator.restore(state);
+        rebuildMonthIndex();
+        originDay = Long.MIN_VALUE;
+        Map<LocalDate, GroupedAggregator<ReturnRecord>.Row> days = aggregator.groups("day");
+        days.keySet().stream().mapToLong(LocalDate::toEpochDay).min().ifPresent(this::rebuildRangeIndex);
+    }
+
+    private void rebuildMonthIndex() {
+        equipmentByMonth.clear();
+        Map<MonthAndEquipment, GroupedAggregator<ReturnRecord>.Row> groups = aggregator.groups("monthAndEquipment");
+        for (MonthAndEquipment key : groups.keySet()) {
+            equipmentByMonth.computeIfAbsent(key.month(), month -> new HashSet<>()).add(key.equipmentId());
+        }
+    }
+
+    // reindexes every recorded day, leaving room for returns dated somewhat earlier
+    private void rebuildRangeIndex(long earliestDay) {
+        originDay = earliestDay - ORIGIN_MARGIN_DAYS;
+        for (int i = 0; i < dailyTrees.length; i++) {
+            dailyTrees[i] = new FenwickTree(ORIGIN_MARGIN_DAYS * 2);
+        }
+        Map<LocalDate, GroupedAggregator<ReturnRecord>.Row> days = aggregator.groups("day");
+        days.forEach((day, row) -> {
+            int index = (int) (day.toEpochDay() - originDay);
+            dailyTrees[0].add(index, row.count());
+            for (int i = 0; i < RANGE_METRICS.length; i++) {
+                dailyTrees[i + 1].add(index, row.get(RANGE_METRICS[i]));
+            }
+        });
+    }
+
+    // totals of the returns that ended between from and to, both inclusive
+    public synchronized Totals getRange(LocalDate from, LocalDate to) {
+        if (originDay == Long.MIN_VALUE || to.isBefore(from)) {
+            return new Totals(0, 0, 0, 0, 0, Long.MIN_VALUE);
+        }
+        int first = (int) Math.min(Math.max(0, from.toEpochDay() - originDay), Integer.MAX_VALUE - 1);
+        long last = to.toEpochDay() - originDay;
+        if (last < 0) {
+            return new Totals(0, 0, 0, 0, 0, Long.MIN_VALUE);
+        }
+        int lastIndex = (int) Math.min(last, Integer.MAX_VALUE - 1);
+
+        long[] sums = new long[dailyTrees.length];
+        for (int i = 0; i < dailyTrees.length; i++) {
+            sums[i] = dailyTrees[i].rangeSum(first, lastIndex);
+        }
+        // the latest day in range is where the running count first reaches its value at the range end
+        long lastDay = sums[0] > 0
+                ? originDay + dailyTrees[0].lowerBound(dailyTrees[0].prefixSum(lastIndex))
+                : Long.MIN_VALUE;
+        return new Totals(sums[1], sums[2], (int) sums[0], (int) sums[3], sums[4], lastDay);
+    }
+
+    public Totals getTotal() {
+        return totalsOf(aggregator.total());
+    }
+
+    public Totals getDay(LocalDate day) {
+        return totalsOf(aggregator.group("day", day));
+    }
+
+    public Totals getMonth(YearMonth month) {
+        return totalsOf(aggregator.group("month", month));
+    }
+
+    public Totals getYear(int year) {
+        return totalsOf(aggregator.group("year", year));
+    }
+
+    public Totals getEquipment(String equipmentId) {
+        return totalsOf(aggregator.group("equipment", equipmentId));
+    }
+
+    public Totals getCustomer(String customerId) {
+        return totalsOf(aggregator.group("customer", customerId));
+    }
+
+    public Map<String, Totals> getByEquipment() {
+        return snapshot(aggregator.groups("equipment"));
+    }
+
+    public Map<String, Totals> getByCustomer() {
+        return snapshot(aggregator.groups("customer"));
+    }
+
+    public synchronized Map<String, Totals> getByEquipment(YearMonth month) {
+        Map<String, Totals> result = new HashMap<>();
+        int index = MonthAndEquipment.index(month);
+        for (String equipmentId : equipmentByMonth.getOrDefault(index, Set.of())) {
+            result.put(equipmentId, totalsOf(aggregator.group("monthAndEquipment", new MonthAndEquipment(index, equipmentId))));
+        }
+        return result;
+    }
+
+    private static Totals totalsOf(GroupedAggregator<ReturnRecord>.Row row) {
+        return new Totals(row.get("base"), row.get("lateFees"), (int) row.count(), (int) row.get("late"),
+                row.get("days"), row.get("lastDay"));
+    }
+
+    private static <K> Map<K, Totals> snapshot(Map<K, GroupedAggregator<ReturnRecord>.Row> rows) {
+        Map<K, Totals> result = new HashMap<>();
+        rows.forEach((key, row) -> result.put(key, totalsOf(row)));
+        return result;
+    }
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+}
@@ -0,0 +1,98 @@
+package services;
+
+import models.Rental;
+import models.ReturnRecord;
+import utils.CompressedBitmap;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// One day bitmap per equipment item, marking the days it was out on completed
+// rentals. An item counts as out from its start date up to the day before it came
+// back, or for one day when returned the same day. Current rentals are laid over
+// the bitmaps at query time (out through today), so the history stays append-only.
+// Days are stored relative to DAY_ORIGIN to keep bitmap values non-negative.
+public class UtilizationIndex {
+    public record Utilization(int daysOut, int days, int longestIdleStreak) {
+        public double getRate() { return days > 0 ? (double) daysOut / days : 0.0; }
+    }
+
+    public record FleetUtilization(Map<String, Utilization> byEquipment, int days, int daysWithEquipmentOut) {
+        // share of all item-days in the window that were rented
+        public double getOccupancy() {
+            long itemDays = (long) byEquipment.size() * days;
+            long out = byEquipment.values().stream().mapToLong(Utilization::daysOut).sum();
+            return itemDays > 0 ? (double) out / itemDays : 0.0;
+        }
+    }
+
+    private static final long DAY_ORIGIN = LocalDate.of(1900, 1, 1).toEpochDay();
+
+    private final Map<String, CompressedBitmap> daysOut = new HashMap<>();
+
+    public synchronized void record(ReturnRecord record) {
+        int start = day(record.getStartDate());
+        int end = Math.max(start, day(record.getEndDate()) - 1);
+        daysOut.computeIfAbsent(record.getEquipmentId(), id -> new CompressedBitmap()).addRange(start, end);
+    }
+
+    public synchronized void clear() {
+        daysOut.clear();
+    }
+
+    public synchronized void rebuild(List<ReturnRecord> returns) {
+        daysOut.clear();
+        for (ReturnRecord record : returns) {
+            record(record);
+        }
+    }
+
+    public synchronized Map<String, CompressedBitmap> exportState() {
+        Map<String, CompressedBitmap> copy = new HashMap<>();
+        daysOut.forEach((equipmentId, bitmap) -> copy.put(equipmentId, bitmap.copy()));
+        return copy;
+    }
+
+    public synchronized void restore(Map<String, CompressedBitmap> state) {
+        daysOut.clear();
+        daysOut.putAll(state);
+    }
+
+    // utilization of each listed item between from and to, both inclusive
+    public synchronized FleetUtilization getUtilization(Collection<String> equipmentIds, Collection<Rental> active,
+                                                        LocalDate from, LocalDate to, LocalDate today) {
+        int first = day(from);
+        int last = day(to);
+        int days = Math.max(0, last - first + 1);
+
+        Map<String, CompressedBitmap> current = new HashMap<>();
+        for (Rental rental : active) {
+            CompressedBitmap history = daysOut.get(rental.getEquipmentId());
+            CompressedBitmap bitmap = current.computeIfAbsent(rental.getEquipmentId(),
+                    id -> history != null ? history.copy() : new CompressedBitmap());
+            bitmap.addRange(day(rental.getStartDate()), Math.max(day(rental.getStartDate()), day(today)));
+        }
+
+        Map<String, Utilization> byEquipment = new LinkedHashMap<>();
+        CompressedBitmap fleet = new CompressedBitmap();
+        for (String equipmentId : equipmentIds) {
+            CompressedBitmap bitmap = current.getOrDefault(equipmentId, daysOut.get(equipmentId));
+            if (bitmap == null) {
+                byEquipment.put(equipmentId, new Utilization(0, days, days));
+                continue;
+            }
+            byEquipment.put(equipmentId, new Utilization((int) bitmap.rangeCardinality(first, last), days,
+                    days > 0 ? bitmap.longestGap(first, last) : 0));
+            fleet = fleet.or(bitmap);
+        }
+        return new FleetUtilization(byEquipment, days, (int) fleet.rangeCardinality(first, last));
+    }
+
+    private static int day(LocalDate date) {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, date.toEpochDay() - DAY_ORIGIN));
+    }
+}
@@ -0,0 +1,109 @@
+package services;
+
+import data.FileHandler;
+import metrics.Metrics;
+import utils.CompressedBitmap;
+import utils.GroupedAggregator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Derived state saved on a clean shutdown so the next start can skip rebuilding it
+// from the returns history. The state is keyed by the layout and by CRC32 checksums
+// of every data file it was derived from; if any file changed since (or the file was
+// written by another version) the caller rebuilds as usual.
+class WarmStartCache {
+    static final Path FILE = FileHandler.BASE_DIR.resolve("warm-start.cache");
+    private static final int FORMAT = 2;
+    // below this many returns a rebuild is quicker than reading the state back
+    static final int MIN_RETURNS = Integer.getInteger("rental.warmStartMinReturns", 50_000);
+    private static final String ALLOWED_CLASSES = "java.base/*;services.*;utils.*;!*";
+
+    record State(String layout, Map<String, Long> checksums, int returnCount, int nextRental, int nextEquipment,
+                 GroupedAggregator.State revenue, Map<String, CompressedBitmap> utilization,
+                 ApproximateAnalytics.Sketches approximate) implements Serializable {}
+
+    private WarmStartCache() {}
+
+    static Map<String, Long> checksums(RentalPartition[] partitions) throws IOException {
+        Map<String, Long> checksums = new LinkedHashMap<>();
+        byte[] buffer = new byte[1 << 16];
+        for (RentalPartition partition : partitions) {
+            for (String name : new String[] {FileHandler.EQUIPMENT_FILE, FileHandler.RENTALS_FILE,
+                    FileHandler.RETURNS_FILE}) {
+                Path file = partition.dataDir.resolve(name);
+                checksums.put(file.toString(), checksum(file, buffer));
+            }
+        }
+        return checksums;
+    }
+
+    private static long checksum(Path file, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+        return crc.getValue();
+    }
+
+    // null unless the saved state matches the layout and the files as they are now
+    static State load(String layout, RentalPartition[] partitions) {
+        if (!Files.exists(FILE)) return null;
+
+        try {
+            Map<String, Long> checksums = checksums(partitions);
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(FILE)))) {
+                in.setObjectInputFilter(ObjectInputFilter.Config.createFilter(ALLOWED_CLASSES));
+                if (in.readInt() != FORMAT) return null;
+                State state = (State) in.readObject();
+                return state.layout().equals(layout) && state.checksums().equals(checksums) ? state : null;
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("Error loading warm-start cache: " + e.getMessage());
+            Metrics.count("file.errors");
+            return null;
+        }
+    }
+
+    static void save(State state) {
+        Path temp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+        try {
+            try (ObjectOutputStream out =
+                         new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT);
+                out.writeObject(state);
+            }
+            Files.move(temp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving warm-start cache: " + e.getMessage());
+            Metrics.count("file.errors");
+        }
+    }
+
+    static void discard() {
+        try {
+            Files.deleteIfExists(FILE);
+        } catch (IOException e) {
+            System.err.println("Error removing warm-start cache: " + e.getMessage());
+            Metrics.count("file.errors");
+        }
+    }
+}
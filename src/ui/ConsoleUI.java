@@ -1,25 +1,53 @@
 package ui;
 
+import events.ActivityFeed;
+import events.EventCounters;
+import events.EventType;
+import metrics.Metrics;
+import replication.ReplicaClient;
+import reports.ReportFormat;
+import reports.ReportSink;
+import reports.TextReportSink;
 import services.*;
 import models.*;
 import utils.*;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class ConsoleUI {
     private final AuthenticationService authService;
     private final RentalService rentalService;
     private final ReportGenerator reportGenerator;
+    private final EventCounters eventCounters;
+    private final ActivityFeed activityFeed;
+    private final ReplicaClient replica;
     private final Scanner scanner;
     private final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final Path EXPORT_DIR = Paths.get("exports");
+    private static final int DASHBOARD_REFRESH_SECONDS = 3;
 
-    public ConsoleUI(AuthenticationService authService, RentalService rentalService) {
+    public ConsoleUI(AuthenticationService authService, RentalService rentalService,
+                     EventCounters eventCounters, ActivityFeed activityFeed, ReplicaClient replica) {
         this.authService = authService;
         this.rentalService = rentalService;
         this.reportGenerator = new ReportGenerator(rentalService, authService);
+        this.eventCounters = eventCounters;
+        this.activityFeed = activityFeed;
+        this.replica = replica;
         this.scanner = new Scanner(System.in);
     }
 
@@ -124,7 +152,8 @@ public class ConsoleUI {
                     \n4. Reports & Analytics\
                     \n5. System Overview\
                     \n6. My Profile\
-                    \n7. Logout
+                    \n7. Live Performance Dashboard\
+                    \n8. Logout
                     """);
 
             int choice = getIntInput("\nSelect option: ");
@@ -136,7 +165,8 @@ public class ConsoleUI {
                 case 4: showReportsMenu(); break;
                 case 5: showSystemOverview(); break;
                 case 6: showUserProfile(); break;
-                case 7: handleLogout(); return;
+                case 7: showLiveDashboard(); break;
+                case 8: handleLogout(); return;
                 default: System.out.println("\nInvalid choice. Please try again.");
             }
             clearScreen();
@@ -258,7 +288,11 @@ public class ConsoleUI {
                     \n4. Equipment Performance\
                     \n5. Financial Summary\
                     \n6. Security Audit\
-                    \n7. Back to Main Menu
+                    \n7. Revenue Between Dates\
+                    \n8. Equipment Utilization\
+                    \n9. Approximate Analytics\
+                    \n10. Export Report\
+                    \n11. Back to Main Menu
                     """);
 
             int choice = getIntInput("\nSelect option: ");
@@ -270,7 +304,11 @@ public class ConsoleUI {
                 case 4: showEquipmentPerformance(); continue;
                 case 5: showFinancialSummary(); continue;
                 case 6: showSecurityAudit(); continue;
-                case 7: return;
+                case 7: handleRevenueRange(); continue;
+                case 8: handleUtilization(); continue;
+                case 9: showApproximateAnalytics(); continue;
+                case 10: handleExportReport(); continue;
+                case 11: return;
                 default: System.out.println("\nInvalid choice. Please try again.");
             }
         }
@@ -624,67 +662,322 @@ public class ConsoleUI {
             System.out.println("\n\tATTENTION: There are overdue rentals requiring attention!");
         }
 
+        System.out.println("\n\tACTIVITY SINCE STARTUP:");
+        System.out.printf("Logins: %d | Rentals: %d | Returns: %d | Force Returns: %d%n",
+                eventCounters.getCount(EventType.USER_LOGGED_IN),
+                eventCounters.getCount(EventType.EQUIPMENT_RENTED),
+                eventCounters.getCount(EventType.EQUIPMENT_RETURNED),
+                eventCounters.getCount(EventType.FORCE_RETURNED));
+        System.out.printf("Revenue To Date: $%.2f (late fees $%.2f)%n",
+                rentalService.getTotalRevenue(), rentalService.getTotalLateFees());
+
+        Map<String, Object> status = rentalService.getSystemStatus();
+        Object persistence = status.get("persistence");
+        if (persistence instanceof Map<?, ?> metrics) {
+            System.out.println("\n\tPERSISTENCE QUEUE:");
+            System.out.printf("Queue Depth: %s (max %s of %s)%n",
+                    metrics.get("queueDepth"), metrics.get("maxQueueDepth"), metrics.get("queueCapacity"));
+            System.out.printf("Writes: %s submitted, %s written, %s coalesced, %s failed%n",
+                    metrics.get("submitted"), metrics.get("fileWrites"),
+                    metrics.get("coalesced"), metrics.get("failedWrites"));
+            System.out.printf("Backpressure Stalls: %s (%s ms)%n",
+                    metrics.get("backpressureStalls"), metrics.get("backpressureWaitMillis"));
+        }
+
+        Map<String, Object> cache = reportGenerator.getCacheMetrics();
+        System.out.println("\n\tREPORT CACHE:");
+        System.out.printf("Entries: %s of %s | Hits: %s | Misses: %s | Evictions: %s%n",
+                cache.get("entries"), cache.get("capacity"), cache.get("hits"),
+                cache.get("misses"), cache.get("evictions"));
+
+        if (status.get("io") instanceof Map<?, ?> io && !io.isEmpty()) {
+            System.out.println("\n\tSTORAGE I/O:");
+            System.out.printf("%-18s %6s %10s %8s %12s %8s %12s %10s %10s%n", "File", "Reads", "Read KB",
+                    "Rewrites", "Written KB", "Records", "Bytes/Rec", "Write p99", "Fsync p99");
+            io.forEach((file, stats) -> {
+                Map<?, ?> values = (Map<?, ?>) stats;
+                System.out.printf("%-18s %6s %10.1f %8s %12.1f %8s %12.1f %8.2fms %8.2fms%n", file,
+                        values.get("reads"), ((Long) values.get("bytesRead")) / 1024.0, values.get("rewrites"),
+                        ((Long) values.get("bytesWritten")) / 1024.0, values.get("recordsChanged"),
+                        values.get("writeAmplification"), ((Double) values.get("writeP99Micros")) / 1000.0,
+                        ((Double) values.get("fsyncP99Micros")) / 1000.0);
+            });
+        }
+
+        if (status.get("metrics") instanceof Map<?, ?> metrics
+                && metrics.get("latencies") instanceof Map<?, ?> latencies && !latencies.isEmpty()) {
+            System.out.println("\n\tOPERATION LATENCY (microseconds):");
+            System.out.printf("%-36s %8s %9s %9s %9s%n", "Operation", "Calls", "p50", "p99", "p999");
+            latencies.forEach((name, summary) -> {
+                Map<?, ?> values = (Map<?, ?>) summary;
+                System.out.printf("%-36s %8s %9.1f %9.1f %9.1f%n", name, values.get("count"),
+                        values.get("p50Micros"), values.get("p99Micros"), values.get("p999Micros"));
+            });
+            System.out.println("Failed Logins: " + Metrics.getCount("auth.login.failed")
+                    + " | File Errors: " + Metrics.getCount("file.errors"));
+
+            if (confirmAction("\nWrite the metrics to a file? ")) {
+                Path file = EXPORT_DIR.resolve("metrics-" + LocalDateTime.now()
+                        .format(DateTimeFormatter.ofPattern("yyyy-MM-dd-HHmmss")) + ".txt");
+                try {
+                    Metrics.dump(file);
+                    System.out.println("Metrics written to " + file);
+                } catch (IOException e) {
+                    System.err.println("Error writing metrics: " + e.getMessage());
+                }
+            }
+        }
+
         pressEnterToContinue(scanner);
     }
 
-    // report handlers
-    private void handleDailySummary() {
-        LocalDate date = getDateInput("\nEnter date (yyyy-mm-dd) or press Enter for today: ",
-                "yyyy-MM-dd");
-        if (date == null) {
-            date = LocalDate.now();
+    private void showLiveDashboard() {
+        int seconds = Math.max(1, getOptionalIntInput("\nRefresh every how many seconds (Enter for "
+                + DASHBOARD_REFRESH_SECONDS + "): ", DASHBOARD_REFRESH_SECONDS));
+        PerformanceDashboard dashboard = new PerformanceDashboard(rentalService, reportGenerator);
+
+        // Enter is read on its own thread so this one, which holds the admin session, keeps refreshing
+        CompletableFuture<String> enter = new CompletableFuture<>();
+        Thread reader = new Thread(() -> {
+            try {
+                enter.complete(scanner.nextLine());
+            } catch (RuntimeException e) {
+                enter.completeExceptionally(e);
+            }
+        }, "dashboard-input");
+        reader.setDaemon(true);
+        reader.start();
+
+        while (true) {
+            clearScreen();
+            System.out.print(dashboard.render());
+            System.out.printf("%nRefreshing every %d s. Press Enter to return to the menu.%n", seconds);
+            try {
+                enter.get(seconds, TimeUnit.SECONDS);
+                return;
+            } catch (TimeoutException e) {
+                // next frame
+            } catch (ExecutionException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
+    }
 
-        String report = reportGenerator.generateDailySummary(date);
-        System.out.println("\n" + report);
+    // report handlers
+    private void handleDailySummary() {
+        LocalDate date = readReportDate();
+        runReport(sink -> reportGenerator.writeDailySummary(date, sink), "DAILY", date.toString());
 
         pressEnterToContinue(scanner);
     }
 
     private void handleMonthlyReport() {
-        int year = getIntInput("Enter year (e.g., 2025): ");
-        int month = getIntInput("Enter month (1-12): ");
-
-        if (month < 1 || month > 12) {
-            System.out.println("Invalid month. Please enter 1-12.");
+        int[] yearMonth = readReportMonth();
+        if (yearMonth == null) {
             pressEnterToContinue(scanner);
             return;
         }
 
-        String report = reportGenerator.generateMonthlyReport(year, month);
-        System.out.println("\n" + report);
+        runReport(sink -> reportGenerator.writeMonthlyReport(yearMonth[0], yearMonth[1], sink),
+                "MONTHLY", String.valueOf(yearMonth[0]), String.valueOf(yearMonth[1]));
+
+        pressEnterToContinue(scanner);
+    }
+
+    private void handleRevenueRange() {
+        LocalDate[] range = readReportRange();
+        runReport(sink -> reportGenerator.writeRevenueRangeReport(range[0], range[1], sink),
+                "RANGE", range[0].toString(), range[1].toString());
+
+        pressEnterToContinue(scanner);
+    }
+
+    private void handleUtilization() {
+        LocalDate[] range = readReportRange();
+        runReport(sink -> reportGenerator.writeUtilizationReport(range[0], range[1], sink),
+                "UTILIZATION", range[0].toString(), range[1].toString());
+
+        pressEnterToContinue(scanner);
+    }
+
+    private void showApproximateAnalytics() {
+        int top = getOptionalIntInput("\nHow many entries per ranking (Enter for "
+                + ReportGenerator.DEFAULT_TOP_CUSTOMERS + "): ", ReportGenerator.DEFAULT_TOP_CUSTOMERS);
+        runReport(sink -> reportGenerator.writeApproximateAnalyticsReport(top, sink),
+                "APPROXIMATE", String.valueOf(top));
 
         pressEnterToContinue(scanner);
     }
 
     private void showCustomerAnalytics() {
-        String report = reportGenerator.generateCustomerAnalyticsReport();
-        System.out.println("\n" + report);
+        ReportGenerator.CustomerRanking ranking = readCustomerRanking();
+        int topCustomers = readTopCustomers();
+
+        runReport(sink -> reportGenerator.writeCustomerAnalyticsReport(topCustomers, ranking, sink),
+                "CUSTOMERS", String.valueOf(topCustomers), ranking.name());
 
         pressEnterToContinue(scanner);
     }
 
     private void showEquipmentPerformance() {
-        String report = reportGenerator.generateEquipmentPerformanceReport();
-        System.out.println("\n" + report);
+        runReport(reportGenerator::writeEquipmentPerformanceReport, "EQUIPMENT");
 
         pressEnterToContinue(scanner);
     }
 
     private void showFinancialSummary() {
-        String report = reportGenerator.generateFinancialSummaryReport();
-        System.out.println("\n" + report);
+        runReport(reportGenerator::writeFinancialSummaryReport, "FINANCIAL");
 
         pressEnterToContinue(scanner);
     }
 
     private void showSecurityAudit() {
-        String report = reportGenerator.generateSecurityAuditReport();
-        System.out.println("\n" + report);
+        runReport(reportGenerator::writeSecurityAuditReport, "SECURITY");
+
+        pressEnterToContinue(scanner);
+    }
+
+    private void handleExportReport() {
+        System.out.print("\nReport to export: 1. Daily  2. Monthly  3. Customers  4. Equipment  5. Financial  6. Security"
+                + "  7. Revenue range  8. Utilization"
+                + "\nChoose: ");
+        String choice = scanner.nextLine().trim();
+
+        String name;
+        Consumer<ReportSink> report;
+        switch (choice) {
+            case "1" -> {
+                LocalDate date = readReportDate();
+                name = "daily-" + date;
+                report = sink -> reportGenerator.writeDailySummary(date, sink);
+            }
+            case "2" -> {
+                int[] yearMonth = readReportMonth();
+                if (yearMonth == null) {
+                    pressEnterToContinue(scanner);
+                    return;
+                }
+                name = String.format("monthly-%d-%02d", yearMonth[0], yearMonth[1]);
+                report = sink -> reportGenerator.writeMonthlyReport(yearMonth[0], yearMonth[1], sink);
+            }
+            case "3" -> {
+                ReportGenerator.CustomerRanking ranking = readCustomerRanking();
+                int topCustomers = readTopCustomers();
+                name = "customers-" + ranking.name().toLowerCase();
+                report = sink -> reportGenerator.writeCustomerAnalyticsReport(topCustomers, ranking, sink);
+            }
+            case "4" -> {
+                name = "equipment";
+                report = reportGenerator::writeEquipmentPerformanceReport;
+            }
+            case "5" -> {
+                name = "financial";
+                report = reportGenerator::writeFinancialSummaryReport;
+            }
+            case "6" -> {
+                name = "security";
+                report = reportGenerator::writeSecurityAuditReport;
+            }
+            case "7" -> {
+                LocalDate[] range = readReportRange();
+                name = "revenue-" + range[0] + "-to-" + range[1];
+                report = sink -> reportGenerator.writeRevenueRangeReport(range[0], range[1], sink);
+            }
+            case "8" -> {
+                LocalDate[] range = readReportRange();
+                name = "utilization-" + range[0] + "-to-" + range[1];
+                report = sink -> reportGenerator.writeUtilizationReport(range[0], range[1], sink);
+            }
+            default -> {
+                System.out.println("\nInvalid choice.");
+                pressEnterToContinue(scanner);
+                return;
+            }
+        }
+
+        System.out.print("Format: 1. Text  2. CSV  3. JSON\nChoose (Enter for text): ");
+        ReportFormat format = switch (scanner.nextLine().trim()) {
+            case "2" -> ReportFormat.CSV;
+            case "3" -> ReportFormat.JSON;
+            default -> ReportFormat.TEXT;
+        };
+
+        // rows are written to the file as they are produced
+        Path file = EXPORT_DIR.resolve(name + "-" + LocalDate.now() + "." + format.getExtension());
+        try {
+            Files.createDirectories(EXPORT_DIR);
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                report.accept(format.open(writer));
+            }
+            System.out.println("\nReport exported to " + file);
+        } catch (IOException e) {
+            System.err.println("Error exporting report: " + e.getMessage());
+        }
 
         pressEnterToContinue(scanner);
     }
 
+    private LocalDate readReportDate() {
+        LocalDate date = getDateInput("\nEnter date (yyyy-mm-dd) or press Enter for today: ",
+                "yyyy-MM-dd");
+        return date != null ? date : LocalDate.now();
+    }
+
+    // defaults to the month so far
+    private LocalDate[] readReportRange() {
+        LocalDate from = getDateInput("\nEnter start date (yyyy-mm-dd) or press Enter for the start of this month: ",
+                "yyyy-MM-dd");
+        LocalDate to = getDateInput("Enter end date (yyyy-mm-dd) or press Enter for today: ", "yyyy-MM-dd");
+        return new LocalDate[]{from != null ? from : LocalDate.now().withDayOfMonth(1),
+                to != null ? to : LocalDate.now()};
+    }
+
+    private int[] readReportMonth() {
+        int year = getIntInput("Enter year (e.g., 2025): ");
+        int month = getIntInput("Enter month (1-12): ");
+
+        if (month < 1 || month > 12) {
+            System.out.println("Invalid month. Please enter 1-12.");
+            return null;
+        }
+        return new int[]{year, month};
+    }
+
+    private ReportGenerator.CustomerRanking readCustomerRanking() {
+        System.out.print("\nRank top customers by: 1. Spending  2. Rental count  3. Late fee ratio  4. Most recent return"
+                + "\nChoose (Enter for spending): ");
+        String choice = scanner.nextLine().trim();
+        return switch (choice) {
+            case "2" -> ReportGenerator.CustomerRanking.COUNT;
+            case "3" -> ReportGenerator.CustomerRanking.LATE_FEE_RATIO;
+            case "4" -> ReportGenerator.CustomerRanking.RECENCY;
+            default -> ReportGenerator.CustomerRanking.SPEND;
+        };
+    }
+
+    private int readTopCustomers() {
+        return getOptionalIntInput("How many customers to list (Enter for "
+                + ReportGenerator.DEFAULT_TOP_CUSTOMERS + "): ", ReportGenerator.DEFAULT_TOP_CUSTOMERS);
+    }
+
+    // Heavy reports run on the reporting replica when there is one. Local reports are
+    // streamed to the console line by line as they are produced.
+    private void runReport(Consumer<ReportSink> local, String type, String... args) {
+        if (replica != null) {
+            String report = replica.requestReport(type, args);
+            if (report != null) {
+                System.out.println("\n" + report);
+                return;
+            }
+        }
+        System.out.println();
+        local.accept(new TextReportSink(System.out));
+        System.out.println();
+    }
+
     // utilities
     private void showDefaultAccounts() {
         System.out.println("""
@@ -739,6 +1032,18 @@ public class ConsoleUI {
         }
     }
 
+    private int getOptionalIntInput(String prompt, int defaultValue) {
+        while (true) {
+            try {
+                System.out.print(prompt);
+                String input = scanner.nextLine().trim();
+                return input.isEmpty() ? defaultValue : Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number. Please try again.");
+            }
+        }
+    }
+
     private double getDoubleInput(String prompt) {
         while (true) {
             try {
@@ -806,7 +1111,16 @@ public class ConsoleUI {
     }
 
     private void showUserActivityReport() {
-        System.out.println("\nUser activity report feature coming soon...");
+        System.out.println("\n\t\t\t=== RECENT ACTIVITY ===");
+        List<String> entries = activityFeed.getRecentEntries();
+
+        if (entries.isEmpty()) {
+            System.out.println("\nNo activity recorded yet.");
+        } else {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                System.out.println("- " + entries.get(i));
+            }
+        }
 
         pressEnterToContinue(scanner);
     }
@@ -0,0 +1,172 @@
+package ui;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import services.RentalService;
+import services.ReportGenerator;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// One frame of the live dashboard per render(). Rates and latency percentiles cover
+// the interval since the previous frame, so a slowdown shows up as it happens rather
+// than being averaged into everything since startup; the first frame covers the time
+// since startup. Cache ratios and file latencies are cumulative.
+class PerformanceDashboard {
+    private static final int MAX_OPERATIONS = 15;
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final RentalService rentalService;
+    private final ReportGenerator reportGenerator;
+
+    private long previousNanos;
+    private Map<String, LatencyHistogram.Snapshot> previousLatencies = new HashMap<>();
+    private Map<String, Long> previousCounts = new HashMap<>();
+
+    PerformanceDashboard(RentalService rentalService, ReportGenerator reportGenerator) {
+        this.rentalService = rentalService;
+        this.reportGenerator = reportGenerator;
+        this.previousNanos = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000;
+    }
+
+    String render() {
+        long now = System.nanoTime();
+        double seconds = Math.max(0.001, (now - previousNanos) / 1e9);
+        Map<String, Object> status = rentalService.getSystemStatus();
+        Map<String, Long> counts = new HashMap<>();
+        StringBuilder out = new StringBuilder();
+
+        out.append("\t\t=== LIVE PERFORMANCE DASHBOARD ===\n");
+        out.append(String.format("Uptime %s | interval %.1f s%n",
+                formatDuration(ManagementFactory.getRuntimeMXBean().getUptime()), seconds));
+        appendJvm(out, counts, seconds);
+        appendOperations(out, seconds);
+        appendPersistence(out, status, counts, seconds);
+        appendCaches(out, status);
+        appendFiles(out, status, counts, seconds);
+
+        previousNanos = now;
+        previousCounts = counts;
+        return out.toString();
+    }
+
+    private void appendJvm(StringBuilder out, Map<String, Long> counts, double seconds) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        out.append(String.format("%nHeap: %.1f MB used of %.1f MB committed (max %s) | Threads: %d%n",
+                heap.getUsed() / MB, heap.getCommitted() / MB,
+                heap.getMax() > 0 ? String.format("%.1f MB", heap.getMax() / MB) : "unbounded",
+                ManagementFactory.getThreadMXBean().getThreadCount()));
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            long collections = delta(counts, "gc.count." + gc.getName(), gc.getCollectionCount());
+            long millis = delta(counts, "gc.time." + gc.getName(), gc.getCollectionTime());
+            out.append(String.format("GC %-24s %6d collections (%.1f/s) %8d ms (%.1f%% of the interval)%n",
+                    gc.getName(), collections, collections / seconds, millis, millis / (seconds * 10)));
+        }
+    }
+
+    private void appendOperations(StringBuilder out, double seconds) {
+        Map<String, LatencyHistogram.Snapshot> latencies = Metrics.snapshots();
+        List<Map.Entry<String, LatencyHistogram.Snapshot>> interval = new ArrayList<>();
+        latencies.forEach((name, snapshot) -> {
+            if (name.startsWith("startup.")) return;
+            LatencyHistogram.Snapshot delta =
+                    snapshot.since(previousLatencies.getOrDefault(name, LatencyHistogram.empty()));
+            if (delta.getCount() > 0) interval.add(Map.entry(name, delta));
+        });
+        interval.sort(Comparator.comparingLong(
+                (Map.Entry<String, LatencyHistogram.Snapshot> entry) -> entry.getValue().getCount()).reversed());
+        previousLatencies = latencies;
+
+        out.append("\n\tOPERATIONS (microseconds):\n");
+        if (interval.isEmpty()) {
+            out.append("No calls in this interval.\n");
+            return;
+        }
+        out.append(String.format("%-36s %9s %9s %9s %9s %9s%n", "Operation", "Ops/s", "p50", "p99", "p999", "Max"));
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : interval.subList(0,
+                Math.min(MAX_OPERATIONS, interval.size()))) {
+            LatencyHistogram.Snapshot delta = entry.getValue();
+            out.append(String.format("%-36s %9.1f %9.1f %9.1f %9.1f %9.1f%n", entry.getKey(),
+                    delta.getCount() / seconds, micros(delta.getValueAtPercentile(50.0)),
+                    micros(delta.getValueAtPercentile(99.0)), micros(delta.getValueAtPercentile(99.9)),
+                    micros(delta.getMaxNanos())));
+        }
+        if (interval.size() > MAX_OPERATIONS) {
+            out.append(String.format("... %d more operations%n", interval.size() - MAX_OPERATIONS));
+        }
+    }
+
+    private void appendPersistence(StringBuilder out, Map<String, Object> status, Map<String, Long> counts,
+                                   double seconds) {
+        if (!(status.get("persistence") instanceof Map<?, ?> metrics)) return;
+
+        long submitted = delta(counts, "persistence.submitted", (Long) metrics.get("submitted"));
+        long written = delta(counts, "persistence.fileWrites", (Long) metrics.get("fileWrites"));
+        long stalls = delta(counts, "persistence.stalls", (Long) metrics.get("backpressureStalls"));
+        out.append("\n\tPERSISTENCE:\n");
+        out.append(String.format("Queue Depth: %s (max %s of %s) | Event Backlog: %s%n", metrics.get("queueDepth"),
+                metrics.get("maxQueueDepth"), metrics.get("queueCapacity"), status.get("eventBacklog")));
+        out.append(String.format("Snapshots: %.1f/s submitted, %.1f/s written | Backpressure Stalls: %d "
+                        + "| Failed Writes: %s%n", submitted / seconds, written / seconds, stalls,
+                metrics.get("failedWrites")));
+    }
+
+    private void appendCaches(StringBuilder out, Map<String, Object> status) {
+        out.append("\n\tCACHES:\n");
+        appendCache(out, "Reports", reportGenerator.getCacheMetrics());
+        if (status.get("statusCache") instanceof Map<?, ?> cache) appendCache(out, "System status", cache);
+        if (status.get("idempotency") instanceof Map<?, ?> cache) appendCache(out, "Idempotency keys", cache);
+    }
+
+    private static void appendCache(StringBuilder out, String name, Map<?, ?> cache) {
+        long hits = ((Number) cache.get("hits")).longValue();
+        long misses = ((Number) cache.get("misses")).longValue();
+        out.append(String.format("%-18s %6s of %-6s entries | hit ratio %5.1f%% (%d hits, %d misses", name,
+                cache.get("entries"), cache.get("capacity"), hits + misses > 0 ? 100.0 * hits / (hits + misses) : 0.0,
+                hits, misses));
+        if (cache.get("mismatches") != null) out.append(", ").append(cache.get("mismatches")).append(" refused reuses");
+        out.append(String.format(")%n"));
+    }
+
+    private void appendFiles(StringBuilder out, Map<String, Object> status, Map<String, Long> counts,
+                             double seconds) {
+        if (!(status.get("io") instanceof Map<?, ?> io) || io.isEmpty()) return;
+
+        out.append("\n\tFILE I/O:\n");
+        out.append(String.format("%-18s %8s %10s %10s %12s %10s %10s%n", "File", "Reads/s", "Read KB/s",
+                "Writes/s", "Written KB/s", "Write p99", "Fsync p99"));
+        io.forEach((file, stats) -> {
+            Map<?, ?> values = (Map<?, ?>) stats;
+            long reads = delta(counts, "io.reads." + file, (Long) values.get("reads"));
+            long bytesRead = delta(counts, "io.bytesRead." + file, (Long) values.get("bytesRead"));
+            long rewrites = delta(counts, "io.rewrites." + file, (Long) values.get("rewrites"));
+            long bytesWritten = delta(counts, "io.bytesWritten." + file, (Long) values.get("bytesWritten"));
+            out.append(String.format("%-18s %8.1f %10.1f %10.1f %12.1f %8.2fms %8.2fms%n", file, reads / seconds,
+                    bytesRead / 1024.0 / seconds, rewrites / seconds, bytesWritten / 1024.0 / seconds,
+                    ((Double) values.get("writeP99Micros")) / 1000.0, ((Double) values.get("fsyncP99Micros")) / 1000.0));
+        });
+    }
+
+    // change of a cumulative count since the previous frame; the current value is kept for the next one
+    private long delta(Map<String, Long> counts, String key, long current) {
+        counts.put(key, current);
+        return current - previousCounts.getOrDefault(key, 0L);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static String formatDuration(long millis) {
+        Duration duration = Duration.ofMillis(millis);
+        return String.format("%02d:%02d:%02d", duration.toHours(), duration.toMinutesPart(),
+                duration.toSecondsPart());
+    }
+}
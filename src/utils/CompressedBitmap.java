@@ -0,0 +1,327 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Roaring-style set of non-negative ints. Values are split by their high 16 bits into
+// containers; a container holds its low 16 bits as a sorted array while it is sparse
+// and switches to a 65536-bit bitmap once it passes ARRAY_LIMIT values, so both
+// scattered and dense data stay compact. Counting a range is a rank on each end.
+// Not thread-safe.
+public class CompressedBitmap implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int ARRAY_LIMIT = 4096;
+
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public void add(int value) {
+        requireNonNegative(value);
+        int index = containerIndex(value >>> 16, true);
+        containers[index] = containers[index].add((char) value);
+    }
+
+    // adds from..to, both inclusive
+    public void addRange(int from, int to) {
+        requireNonNegative(from);
+        if (to < from) return;
+        for (int key = from >>> 16; key <= to >>> 16; key++) {
+            int low = key == from >>> 16 ? from & 0xFFFF : 0;
+            int high = key == to >>> 16 ? to & 0xFFFF : 0xFFFF;
+            int index = containerIndex(key, true);
+            containers[index] = containers[index].addRange(low, high);
+        }
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) return false;
+        int index = containerIndex(value >>> 16, false);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public long cardinality() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    // number of values in from..to, both inclusive
+    public long rangeCardinality(int from, int to) {
+        if (to < from || to < 0) return 0;
+        return rank(to) - (from > 0 ? rank(from - 1) : 0);
+    }
+
+    // number of values <= value
+    private long rank(int value) {
+        int key = value >>> 16;
+        long count = 0;
+        for (int i = 0; i < size && keys[i] <= key; i++) {
+            count += keys[i] < key ? containers[i].cardinality() : containers[i].rank((char) value);
+        }
+        return count;
+    }
+
+    // smallest value >= from, or -1
+    public int nextSetBit(int from) {
+        int key = Math.max(0, from) >>> 16;
+        for (int i = firstIndexAtOrAfter(key); i < size; i++) {
+            int low = keys[i] == key ? Math.max(0, from) & 0xFFFF : 0;
+            int found = containers[i].next(low);
+            if (found >= 0) return keys[i] << 16 | found;
+        }
+        return -1;
+    }
+
+    // longest stretch of consecutive values in from..to that are not in the set
+    public int longestGap(int from, int to) {
+        int longest = 0;
+        int gapStart = from;
+        int value = nextSetBit(from);
+        while (value >= 0 && value <= to) {
+            longest = Math.max(longest, value - gapStart);
+            gapStart = value + 1;
+            value = value < Integer.MAX_VALUE ? nextSetBit(value + 1) : -1;
+        }
+        return Math.max(longest, to - gapStart + 1);
+    }
+
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = copy();
+        for (int i = 0; i < other.size; i++) {
+            int index = result.containerIndex(other.keys[i], true);
+            result.containers[index] = result.containers[index].or(other.containers[i]);
+        }
+        return result;
+    }
+
+    public CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(4, size));
+        copy.containers = new Container[copy.keys.length];
+        for (int i = 0; i < size; i++) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    private int firstIndexAtOrAfter(int key) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int containerIndex(int key, boolean create) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0 || !create) return index;
+
+        index = -index - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = new ArrayContainer();
+        size++;
+        return index;
+    }
+
+    private static void requireNonNegative(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+    }
+
+    // Holds the low 16 bits of the values sharing one high half. Updates return the
+    // container to use from then on, which may have switched representation.
+    private abstract static class Container implements Serializable {
+        private static final long serialVersionUID = 1L;
+        abstract Container add(char value);
+        abstract Container addRange(int from, int to);
+        abstract boolean contains(char value);
+        abstract int cardinality();
+        abstract int rank(char value);
+        abstract int next(int from);
+        abstract Container or(Container other);
+        abstract Container copy();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private static final long serialVersionUID = 1L;
+        private char[] values = new char[8];
+        private int size;
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) return this;
+            if (size >= ARRAY_LIMIT) return toBitmap().add(value);
+
+            index = -index - 1;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            if (size + (to - from + 1) > ARRAY_LIMIT) return toBitmap().addRange(from, to);
+            Container container = this;
+            for (int value = from; value <= to; value++) {
+                container = container.add((char) value);
+            }
+            return container;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        int rank(char value) {
+            int index = Arrays.binarySearch(values, 0, size, value);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        @Override
+        int next(int from) {
+            int index = Arrays.binarySearch(values, 0, size, (char) from);
+            if (index < 0) index = -index - 1;
+            return index < size ? values[index] : -1;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) return other.or(this);
+            ArrayContainer array = (ArrayContainer) other;
+            char[] merged = new char[size + array.size];
+            int i = 0, j = 0, count = 0;
+            while (i < size || j < array.size) {
+                char next;
+                if (j >= array.size || (i < size && values[i] < array.values[j])) {
+                    next = values[i++];
+                } else if (i >= size || array.values[j] < values[i]) {
+                    next = array.values[j++];
+                } else {
+                    next = values[i++];
+                    j++;
+                }
+                merged[count++] = next;
+            }
+            ArrayContainer result = new ArrayContainer();
+            result.values = merged;
+            result.size = count;
+            return count > ARRAY_LIMIT ? result.toBitmap() : result;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer copy = new ArrayContainer();
+            copy.values = Arrays.copyOf(values, Math.max(8, size));
+            copy.size = size;
+            return copy;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private static final long serialVersionUID = 1L;
+        private final long[] words = new long[1024];
+        private int cardinality;
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] = before | 1L << value;
+            if (before != words[value >>> 6]) cardinality++;
+            return this;
+        }
+
+        @Override
+        Container addRange(int from, int to) {
+            for (int word = from >>> 6; word <= to >>> 6; word++) {
+                long mask = -1L;
+                if (word == from >>> 6) mask &= -1L << from;
+                if (word == to >>> 6) mask &= -1L >>> (63 - (to & 63));
+                cardinality += Long.bitCount(mask & ~words[word]);
+                words[word] |= mask;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int rank(char value) {
+            int count = 0;
+            for (int word = 0; word < value >>> 6; word++) {
+                count += Long.bitCount(words[word]);
+            }
+            return count + Long.bitCount(words[value >>> 6] & -1L >>> (63 - (value & 63)));
+        }
+
+        @Override
+        int next(int from) {
+            int word = from >>> 6;
+            long bits = words[word] & -1L << from;
+            while (true) {
+                if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+                if (++word == words.length) return -1;
+                bits = words[word];
+            }
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) copy();
+            if (other instanceof BitmapContainer bitmap) {
+                result.cardinality = 0;
+                for (int i = 0; i < words.length; i++) {
+                    result.words[i] |= bitmap.words[i];
+                    result.cardinality += Long.bitCount(result.words[i]);
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.size; i++) {
+                    result.add(array.values[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+    }
+}
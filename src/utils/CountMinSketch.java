@@ -0,0 +1,58 @@
+package utils;
+
+import java.io.Serializable;
+
+// Frequency estimates in a depth x width table of counters. An estimate never
+// undercounts, and overcounts by more than epsilon * totalWeight() with probability
+// at most delta, where width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)).
+public class CountMinSketch implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final double epsilon;
+    private final double delta;
+    private final int width;
+    private final long[][] counts;
+    private long totalWeight;
+
+    public CountMinSketch(double epsilon, double delta) {
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.counts = new long[(int) Math.ceil(Math.log(1 / delta))][width];
+    }
+
+    public void add(CharSequence key, long weight) {
+        long hash = Hashing.hash64(key);
+        for (int row = 0; row < counts.length; row++) {
+            counts[row][column(hash, row)] += weight;
+        }
+        totalWeight += weight;
+    }
+
+    public long estimate(CharSequence key) {
+        long hash = Hashing.hash64(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            estimate = Math.min(estimate, counts[row][column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    // one hash per row derived from the two halves of a single 64-bit hash
+    private int column(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, width);
+    }
+
+    // the overcount that is exceeded with probability at most delta()
+    public long errorBound() {
+        return (long) Math.ceil(epsilon * totalWeight);
+    }
+
+    public double delta() {
+        return delta;
+    }
+
+    public long totalWeight() {
+        return totalWeight;
+    }
+}
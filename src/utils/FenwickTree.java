@@ -0,0 +1,80 @@
+package utils;
+
+import java.util.Arrays;
+
+// Binary indexed tree over non-negative long values: point updates and prefix or
+// range sums in O(log n). The tree grows as higher indexes are used.
+public class FenwickTree {
+    private long[] tree;
+
+    public FenwickTree() {
+        this(64);
+    }
+
+    public FenwickTree(int capacity) {
+        tree = new long[Math.max(1, capacity) + 1];
+    }
+
+    public int capacity() {
+        return tree.length - 1;
+    }
+
+    public void add(int index, long delta) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Negative index: " + index);
+        }
+        if (index >= capacity()) grow(index + 1);
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // sum of the values at 0..index
+    public long prefixSum(int index) {
+        long sum = 0;
+        for (int i = Math.min(index + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // sum of the values at from..to, both inclusive
+    public long rangeSum(int from, int to) {
+        if (to < from) return 0;
+        return prefixSum(to) - (from > 0 ? prefixSum(from - 1) : 0);
+    }
+
+    // smallest index whose prefix sum reaches target, or capacity() if none does
+    public int lowerBound(long target) {
+        int position = 0;
+        long remaining = target;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    public void clear() {
+        Arrays.fill(tree, 0);
+    }
+
+    // recovers the point values and rebuilds them into a larger tree
+    private void grow(int minCapacity) {
+        int capacity = capacity();
+        while (capacity < minCapacity) capacity *= 2;
+
+        long[] values = new long[capacity + 1];
+        for (int i = 1; i < tree.length; i++) {
+            values[i] = rangeSum(i - 1, i - 1);
+        }
+        for (int i = 1; i < values.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < values.length) values[parent] += values[i];
+        }
+        tree = values;
+    }
+}
@@ -0,0 +1,284 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+// Computes any number of metrics for any number of groupings in a single sweep over
+// the rows. Each group keeps one long slot per metric, so adding a row is a key
+// lookup and a few additions per grouping. Rows can be added all at once or one at
+// a time as they arrive; money should be passed in cents.
+// Large lists are split into chunks that are aggregated on the fork/join pool and
+// merged. All metrics are long sums, so the result is identical to a serial pass.
+public class GroupedAggregator<T> {
+    public static final int DEFAULT_PARALLEL_THRESHOLD = Integer.getInteger("rental.parallelThreshold", 50_000);
+    private static final int MIN_CHUNK_SIZE = 16_384;
+
+    private final Map<String, Integer> metricSlots = new LinkedHashMap<>();
+    private final List<ToLongFunction<T>> metricValues = new ArrayList<>();
+    private final BitSet maxMetrics = new BitSet();
+    private final Map<String, Function<T, ?>> groupings = new LinkedHashMap<>();
+    private final Map<String, Map<Object, long[]>> groups = new HashMap<>();
+    private long[] total;
+    private long rowCount;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    public synchronized GroupedAggregator<T> sum(String metric, ToLongFunction<T> value) {
+        requireNoRows();
+        if (metricSlots.containsKey(metric)) {
+            throw new IllegalArgumentException("Duplicate metric: " + metric);
+        }
+        metricSlots.put(metric, metricValues.size());
+        metricValues.add(value);
+        return this;
+    }
+
+    // keeps the largest value instead of the sum; Long.MIN_VALUE for a group without rows
+    public synchronized GroupedAggregator<T> max(String metric, ToLongFunction<T> value) {
+        sum(metric, value);
+        maxMetrics.set(metricSlots.get(metric));
+        return this;
+    }
+
+    public GroupedAggregator<T> countIf(String metric, Predicate<T> condition) {
+        return sum(metric, row -> condition.test(row) ? 1 : 0);
+    }
+
+    public synchronized GroupedAggregator<T> groupBy(String grouping, Function<T, ?> key) {
+        requireNoRows();
+        groupings.put(grouping, key);
+        groups.put(grouping, new HashMap<>());
+        return this;
+    }
+
+    public synchronized GroupedAggregator<T> parallelThreshold(int threshold) {
+        this.parallelThreshold = threshold;
+        return this;
+    }
+
+    private void requireNoRows() {
+        if (rowCount > 0) {
+            throw new IllegalStateException("Metrics and groupings must be defined before rows are added");
+        }
+    }
+
+    public synchronized void add(T row) {
+        addRow(row);
+    }
+
+    private void addRow(T row) {
+        int width = metricValues.size();
+        long[] values = new long[width];
+        for (int i = 0; i < width; i++) {
+            values[i] = metricValues.get(i).applyAsLong(row);
+        }
+
+        if (total == null) total = newSlots();
+        accumulate(total, values);
+        for (Map.Entry<String, Function<T, ?>> grouping : groupings.entrySet()) {
+            Object key = grouping.getValue().apply(row);
+            if (key == null) continue;
+            accumulate(groups.get(grouping.getKey()).computeIfAbsent(key, k -> newSlots()), values);
+        }
+        rowCount++;
+    }
+
+    public void addAll(Iterable<T> rows) {
+        if (rows instanceof List<T> list && list.size() >= parallelThreshold) {
+            // a few chunks per worker: enough to balance load without merging large group maps too often
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, list.size() / (pool.getParallelism() * 4));
+            merge(pool.invoke(new ChunkTask(list, 0, list.size(), chunkSize)));
+            return;
+        }
+        synchronized (this) {
+            for (T row : rows) {
+                addRow(row);
+            }
+        }
+    }
+
+    private class ChunkTask extends RecursiveTask<GroupedAggregator<T>> {
+        private static final long serialVersionUID = 1L;
+        private final List<T> rows;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        ChunkTask(List<T> rows, int from, int to, int chunkSize) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected GroupedAggregator<T> compute() {
+            if (to - from <= chunkSize) {
+                GroupedAggregator<T> partial = emptyCopy();
+                for (int i = from; i < to; i++) {
+                    partial.addRow(rows.get(i));
+                }
+                return partial;
+            }
+
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(rows, from, middle, chunkSize);
+            left.fork();
+            GroupedAggregator<T> right = new ChunkTask(rows, middle, to, chunkSize).compute();
+            GroupedAggregator<T> merged = left.join();
+            merged.merge(right);
+            return merged;
+        }
+    }
+
+    // same metrics and groupings, no rows
+    private GroupedAggregator<T> emptyCopy() {
+        GroupedAggregator<T> copy = new GroupedAggregator<>();
+        copy.metricSlots.putAll(metricSlots);
+        copy.metricValues.addAll(metricValues);
+        copy.maxMetrics.or(maxMetrics);
+        for (Map.Entry<String, Function<T, ?>> grouping : groupings.entrySet()) {
+            copy.groupings.put(grouping.getKey(), grouping.getValue());
+            copy.groups.put(grouping.getKey(), new HashMap<>());
+        }
+        return copy;
+    }
+
+    // folds another aggregator with the same definitions into this one
+    public synchronized void merge(GroupedAggregator<T> other) {
+        synchronized (other) {
+            if (other.total == null) return;
+            if (total == null) total = newSlots();
+            addSlots(total, other.total);
+            for (Map.Entry<String, Map<Object, long[]>> grouping : other.groups.entrySet()) {
+                Map<Object, long[]> target = groupsOf(grouping.getKey());
+                for (Map.Entry<Object, long[]> entry : grouping.getValue().entrySet()) {
+                    long[] slots = target.get(entry.getKey());
+                    if (slots == null) {
+                        target.put(entry.getKey(), entry.getValue().clone());
+                    } else {
+                        addSlots(slots, entry.getValue());
+                    }
+                }
+            }
+            rowCount += other.rowCount;
+        }
+    }
+
+    private void addSlots(long[] slots, long[] other) {
+        slots[0] += other[0];
+        for (int i = 1; i < slots.length; i++) {
+            slots[i] = maxMetrics.get(i - 1) ? Math.max(slots[i], other[i]) : slots[i] + other[i];
+        }
+    }
+
+    // slot 0 holds the row count, metrics follow
+    private void accumulate(long[] slots, long[] values) {
+        slots[0]++;
+        for (int i = 0; i < values.length; i++) {
+            slots[i + 1] = maxMetrics.get(i) ? Math.max(slots[i + 1], values[i]) : slots[i + 1] + values[i];
+        }
+    }
+
+    private long[] newSlots() {
+        long[] slots = new long[metricValues.size() + 1];
+        for (int i = maxMetrics.nextSetBit(0); i >= 0; i = maxMetrics.nextSetBit(i + 1)) {
+            slots[i + 1] = Long.MIN_VALUE;
+        }
+        return slots;
+    }
+
+    public synchronized void clear() {
+        total = null;
+        rowCount = 0;
+        for (Map<Object, long[]> group : groups.values()) {
+            group.clear();
+        }
+    }
+
+    // The rows' totals without the definitions, which are code: restore() expects an
+    // aggregator set up with the same metrics and groupings
+    public record State(Map<String, Map<Object, long[]>> groups, long[] total, long rowCount) implements Serializable {}
+
+    public synchronized State exportState() {
+        Map<String, Map<Object, long[]>> copy = new HashMap<>();
+        for (Map.Entry<String, Map<Object, long[]>> grouping : groups.entrySet()) {
+            Map<Object, long[]> slots = new HashMap<>();
+            grouping.getValue().forEach((key, values) -> slots.put(key, values.clone()));
+            copy.put(grouping.getKey(), slots);
+        }
+        return new State(copy, total != null ? total.clone() : null, rowCount);
+    }
+
+    public synchronized void restore(State state) {
+        if (!state.groups().keySet().equals(groups.keySet())
+                || (state.total() != null && state.total().length != metricValues.size() + 1)) {
+            throw new IllegalArgumentException("State was exported from an aggregator with other definitions");
+        }
+        clear();
+        state.groups().forEach((grouping, slots) -> groups.get(grouping).putAll(slots));
+        total = state.total();
+        rowCount = state.rowCount();
+    }
+
+    public synchronized Row total() {
+        return new Row(total != null ? total.clone() : newSlots());
+    }
+
+    public synchronized Row group(String grouping, Object key) {
+        long[] slots = groupsOf(grouping).get(key);
+        return new Row(slots != null ? slots.clone() : newSlots());
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <K> Map<K, Row> groups(String grouping) {
+        Map<K, Row> result = new HashMap<>();
+        for (Map.Entry<Object, long[]> entry : groupsOf(grouping).entrySet()) {
+            result.put((K) entry.getKey(), new Row(entry.getValue().clone()));
+        }
+        return result;
+    }
+
+    private Map<Object, long[]> groupsOf(String grouping) {
+        Map<Object, long[]> group = groups.get(grouping);
+        if (group == null) {
+            throw new IllegalArgumentException("Unknown grouping: " + grouping);
+        }
+        return group;
+    }
+
+    // A snapshot of one group's metrics
+    public class Row {
+        private final long[] slots;
+
+        private Row(long[] slots) {
+            this.slots = slots;
+        }
+
+        public long count() {
+            return slots[0];
+        }
+
+        public long get(String metric) {
+            Integer slot = metricSlots.get(metric);
+            if (slot == null) {
+                throw new IllegalArgumentException("Unknown metric: " + metric);
+            }
+            return slots[slot + 1];
+        }
+
+        public double average(String metric) {
+            return slots[0] > 0 ? (double) get(metric) / slots[0] : 0.0;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package utils;
+
+// 64-bit string hash for the sketches: FNV-1a over the characters followed by the
+// murmur3 finalizer, so nearby keys such as C001 and C002 land far apart.
+public final class Hashing {
+    private Hashing() {}
+
+    public static long hash64(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
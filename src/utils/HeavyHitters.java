@@ -0,0 +1,63 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tracks the heaviest keys of a stream: a count-min sketch estimates every key, and
+// a bounded candidate set keeps the keys with the largest estimates seen so far.
+// Estimates carry the sketch's error bound.
+public class HeavyHitters implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public record Entry(String key, long estimate) {}
+
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private final Map<String, Long> candidates = new HashMap<>();
+
+    public HeavyHitters(int capacity, double epsilon, double delta) {
+        this.sketch = new CountMinSketch(epsilon, delta);
+        this.capacity = capacity;
+    }
+
+    public void add(String key, long weight) {
+        sketch.add(key, weight);
+        long estimate = sketch.estimate(key);
+        if (candidates.containsKey(key) || candidates.size() < capacity) {
+            candidates.put(key, estimate);
+            return;
+        }
+
+        Map.Entry<String, Long> smallest = null;
+        for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            if (smallest == null || candidate.getValue() < smallest.getValue()) smallest = candidate;
+        }
+        if (smallest != null && estimate > smallest.getValue()) {
+            candidates.remove(smallest.getKey());
+            candidates.put(key, estimate);
+        }
+    }
+
+    // largest estimates first
+    public List<Entry> top(int k) {
+        List<Entry> entries = new ArrayList<>();
+        candidates.forEach((key, estimate) -> entries.add(new Entry(key, sketch.estimate(key))));
+        return TopK.select(entries, k, (a, b) -> a.estimate() != b.estimate()
+                ? Long.compare(b.estimate(), a.estimate())
+                : a.key().compareTo(b.key()));
+    }
+
+    public long errorBound() {
+        return sketch.errorBound();
+    }
+
+    public double confidence() {
+        return 1 - sketch.delta();
+    }
+
+    public long totalWeight() {
+        return sketch.totalWeight();
+    }
+}
@@ -0,0 +1,63 @@
+package utils;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+// DDSketch-style quantiles for non-negative values. Values fall into logarithmic
+// buckets whose bounds grow by gamma = (1 + accuracy) / (1 - accuracy), so any
+// quantile comes back within the relative accuracy of a value actually in the
+// stream, using a few hundred buckets regardless of how many values were added.
+public class QuantileSketch implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final double accuracy;
+    private final double logGamma;
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch(double accuracy) {
+        if (accuracy <= 0 || accuracy >= 1) {
+            throw new IllegalArgumentException("Accuracy must be between 0 and 1: " + accuracy);
+        }
+        this.accuracy = accuracy;
+        this.logGamma = Math.log((1 + accuracy) / (1 - accuracy));
+    }
+
+    public void add(double value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        if (value == 0) {
+            zeroCount++;
+        } else {
+            buckets.merge((int) Math.ceil(Math.log(value) / logGamma), 1L, Long::sum);
+        }
+        count++;
+    }
+
+    // quantile between 0 and 1; 0 when nothing was added
+    public double quantile(double quantile) {
+        if (count == 0) return 0;
+        long rank = (long) Math.floor(quantile * (count - 1));
+        if (rank < zeroCount) return 0;
+
+        long seen = zeroCount;
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            seen += bucket.getValue();
+            if (seen > rank) {
+                // midpoint of the bucket in relative terms
+                return 2 * Math.exp(bucket.getKey() * logGamma) / (1 + Math.exp(logGamma));
+            }
+        }
+        return 2 * Math.exp(buckets.lastKey() * logGamma) / (1 + Math.exp(logGamma));
+    }
+
+    public double relativeAccuracy() {
+        return accuracy;
+    }
+
+    public long count() {
+        return count;
+    }
+}
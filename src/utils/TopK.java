@@ -0,0 +1,30 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Picks the k best items with a bounded min-heap: O(n log k) time and O(k) memory,
+// instead of sorting everything to keep the first few.
+public class TopK {
+    public static <T> List<T> select(Iterable<T> items, int k, Comparator<? super T> order) {
+        if (k <= 0) return new ArrayList<>();
+
+        // the heap root is the weakest item kept so far
+        PriorityQueue<T> heap = new PriorityQueue<>(k + 1, order.reversed());
+        for (T item : items) {
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        List<T> best = new ArrayList<>(heap);
+        best.sort(order);
+        return best;
+    }
+}
@@ -8,6 +8,7 @@ public class ValidationUtils {
     private static final Pattern USER_ID_PATTERN = Pattern.compile("^[AC]\\d{3,}$"); // Admin or Customer ID
     private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9._-]{3,20}$");
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$");
+    private static final Pattern IDEMPOTENCY_KEY_PATTERN = Pattern.compile("^[A-Za-z0-9_-]{1,64}$");
 
     public static boolean isValidEquipmentId(String id) {
         return id != null && EQUIPMENT_ID_PATTERN.matcher(id).matches();
@@ -21,6 +22,10 @@ public class ValidationUtils {
         return name != null && name.trim().length() >= 2;
     }
 
+    public static boolean isValidIdempotencyKey(String key) {
+        return key != null && IDEMPOTENCY_KEY_PATTERN.matcher(key).matches();
+    }
+
     public static boolean isValidRentDays(int days) {
         return days > 0 && days <= 365;
     }